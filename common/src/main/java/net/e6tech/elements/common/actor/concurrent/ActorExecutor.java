@@ -18,19 +18,26 @@ package net.e6tech.elements.common.actor.concurrent;
 
 import net.e6tech.elements.common.actor.Genesis;
 import net.e6tech.elements.common.actor.typed.Guardian;
+import net.e6tech.elements.common.actor.typed.worker.OverflowPolicy;
+import net.e6tech.elements.common.actor.typed.worker.StealingWorkerPool;
 import net.e6tech.elements.common.actor.typed.worker.WorkEvents;
 import net.e6tech.elements.common.actor.typed.worker.WorkerPool;
 import net.e6tech.elements.common.actor.typed.worker.WorkerPoolConfig;
 import net.e6tech.elements.common.resources.Provision;
+import net.e6tech.elements.common.util.concurrent.Histogram;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 public class ActorExecutor implements Executor {
 
     private WorkerPool workerPool;
+    private StealingWorkerPool stealingPool;
     private boolean running;
     private Provision provision;
     private WorkerPoolConfig workerPoolConfig;
+    private Consumer<WorkEvents> overflowListener;
 
     public ActorExecutor(Provision provision, WorkerPoolConfig workerPoolConfig) {
         this.provision = provision;
@@ -42,11 +49,37 @@ public class ActorExecutor implements Executor {
         return running;
     }
 
+    public Consumer<WorkEvents> getOverflowListener() {
+        return overflowListener;
+    }
+
+    /**
+     * Listener notified of jobs shed when the waiting queue, bounded by WorkerPoolConfig.maxWaiting, is full.
+     * For DROP_OLDEST, it is the means to learn which job was dropped.
+     */
+    public synchronized void setOverflowListener(Consumer<WorkEvents> overflowListener) {
+        this.overflowListener = overflowListener;
+        if (stealingPool != null)
+            stealingPool.setOverflowListener(overflowListener);
+        else if (workerPool != null)
+            workerPool.setOverflowListener(overflowListener);
+    }
+
     public synchronized void start() {
         if (running)
             return;
         Guardian guardian = new Genesis(provision, workerPoolConfig).getGuardian();
 
+        if (workerPoolConfig != null && workerPoolConfig.isWorkStealing()) {
+            // jobs are handed to the workers directly by the calling thread.
+            stealingPool = guardian.childActor(StealingWorkerPool.class)
+                    .withProps(guardian.dispatcher(workerPoolConfig.getDispatcher()))
+                    .spawnNow(new StealingWorkerPool(workerPoolConfig));
+            stealingPool.setOverflowListener(overflowListener);
+            running = true;
+            return;
+        }
+
         if (!guardian.isEmbedded()) {
             // using system guardian.  create a separate worker pool
             workerPool = guardian.childActor(WorkerPool.class)
@@ -57,11 +90,19 @@ public class ActorExecutor implements Executor {
             // embedded so just use the default worker pool
             workerPool = guardian.getWorkerPool();
         }
+        workerPool.setOverflowListener(overflowListener);
         running = true;
     }
 
     public synchronized void stop() {
-        if (workerPool != null && running) {
+        if (stealingPool != null && running) {
+            if (stealingPool.getGuardian().isEmbedded()) {
+                stealingPool.getSystem().terminate();
+            } else {
+                stealingPool.talk().stop();
+            }
+            running = false;
+        } else if (workerPool != null && running) {
             if (workerPool.getGuardian().isEmbedded()) {
                 workerPool.getSystem().terminate();
             } else {
@@ -72,17 +113,52 @@ public class ActorExecutor implements Executor {
     }
 
     public synchronized void join() {
-        if (workerPool != null)
+        if (stealingPool != null)
+            stealingPool.join();
+        else if (workerPool != null)
             workerPool.join();
     }
 
+    public boolean isSaturated() {
+        if (stealingPool != null)
+            return stealingPool.isSaturated();
+        return workerPool != null && workerPool.isSaturated();
+    }
+
+    /**
+     * Time from submission until a worker picks up a job, in nanoseconds.  Empty before start.
+     */
+    public Histogram getWaitTime() {
+        if (stealingPool != null)
+            return stealingPool.getWaitTime();
+        return workerPool != null ? workerPool.getWaitTime() : new Histogram();
+    }
+
+    /**
+     * Empty before start.
+     */
     public WorkEvents.StatusResponse status() {
+        if (stealingPool != null)
+            return stealingPool.status();
+        if (workerPool == null)
+            return new WorkEvents.StatusResponse();
         return workerPool.status(new WorkEvents.Status());
     }
 
     @Override
     public void execute(Runnable command) {
-        workerPool.execute(new WorkEvents.RunnableTask(command));
+        WorkEvents.RunnableTask task = new WorkEvents.RunnableTask(command);
+        if (stealingPool != null) {
+            stealingPool.submit(task);
+        } else if (!workerPool.isSaturated()) {
+            workerPool.execute(task);
+        } else {
+            OverflowPolicy policy = workerPool.overflow(task);
+            if (policy == OverflowPolicy.REJECT)
+                throw new RejectedExecutionException("Worker pool saturated");
+            else if (policy == OverflowPolicy.DROP_OLDEST)
+                workerPool.execute(task);
+        }
     }
 
 }
@@ -24,6 +24,7 @@ import com.google.common.cache.CacheBuilder;
 import net.e6tech.elements.common.interceptor.CallFrame;
 import net.e6tech.elements.common.interceptor.Interceptor;
 import net.e6tech.elements.common.interceptor.InterceptorHandler;
+import net.e6tech.elements.common.reflection.Lambda;
 import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.util.SystemException;
 
@@ -44,13 +45,6 @@ public abstract class Receptor<T, R extends Receptor<T, R>> {
             .expireAfterWrite(120 * 60 * 1000L, TimeUnit.MILLISECONDS)
             .build();
 
-    private static Cache<Method, BiConsumer> eventCache = CacheBuilder.newBuilder()
-            .concurrencyLevel(64)
-            .initialCapacity(128)
-            .maximumSize(10000)
-            .expireAfterWrite(120 * 60 * 1000L, TimeUnit.MILLISECONDS)
-            .build();
-
     private static Cache<Method, BiFunction> interceptorCache = CacheBuilder.newBuilder()
             .concurrencyLevel(64)
             .initialCapacity(128)
@@ -177,7 +171,6 @@ public abstract class Receptor<T, R extends Receptor<T, R>> {
                 if (typed == null)
                     continue;
                 if (method.getParameterCount() == 1) {
-                    method.setAccessible(true);
                     if (Signal.class.isAssignableFrom(method.getParameterTypes()[0])) {
                         list.add(new OnSignal(method));
                     } else {
@@ -271,14 +264,24 @@ public abstract class Receptor<T, R extends Receptor<T, R>> {
         return untypedContext().actorOf(props);
     }
 
+    /*
+     * Handlers are bound to BiFunctions generated by LambdaMetafactory when the class is first used, so that
+     * dispatching a message is a direct call rather than Method.invoke.
+     */
     abstract static class MessageBuilder {
         protected boolean behavior;
         protected Method method;
+        protected BiFunction<Object, Object, Object> handler;
         private String signature;
 
         MessageBuilder(Method method) {
             this.behavior = Behavior.class.isAssignableFrom(method.getReturnType());
             this.method = method;
+            try {
+                this.handler = Lambda.reflectBiFunction(Lambda.privateLookupIn(method.getDeclaringClass()), method);
+            } catch (ReflectiveOperationException ex) {
+                throw new SystemException("Cannot bind handler " + method, ex);
+            }
             StringBuilder builder = new StringBuilder();
             builder.append(method.getName());
             builder.append("(");
@@ -304,52 +307,67 @@ public abstract class Receptor<T, R extends Receptor<T, R>> {
 
     static class OnMessage extends MessageBuilder {
         private static final BiConsumer<Object, Object> NO_OP = (arg, ret) -> {};
+        private BiConsumer<Object, Object> responder;
 
         OnMessage(Method method) {
             super(method);
+            responder = responder(method);
         }
 
         @SuppressWarnings("squid:S3776")
-        @Override
-        public ReceiveBuilder build(ReceiveBuilder builder, Object target) {
-            BiConsumer<Object, Object> consumer = eventCache.getIfPresent(method);
-
-            if (consumer == null) {
-                consumer = NO_OP;
-                if (method.getParameterTypes().length > 0 && !method.getReturnType().equals(void.class) && !method.getReturnType().equals(Void.class)) {
-                    Class<?> argType = method.getParameterTypes()[0];
-                    if (Ask.class.isAssignableFrom(argType)) {
-                        consumer = (arg, ret) -> {
-                            ActorRef sender = ((Ask) arg).getSender();
-                            if (sender != null) {
-                                try {
-                                    sender.tell(ret);
-                                } catch (Exception th) {
-                                    sender.tell(new Status.Failure(th));
-                                }
+        private static BiConsumer<Object, Object> responder(Method method) {
+            BiConsumer<Object, Object> consumer = NO_OP;
+            if (method.getParameterTypes().length > 0 && !method.getReturnType().equals(void.class) && !method.getReturnType().equals(Void.class)) {
+                Class<?> argType = method.getParameterTypes()[0];
+                if (Ask.class.isAssignableFrom(argType)) {
+                    consumer = (arg, ret) -> {
+                        ActorRef sender = ((Ask) arg).getSender();
+                        if (sender != null) {
+                            try {
+                                sender.tell(ret);
+                            } catch (Exception th) {
+                                sender.tell(new Status.Failure(th));
                             }
-                        };
-                    } else if (Asking.class.isAssignableFrom(argType)) {
-                        consumer = (arg, ret) -> {
-                            ActorRef sender = ((Asking) arg).getSender();
-                            if (sender != null) {
-                                try {
-                                    sender.tell(ret);
-                                } catch (Exception th) {
-                                    sender.tell(new Status.Failure(th));
-                                }
+                        }
+                    };
+                } else if (Asking.class.isAssignableFrom(argType)) {
+                    consumer = (arg, ret) -> {
+                        ActorRef sender = ((Asking) arg).getSender();
+                        if (sender != null) {
+                            try {
+                                sender.tell(ret);
+                            } catch (Exception th) {
+                                sender.tell(new Status.Failure(th));
                             }
-                        };
-                    }
+                        }
+                    };
                 }
-                eventCache.put(method, consumer);
             }
-            BiConsumer<Object, Object> responder = consumer;
+            return consumer;
+        }
+
+        @Override
+        public ReceiveBuilder build(ReceiveBuilder builder, Object target) {
+            BiFunction<Object, Object, Object> function = handler;
+            BiConsumer<Object, Object> reply = responder;
+            if (behavior) {
+                return builder.onMessage(method.getParameterTypes()[0],
+                        m -> {
+                            Object ret = function.apply(target, m);
+                            reply.accept(m, ret);
+                            return ret;
+                        });
+            } else if (reply == NO_OP) {
+                return builder.onMessage(method.getParameterTypes()[0],
+                        m -> {
+                            function.apply(target, m);
+                            return Behaviors.same();
+                        });
+            }
             return builder.onMessage(method.getParameterTypes()[0],
                     m -> {
-                        Object ret = method.invoke(target, m);
-                        responder.accept(m, ret);
-                        return (behavior) ? ret : Behaviors.same();
+                        reply.accept(m, function.apply(target, m));
+                        return Behaviors.same();
                     });
         }
     }
@@ -361,9 +379,10 @@ public abstract class Receptor<T, R extends Receptor<T, R>> {
 
         @Override
         public ReceiveBuilder build(ReceiveBuilder builder, Object target) {
+            BiFunction<Object, Object, Object> function = handler;
             return builder.onSignal(method.getParameterTypes()[0],
                     m -> {
-                        Object ret = method.invoke(target, m);
+                        Object ret = function.apply(target, m);
                         return (behavior) ? ret : Behaviors.same();
                     });
         }
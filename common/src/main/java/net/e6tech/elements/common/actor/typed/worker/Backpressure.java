@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.typed.worker;
+
+import akka.actor.Status;
+import akka.actor.typed.ActorRef;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Queue wait time and shedding bookkeeping shared by WorkerPool and StealingWorkerPool.
+ */
+@SuppressWarnings("unchecked")
+class Backpressure {
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final Histogram waitTime = new Histogram();
+    private final LongAdder shed = new LongAdder();
+    private volatile Consumer<WorkEvents> overflowListener;
+
+    Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    Consumer<WorkEvents> getOverflowListener() {
+        return overflowListener;
+    }
+
+    void setOverflowListener(Consumer<WorkEvents> overflowListener) {
+        this.overflowListener = overflowListener;
+    }
+
+    /**
+     * Called when a worker picks up a job.
+     */
+    void started(WorkEvents job) {
+        long submitted = 0;
+        if (job instanceof WorkEvents.RunnableTask)
+            submitted = ((WorkEvents.RunnableTask) job).getSubmitted();
+        else if (job instanceof WorkEvents.CallableTask)
+            submitted = ((WorkEvents.CallableTask) job).getSubmitted();
+        if (submitted != 0)
+            waitTime.record(System.nanoTime() - submitted);
+    }
+
+    /**
+     * Called when a job is rejected or dropped.  A waiting sender is failed with RejectedExecutionException
+     * and the overflow listener, if any, is notified.
+     */
+    void shed(WorkEvents job) {
+        shed.increment();
+        ActorRef sender = null;
+        if (job instanceof WorkEvents.RunnableTask)
+            sender = ((WorkEvents.RunnableTask) job).getSender();
+        else if (job instanceof WorkEvents.CallableTask)
+            sender = ((WorkEvents.CallableTask) job).getSender();
+        if (sender != null)
+            sender.tell(new Status.Failure(new RejectedExecutionException("Worker pool saturated")));
+
+        Consumer<WorkEvents> listener = overflowListener;
+        if (listener != null) {
+            try {
+                listener.accept(job);
+            } catch (Exception ex) {
+                logger.warn("Overflow listener failed", ex);
+            }
+        }
+    }
+
+    void fill(WorkEvents.StatusResponse response) {
+        response.setShedCount(shed.sum());
+        response.setAverageWaitTime(waitTime.getMean() / NANOS_PER_MILLI);
+        response.setWaitTime99(waitTime.getPercentile(99.0) / NANOS_PER_MILLI);
+        response.setMaxWaitTime(waitTime.getMax() / NANOS_PER_MILLI);
+    }
+}
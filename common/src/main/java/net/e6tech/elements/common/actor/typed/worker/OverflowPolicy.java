@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.typed.worker;
+
+/**
+ * What a worker pool does with a job when its waiting queue has reached WorkerPoolConfig.maxWaiting.
+ */
+public enum OverflowPolicy {
+    /** the new job is refused with a RejectedExecutionException */
+    REJECT,
+    /** the submitting thread runs the job itself.  Jobs sent as messages, which have no caller thread, are rejected. */
+    CALLER_RUNS,
+    /** the oldest waiting job is dropped to make room for the new one; the overflow listener is notified. */
+    DROP_OLDEST
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.typed.worker;
+
+import akka.actor.Status;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import net.e6tech.elements.common.actor.typed.Receptor;
+import net.e6tech.elements.common.actor.typed.Typed;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A worker of StealingWorkerPool.  Submitters push jobs onto its deque directly; the worker is only sent a
+ * Wake message when it is idle.  Once awake, it drains its own deque from the head and then steals
+ * from the tail of other workers' deques before going idle again.
+ */
+@SuppressWarnings("unchecked")
+public class StealingWorker extends Receptor<WorkEvents, StealingWorker> {
+    private static final int BATCH = 64;  // jobs to run before yielding the dispatcher thread
+
+    private final StealingWorkerPool pool;
+    private final ConcurrentLinkedDeque<WorkEvents> deque = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger backlog = new AtomicInteger();  // ConcurrentLinkedDeque.size() is O(n)
+    private final AtomicBoolean idle = new AtomicBoolean(false);
+    private volatile boolean retired = false;
+    private volatile long idleSince = System.currentTimeMillis();
+    private volatile ActorRef<WorkEvents> ref;
+
+    public StealingWorker(StealingWorkerPool pool) {
+        this.pool = pool;
+    }
+
+    void setRef(ActorRef<WorkEvents> ref) {
+        this.ref = ref;
+    }
+
+    void push(WorkEvents job) {
+        deque.offerLast(job);
+        backlog.incrementAndGet();
+    }
+
+    boolean remove(WorkEvents job) {
+        if (deque.removeLastOccurrence(job)) {
+            backlog.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    WorkEvents steal() {
+        return taken(deque.pollLast());
+    }
+
+    private WorkEvents poll() {
+        return taken(deque.pollFirst());
+    }
+
+    private WorkEvents taken(WorkEvents job) {
+        if (job != null) {
+            backlog.decrementAndGet();
+            pool.started(job);
+        }
+        return job;
+    }
+
+    /**
+     * Removes the oldest job without running it.
+     */
+    WorkEvents drop() {
+        WorkEvents job = deque.pollFirst();
+        if (job != null)
+            backlog.decrementAndGet();
+        return job;
+    }
+
+    int backlog() {
+        return backlog.get();
+    }
+
+    boolean hasBacklog() {
+        return !deque.isEmpty();
+    }
+
+    boolean isIdle() {
+        return idle.get();
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * Claims an idle worker.  Only the caller that succeeds may send it a Wake message.
+     */
+    boolean claim() {
+        if (idle.compareAndSet(true, false)) {
+            pool.busy();
+            return true;
+        }
+        return false;
+    }
+
+    void wake() {
+        ref.tell(new WorkEvents.Wake());
+    }
+
+    /**
+     * Retires an idle worker.  Taking the idle flag first guarantees no submitter can claim it afterwards.
+     */
+    boolean retire() {
+        if (idle.compareAndSet(true, false)) {
+            retired = true;
+            ref.tell(new WorkEvents.Retire());
+            return true;
+        }
+        return false;
+    }
+
+    @Typed
+    private void wake(WorkEvents.Wake message) {
+        for (int i = 0; i < BATCH; i++) {
+            WorkEvents job = poll();
+            if (job == null)
+                job = pool.steal(this);
+            if (job == null) {
+                goIdle();
+                return;
+            }
+            run(job);
+        }
+        // yield so that other actors sharing the dispatcher get a chance to run.
+        getSelf().tell(message);
+    }
+
+    @Typed
+    private Behavior<WorkEvents> retire(WorkEvents.Retire message) {
+        WorkEvents job;
+        while ((job = poll()) != null)
+            run(job);
+        return Behaviors.stopped();
+    }
+
+    private void goIdle() {
+        idleSince = System.currentTimeMillis();
+        idle.set(true);
+        pool.idle();
+        // a job may have been pushed after the last poll; submitters only wake idle workers.
+        if (!retired && pool.hasBacklog() && claim())
+            getSelf().tell(new WorkEvents.Wake());
+    }
+
+    static void run(WorkEvents job) {
+        if (job instanceof WorkEvents.RunnableTask) {
+            WorkEvents.RunnableTask message = (WorkEvents.RunnableTask) job;
+            try {
+                message.getRunnable().run();
+                if (message.getSender() != null)
+                    message.getSender().tell(new WorkEvents.Response());
+            } catch (Exception th) {
+                if (message.getSender() != null)
+                    message.getSender().tell(new Status.Failure(th));
+            }
+        } else if (job instanceof WorkEvents.CallableTask) {
+            WorkEvents.CallableTask message = (WorkEvents.CallableTask) job;
+            try {
+                Object ret = message.getCallable().call();
+                if (message.getSender() != null)
+                    message.getSender().tell(new WorkEvents.Response(ret));
+            } catch (Exception th) {
+                if (message.getSender() != null)
+                    message.getSender().tell(new Status.Failure(th));
+            }
+        }
+    }
+}
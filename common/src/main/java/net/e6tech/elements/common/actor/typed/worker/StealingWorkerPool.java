@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.typed.worker;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.ActorContext;
+import net.e6tech.elements.common.actor.typed.Guardian;
+import net.e6tech.elements.common.actor.typed.Receptor;
+import net.e6tech.elements.common.actor.typed.Typed;
+import net.e6tech.elements.common.reflection.Reflection;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * An alternative to WorkerPool.  Jobs are handed to workers by the submitting thread through {@link #submit(WorkEvents)}:
+ * an idle worker is claimed and sent a single Wake message, or, when every worker is busy, the job is pushed onto
+ * the shorter of two randomly chosen worker deques.  Busy workers keep draining their own deque and steal from
+ * others, so no job passes through the pool actor's mailbox.  The pool actor only spawns workers when they are all busy
+ * and retires idle ones after idleTimeout.
+ *
+ * Jobs pushed while every worker is busy count against WorkerPoolConfig.maxWaiting; beyond it the overflow policy
+ * is applied by the submitting thread.
+ */
+@SuppressWarnings("unchecked")
+public class StealingWorkerPool extends Receptor<WorkEvents, StealingWorkerPool> {
+
+    private volatile StealingWorker[] workers = new StealingWorker[0];
+    private final AtomicBoolean growing = new AtomicBoolean(false);
+    private final AtomicInteger busyCount = new AtomicInteger();
+    private final AtomicInteger waitCount = new AtomicInteger();
+    private final Backpressure backpressure = new Backpressure();
+    private boolean cleanupScheduled = false;
+    protected WorkerPoolConfig config = new WorkerPoolConfig();
+    private boolean stopped = true;
+    private ActorRef<WorkEvents> self;
+
+    // for proxy
+    public StealingWorkerPool() {
+    }
+
+    public StealingWorkerPool(WorkerPoolConfig config) {
+        Reflection.copyInstance(this.config, config);
+    }
+
+    public synchronized void join() {
+        while (busyCount.get() > 0 || hasBacklog()) {
+            try {
+                wait(100L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized void stopped() {
+        while (!stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public Behavior<WorkEvents> setup(ActorContext<WorkEvents> ctx, Guardian guardian) {
+        super.setup(ctx, guardian);
+        self = ctx.getSelf();
+        for (int i = 0; i < config.getInitialCapacity(); i++) {
+            newWorker();
+        }
+        synchronized (this) {
+            stopped = false;
+        }
+        return getBehavior();
+    }
+
+    public boolean isSaturated() {
+        return waitCount.get() >= config.getMaxWaiting();
+    }
+
+    public Histogram getWaitTime() {
+        return backpressure.getWaitTime();
+    }
+
+    public Consumer<WorkEvents> getOverflowListener() {
+        return backpressure.getOverflowListener();
+    }
+
+    /**
+     * Listener notified of every job shed because the waiting queue is full.
+     */
+    public void setOverflowListener(Consumer<WorkEvents> overflowListener) {
+        backpressure.setOverflowListener(overflowListener);
+    }
+
+    /**
+     * Hands a RunnableTask or CallableTask to a worker.  Safe to call from any thread.
+     * @param job RunnableTask or CallableTask
+     * @throws RejectedExecutionException if the waiting queue is full and the overflow policy is REJECT.
+     */
+    public void submit(WorkEvents job) {
+        submit(job, true);
+    }
+
+    private void submit(WorkEvents job, boolean callerThread) {
+        StealingWorker[] snapshot = workers;
+        int n = snapshot.length;
+        if (n == 0) {
+            // no worker yet, let the pool actor start one.
+            self.tell(job);
+            return;
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            StealingWorker worker = snapshot[(start + i) % n];
+            if (worker.isIdle() && worker.claim()) {
+                waitCount.incrementAndGet();
+                worker.push(job);
+                worker.wake();
+                return;
+            }
+        }
+
+        // everyone is busy
+        if (waitCount.get() >= config.getMaxWaiting() && !overflow(job, callerThread, snapshot))
+            return;
+
+        StealingWorker a = snapshot[start];
+        StealingWorker b = snapshot[ThreadLocalRandom.current().nextInt(n)];
+        StealingWorker worker = (b.backlog() < a.backlog()) ? b : a;
+        waitCount.incrementAndGet();
+        worker.push(job);
+        if (worker.isRetired()) {
+            if (worker.remove(job)) {
+                waitCount.decrementAndGet();
+                submit(job, callerThread);
+            }
+            return;
+        }
+        if (worker.isIdle() && worker.claim())
+            worker.wake();
+        if (n < config.getMaxCapacity() && growing.compareAndSet(false, true))
+            self.tell(new WorkEvents.Grow());
+    }
+
+    /*
+     * Applies the overflow policy.  Returns true if the job should still be queued.
+     */
+    private boolean overflow(WorkEvents job, boolean callerThread, StealingWorker[] snapshot) {
+        OverflowPolicy policy = config.getOverflowPolicy();
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            StealingWorker longest = null;
+            for (StealingWorker worker : snapshot) {
+                if (longest == null || worker.backlog() > longest.backlog())
+                    longest = worker;
+            }
+            WorkEvents dropped = (longest != null) ? longest.drop() : null;
+            if (dropped != null) {
+                waitCount.decrementAndGet();
+                backpressure.shed(dropped);
+                return true;
+            }
+            backpressure.shed(job);
+            return false;
+        } else if (policy == OverflowPolicy.CALLER_RUNS && callerThread) {
+            backpressure.started(job);
+            StealingWorker.run(job);
+            return false;
+        }
+
+        backpressure.shed(job);
+        if (callerThread)
+            throw new RejectedExecutionException("Worker pool " + config.getName() + " saturated");
+        return false;
+    }
+
+    void started(WorkEvents job) {
+        waitCount.decrementAndGet();
+        backpressure.started(job);
+    }
+
+    public WorkEvents.StatusResponse status() {
+        StealingWorker[] snapshot = workers;
+        WorkEvents.StatusResponse response = new WorkEvents.StatusResponse();
+        int idle = 0;
+        int waiting = 0;
+        for (StealingWorker worker : snapshot) {
+            if (worker.isIdle())
+                idle++;
+            waiting += worker.backlog();
+        }
+        response.setIdleCount(idle);
+        response.setWorkerCount(snapshot.length);
+        response.setBusyCount(snapshot.length - idle);
+        response.setWaitCount(waiting);
+        backpressure.fill(response);
+        return response;
+    }
+
+    @Typed
+    public WorkEvents.StatusResponse status(WorkEvents.Status message) {
+        return status();
+    }
+
+    @Typed
+    public void execute(WorkEvents.RunnableTask event) {
+        if (workers.length == 0)
+            newWorker();
+        submit(event, false);
+    }
+
+    @Typed
+    public void execute(WorkEvents.CallableTask event) {
+        if (workers.length == 0)
+            newWorker();
+        submit(event, false);
+    }
+
+    @Typed
+    private void grow(WorkEvents.Grow message) {
+        growing.set(false);
+        if (workers.length < config.getMaxCapacity())
+            newWorker();
+        scheduleCleanup(new WorkEvents.ScheduleCleanup());
+    }
+
+    private void newWorker() {
+        StealingWorker worker = new StealingWorker(this);
+        busyCount.incrementAndGet();
+        worker.setRef(childActor(StealingWorker.class).spawn(worker));
+        StealingWorker[] list = Arrays.copyOf(workers, workers.length + 1);
+        list[list.length - 1] = worker;
+        workers = list;
+        // a new worker starts out busy so that it steals whatever is backed up.
+        worker.wake();
+    }
+
+    WorkEvents steal(StealingWorker thief) {
+        StealingWorker[] snapshot = workers;
+        int n = snapshot.length;
+        if (n == 0)
+            return null;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            StealingWorker victim = snapshot[(start + i) % n];
+            if (victim == thief)
+                continue;
+            WorkEvents job = victim.steal();
+            if (job != null)
+                return job;
+        }
+        return null;
+    }
+
+    boolean hasBacklog() {
+        for (StealingWorker worker : workers) {
+            if (worker.hasBacklog())
+                return true;
+        }
+        return false;
+    }
+
+    void busy() {
+        busyCount.incrementAndGet();
+    }
+
+    void idle() {
+        if (busyCount.decrementAndGet() == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Typed
+    private void scheduleCleanup(WorkEvents.ScheduleCleanup message) {
+        if (cleanupScheduled)
+            return;
+        if (config.getIdleTimeout() == 0)
+            return;
+        if (workers.length <= config.getInitialCapacity())
+            return;
+        final Duration interval = Duration.ofMillis(config.getIdleTimeout());
+        getContext().scheduleOnce(interval, getSelf(), new WorkEvents.Cleanup());
+        cleanupScheduled = true;
+    }
+
+    @Typed
+    private void cleanup(WorkEvents.Cleanup message) {
+        cleanupScheduled = false;
+        long expired = System.currentTimeMillis() - config.getIdleTimeout();
+        int count = workers.length - config.getInitialCapacity();
+        List<StealingWorker> remaining = new ArrayList<>(Arrays.asList(workers));
+        for (StealingWorker worker : workers) {
+            if (count <= 0)
+                break;
+            if (worker.isIdle() && worker.getIdleSince() <= expired && worker.retire()) {
+                remaining.remove(worker);
+                count--;
+            }
+        }
+        workers = remaining.toArray(new StealingWorker[0]);
+        if (workers.length > config.getInitialCapacity())
+            scheduleCleanup(new WorkEvents.ScheduleCleanup());
+    }
+
+    @Typed
+    synchronized void stopped(PostStop message) {
+        stopped = true;
+        notifyAll();
+    }
+}
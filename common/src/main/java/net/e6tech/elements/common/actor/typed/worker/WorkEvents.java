@@ -45,6 +45,18 @@ public interface WorkEvents {
         private static final long serialVersionUID = 1754051340286965211L;
     }
 
+    class Wake implements WorkEvents, Serializable {
+        private static final long serialVersionUID = -2466393371358862375L;
+    }
+
+    class Grow implements WorkEvents, Serializable {
+        private static final long serialVersionUID = 6128340017046738296L;
+    }
+
+    class Retire implements WorkEvents, Serializable {
+        private static final long serialVersionUID = 2190355468417283455L;
+    }
+
     class Status extends Ask implements WorkEvents, Serializable {
         public Status() {
         }
@@ -59,6 +71,10 @@ public interface WorkEvents {
         private int workerCount;
         private int busyCount;
         private int waitCount;
+        private long shedCount;
+        private double averageWaitTime;
+        private double waitTime99;
+        private double maxWaitTime;
 
         public int getIdleCount() {
             return idleCount;
@@ -91,11 +107,50 @@ public interface WorkEvents {
         public void setWaitCount(int waitCount) {
             this.waitCount = waitCount;
         }
+
+        /**
+         * Number of jobs rejected or dropped because the waiting queue was full.
+         */
+        public long getShedCount() {
+            return shedCount;
+        }
+
+        public void setShedCount(long shedCount) {
+            this.shedCount = shedCount;
+        }
+
+        /**
+         * In milliseconds, from submission to the time a worker picks up the job.
+         */
+        public double getAverageWaitTime() {
+            return averageWaitTime;
+        }
+
+        public void setAverageWaitTime(double averageWaitTime) {
+            this.averageWaitTime = averageWaitTime;
+        }
+
+        public double getWaitTime99() {
+            return waitTime99;
+        }
+
+        public void setWaitTime99(double waitTime99) {
+            this.waitTime99 = waitTime99;
+        }
+
+        public double getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        public void setMaxWaitTime(double maxWaitTime) {
+            this.maxWaitTime = maxWaitTime;
+        }
     }
 
     class RunnableTask extends Ask implements WorkEvents, Serializable {
         private static final long serialVersionUID = -8279583557717048047L;
         private Runnable runnable;
+        private transient long submitted = System.nanoTime();
 
         public RunnableTask(Runnable runnable) {
             this.runnable = runnable;
@@ -109,11 +164,16 @@ public interface WorkEvents {
         public Runnable getRunnable() {
             return runnable;
         }
+
+        public long getSubmitted() {
+            return submitted;
+        }
     }
 
     class CallableTask extends Ask implements WorkEvents, Serializable {
         private static final long serialVersionUID = -5567603118967175000L;
         private Callable callable;
+        private transient long submitted = System.nanoTime();
 
         public CallableTask(Callable callable) {
            this.callable = callable;
@@ -127,6 +187,10 @@ public interface WorkEvents {
         public Callable getCallable() {
             return callable;
         }
+
+        public long getSubmitted() {
+            return submitted;
+        }
     }
 
     class Response implements WorkEvents {
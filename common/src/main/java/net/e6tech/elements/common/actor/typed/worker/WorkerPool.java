@@ -24,9 +24,11 @@ import net.e6tech.elements.common.actor.typed.Guardian;
 import net.e6tech.elements.common.actor.typed.Receptor;
 import net.e6tech.elements.common.actor.typed.Typed;
 import net.e6tech.elements.common.reflection.Reflection;
+import net.e6tech.elements.common.util.concurrent.Histogram;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
 
 @SuppressWarnings("unchecked")
 public class WorkerPool extends Receptor<WorkEvents, WorkerPool> {
@@ -36,6 +38,8 @@ public class WorkerPool extends Receptor<WorkEvents, WorkerPool> {
     private Set<ActorRef<WorkEvents>> idleWorkers = new LinkedHashSet<>();
     private Set<ActorRef<WorkEvents>> busyWorkers = new LinkedHashSet<>();
     private LinkedList<Task> waiting = new LinkedList<>();
+    private volatile int waitCount = 0;  // mirrors waiting.size() for threads outside of the actor
+    private Backpressure backpressure = new Backpressure();
     protected WorkerPoolConfig config = new WorkerPoolConfig();
     private boolean stopped = true;
 
@@ -67,6 +71,48 @@ public class WorkerPool extends Receptor<WorkEvents, WorkerPool> {
         }
     }
 
+    /**
+     * True when the waiting queue has reached maxWaiting.  Callers outside of the actor, e.g. ActorExecutor,
+     * use it to apply the overflow policy before sending a job.
+     */
+    public boolean isSaturated() {
+        return waitCount >= config.getMaxWaiting();
+    }
+
+    /**
+     * Applies the overflow policy on the calling thread when the pool is saturated.  Exceptions thrown here
+     * would reach a virtualized caller wrapped, so the applied policy is returned instead: for REJECT the job has been
+     * counted as shed and the caller should throw RejectedExecutionException; for CALLER_RUNS the job has been run;
+     * for DROP_OLDEST the caller should send the job anyway and the pool drops its oldest waiting job.
+     * @param task job that would otherwise be sent to the pool
+     * @return the policy applied
+     */
+    public OverflowPolicy overflow(WorkEvents.RunnableTask task) {
+        OverflowPolicy policy = config.getOverflowPolicy();
+        if (policy == OverflowPolicy.CALLER_RUNS) {
+            backpressure.started(task);
+            task.getRunnable().run();
+        } else if (policy == OverflowPolicy.REJECT) {
+            backpressure.shed(task);
+        }
+        return policy;
+    }
+
+    public Histogram getWaitTime() {
+        return backpressure.getWaitTime();
+    }
+
+    public Consumer<WorkEvents> getOverflowListener() {
+        return backpressure.getOverflowListener();
+    }
+
+    /**
+     * Listener notified of every job shed because the waiting queue is full.
+     */
+    public void setOverflowListener(Consumer<WorkEvents> overflowListener) {
+        backpressure.setOverflowListener(overflowListener);
+    }
+
     @Override
     public Behavior<WorkEvents> setup(ActorContext<WorkEvents> ctx, Guardian guardian) {
         super.setup(ctx, guardian);
@@ -84,41 +130,51 @@ public class WorkerPool extends Receptor<WorkEvents, WorkerPool> {
         response.setWorkerCount(workers.size());
         response.setBusyCount(busyWorkers.size());
         response.setWaitCount(waiting.size());
+        backpressure.fill(response);
         return response;
     }
 
     @Typed
     public void execute(WorkEvents.RunnableTask event) {
-        if (!idleWorkers.isEmpty()) {
-            Iterator<ActorRef<WorkEvents>> iterator = idleWorkers.iterator();
-            ActorRef worker = iterator.next();
-            iterator.remove();
-            busyWorkers.add(worker);
-            worker.tell(event);
-        } else if (workers.size() < config.getMaxCapacity()) {
-            // put in waiting list.  When a work becomes idled, it will be picked up
-            waiting.add(new Task(event.getSender(), event));
-            newWorker();
-        } else {
-            waiting.add(new Task(event.getSender(), event));
-        }
+        dispatch(event.getSender(), event);
     }
 
     @Typed
     public void execute(WorkEvents.CallableTask event) {
+        dispatch(event.getSender(), event);
+    }
+
+    private void dispatch(ActorRef sender, WorkEvents event) {
         if (!idleWorkers.isEmpty()) {
             Iterator<ActorRef<WorkEvents>> iterator = idleWorkers.iterator();
             ActorRef<WorkEvents> worker = iterator.next();
             iterator.remove();
             busyWorkers.add(worker);
+            backpressure.started(event);
             worker.tell(event);
         } else if (workers.size() < config.getMaxCapacity()) {
             // put in waiting list.  When a work becomes idled, it will be picked up
-            waiting.add(new Task(event.getSender(), event));
+            // The new worker takes it right away so it is not subject to maxWaiting.
+            waiting.add(new Task(sender, event));
+            waitCount = waiting.size();
             newWorker();
         } else {
-            waiting.add(new Task(event.getSender(), event));
+            enqueue(new Task(sender, event));
+        }
+    }
+
+    private void enqueue(Task task) {
+        if (waiting.size() >= config.getMaxWaiting()) {
+            if (config.getOverflowPolicy() == OverflowPolicy.DROP_OLDEST && !waiting.isEmpty()) {
+                backpressure.shed(waiting.removeFirst().getWork());
+            } else {
+                // CALLER_RUNS is applied by the caller before sending; here there is no caller thread to run it.
+                backpressure.shed(task.getWork());
+                return;
+            }
         }
+        waiting.add(task);
+        waitCount = waiting.size();
     }
 
     private void newWorker() {
@@ -136,7 +192,9 @@ public class WorkerPool extends Receptor<WorkEvents, WorkerPool> {
         if (!waiting.isEmpty()) {
             // there are tasks waiting.  Instead of idle this work, make it do work.
             WorkerPool.Task task = waiting.removeFirst();
+            waitCount = waiting.size();
             busyWorkers.add(worker);
+            backpressure.started(task.getWork());
             worker.tell(task.getWork());
         } else {
             busyWorkers.remove(worker);
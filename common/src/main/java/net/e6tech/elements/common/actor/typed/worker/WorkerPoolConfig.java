@@ -22,6 +22,9 @@ public class WorkerPoolConfig {
     private long idleTimeout = 10000L;
     private String name = "WorkerPool";
     private String dispatcher;
+    private boolean workStealing = false;
+    private int maxWaiting = Integer.MAX_VALUE;  // ie unbounded
+    private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
 
     public String getName() {
         return name;
@@ -62,4 +65,35 @@ public class WorkerPoolConfig {
     public void setDispatcher(String dispatcher) {
         this.dispatcher = dispatcher;
     }
+
+    /**
+     * When true, ActorExecutor uses a StealingWorkerPool, which hands jobs directly to per-worker deques
+     * instead of routing every job through the pool actor's mailbox.
+     */
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
+    public void setWorkStealing(boolean workStealing) {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * Maximum number of jobs waiting for a worker.  Beyond it, jobs are shed according to overflowPolicy.
+     */
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    public void setMaxWaiting(int maxWaiting) {
+        this.maxWaiting = maxWaiting;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
 }
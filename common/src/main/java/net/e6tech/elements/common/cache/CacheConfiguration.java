@@ -20,7 +20,7 @@ import net.e6tech.elements.common.util.SystemException;
 import javax.cache.Cache;
 import javax.cache.CacheException;
 import javax.cache.CacheManager;
-import javax.cache.Caching;
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,6 +39,17 @@ public class CacheConfiguration {
     private long expiry = DEFAULT_EXPIRY;
     private long maxEntries = 1024L;
     private boolean storeByValue = false;
+    private long refreshAhead = 0L;
+    private long timeToIdle = 0L;
+    private EntryExpiry entryExpiry;
+    private long nearCacheSize = 0L;
+    private long nearCacheExpiry = 0L;
+    private long offHeapSize = 0L;
+    private long diskSize = 0L;
+    private String diskPath = System.getProperty("java.io.tmpdir") + File.separator + "elements-cache";
+    private boolean diskPersistent = false;
+    private String keySerializer;
+    private String valueSerializer;
 
     public CacheConfiguration() {
         // default constructor
@@ -78,6 +89,145 @@ public class CacheConfiguration {
         this.storeByValue = storeByValue;
     }
 
+    public long getTimeToIdle() {
+        return timeToIdle;
+    }
+
+    /**
+     * When greater than zero, entries expire once they have not been accessed for timeToIdle milliseconds
+     * instead of expiry milliseconds after they were written.
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        if (timeToIdle < 0)
+            throw new IllegalArgumentException();
+        this.timeToIdle = timeToIdle;
+    }
+
+    public EntryExpiry getEntryExpiry() {
+        return entryExpiry;
+    }
+
+    /**
+     * Per entry time to live, evaluated by the cache when an entry is created or updated.  Takes precedence over
+     * timeToIdle.
+     */
+    public void setEntryExpiry(EntryExpiry entryExpiry) {
+        this.entryExpiry = entryExpiry;
+    }
+
+    public long getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    /**
+     * When greater than zero, CacheFacade keeps up to nearCacheSize recently read values on heap, by reference,
+     * in front of the cache.  Near caches of the same name are invalidated through the facade's NotificationCenter.
+     */
+    public void setNearCacheSize(long nearCacheSize) {
+        if (nearCacheSize < 0)
+            throw new IllegalArgumentException();
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    public long getNearCacheExpiry() {
+        return nearCacheExpiry;
+    }
+
+    /**
+     * Upper bound, in milliseconds, on how long a near cache entry is kept, hence on staleness should an invalidation
+     * be lost.  0 means expiry.
+     */
+    public void setNearCacheExpiry(long nearCacheExpiry) {
+        if (nearCacheExpiry < 0)
+            throw new IllegalArgumentException();
+        this.nearCacheExpiry = nearCacheExpiry;
+    }
+
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    /**
+     * Size of the off-heap tier in megabytes, 0 for none.  Entries in the off-heap and disk tiers are stored
+     * serialized, see keySerializer and valueSerializer.  maxEntries then bounds the heap tier only.
+     */
+    public void setOffHeapSize(long offHeapSize) {
+        if (offHeapSize < 0)
+            throw new IllegalArgumentException();
+        this.offHeapSize = offHeapSize;
+    }
+
+    public long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * Size of the local disk tier in megabytes, 0 for none.  Files are kept under diskPath.
+     */
+    public void setDiskSize(long diskSize) {
+        if (diskSize < 0)
+            throw new IllegalArgumentException();
+        this.diskSize = diskSize;
+    }
+
+    public String getDiskPath() {
+        return diskPath;
+    }
+
+    public void setDiskPath(String diskPath) {
+        this.diskPath = diskPath;
+    }
+
+    public boolean isDiskPersistent() {
+        return diskPersistent;
+    }
+
+    /**
+     * Whether the disk tier survives a restart.
+     */
+    public void setDiskPersistent(boolean diskPersistent) {
+        this.diskPersistent = diskPersistent;
+    }
+
+    public String getKeySerializer() {
+        return keySerializer;
+    }
+
+    /**
+     * Class name of the serializer for keys in the off-heap and disk tiers.  For Ehcache, an
+     * org.ehcache.spi.serialization.Serializer with a ClassLoader constructor.  Defaults to the provider's serializer.
+     */
+    public void setKeySerializer(String keySerializer) {
+        this.keySerializer = keySerializer;
+    }
+
+    public String getValueSerializer() {
+        return valueSerializer;
+    }
+
+    /**
+     * Class name of the serializer for values in the off-heap and disk tiers, see keySerializer.
+     */
+    public void setValueSerializer(String valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    public long getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * When greater than zero, CacheFacade.get(key, callable) reloads an entry asynchronously once it is within
+     * refreshAhead milliseconds of expiring, so that hot entries do not expire under load.  Expiration follows
+     * entryExpiry when set; entries expiring on timeToIdle are not refreshed since reading them keeps them alive.
+     * @param refreshAhead milliseconds before expiry, 0 to disable.
+     */
+    public void setRefreshAhead(long refreshAhead) {
+        if (refreshAhead < 0)
+            throw new IllegalArgumentException();
+        this.refreshAhead = refreshAhead;
+    }
+
     public synchronized CacheManager getCacheManager() {
         if (cacheManager != null)
             return cacheManager;
@@ -89,7 +239,9 @@ public class CacheConfiguration {
                 throw new SystemException(e);
             }
         }
-        cacheManager = managers.computeIfAbsent(provider.getProviderClassName(), key ->  Caching.getCachingProvider(key).getCacheManager());
+        // a disk tier needs a manager with its own persistence directory.
+        String key = (diskSize > 0) ? provider.getProviderClassName() + ":" + new File(diskPath).getAbsolutePath() : provider.getProviderClassName();
+        cacheManager = managers.computeIfAbsent(key, k -> provider.getCacheManager(this));
         return cacheManager;
     }
 
@@ -16,28 +16,67 @@
 
 package net.e6tech.elements.common.cache;
 
+import com.google.common.cache.CacheBuilder;
 import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.notification.NotificationCenter;
+import net.e6tech.elements.common.notification.NotificationListener;
+import net.e6tech.elements.common.subscribe.Subscriber;
 import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.util.SystemException;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
 
 import javax.cache.Cache;
+import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
  * This class should be instantiated as an anonymous class.  For example,
  * {@code new CacheFacade&lt;K,V&gt;("name") {}}
+ *
+ * get(key, callable) loads at most once per key at a time: callers that miss while a load is in flight
+ * wait for its result instead of calling the loader themselves.  The loader must not call get on the same key.
+ *
+ * When CacheConfiguration.nearCacheSize is set, recently read values are also kept by reference in an on-heap near
+ * cache.  Writes through put or remove invalidate near caches of the same name: directly for facades sharing the
+ * NotificationCenter and, when the NotificationCenter has a cluster broadcast, on other nodes, where the entry is
+ * removed from the cache as well.  Keys must be Serializable to be invalidated on other nodes; clear empties the cache
+ * on every node.  close stops listening for invalidations.
  * Created by futeh.
  */
 @SuppressWarnings("unchecked")
 public abstract class CacheFacade<K, V> {
+    private static final Logger logger = Logger.getLogger();
+    private static final String REFRESH_POOL = "CacheFacade-refresh";
+    private static final int REFRESH_THREADS = 4;
+    private static final int REFRESH_QUEUE = 1024;
+
     protected CacheConfiguration configuration;
     protected String name;
     protected Class keyClass;
     protected Class valueClass;
-    Cache<K, V> cache;
+    volatile Cache<K, V> cache;
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final Map<K, Long> loaded = new ConcurrentHashMap<>(); // expiration times, only kept for refresh-ahead
+    private volatile long lastPrune = System.currentTimeMillis();
+    private NotificationCenter notificationCenter;
+    private volatile com.google.common.cache.Cache<K, V> near;
+    private final AtomicLong invalidations = new AtomicLong(); // keeps near cache fills from racing with writes
+    private NotificationCenter listeningTo;
+    private NotificationListener invalidationListener;
+    private Subscriber invalidationSubscriber;
+    private volatile boolean unpublishedKeyWarned = false;
+    private CacheStatistics statistics;
 
     public CacheFacade() {
         this(Reflection.getCallingClass(), null);
@@ -107,41 +146,307 @@ public abstract class CacheFacade<K, V> {
         this.configuration = configuration;
     }
 
+    public NotificationCenter getNotificationCenter() {
+        return notificationCenter;
+    }
+
+    @Inject(optional = true)
+    public synchronized void setNotificationCenter(NotificationCenter notificationCenter) {
+        unlisten();
+        this.notificationCenter = notificationCenter;
+        listen();
+    }
+
+    /**
+     * @return statistics shared by facades of the same name; available once the cache is in use.
+     */
+    public CacheStatistics getStatistics() {
+        getCache();
+        return statistics;
+    }
+
     public V get(K key) {
-        return getCache().get(key);
+        Cache<K,V> c = getCache();
+        com.google.common.cache.Cache<K, V> l1 = near;
+        V value = (l1 != null) ? l1.getIfPresent(key) : null;
+        if (value == null) {
+            long version = invalidations.get();
+            value = c.get(key);
+            fill(l1, key, value, version);
+        }
+        if (value == null)
+            statistics.miss();
+        else
+            statistics.hit();
+        return value;
     }
 
     public V get(K key, Callable<V> callable) {
         Cache<K,V> c = getCache();
-        V value = c.get(key);
+        com.google.common.cache.Cache<K, V> l1 = near;
+        V value = (l1 != null) ? l1.getIfPresent(key) : null;
         if (value == null) {
-            try {
-                value = callable.call();
-                if (value != null)
-                    c.put(key, value);
-            } catch (Exception e) {
-                throw new SystemException(e);
+            long version = invalidations.get();
+            value = c.get(key);
+            if (value == null) {
+                statistics.miss();
+                value = load(c, key, callable);
+                fill(l1, key, value, version);
+                return value;
             }
+            fill(l1, key, value, version);
         }
+        statistics.hit();
+        if (configuration.getRefreshAhead() > 0)
+            refreshAhead(c, key, callable);
         return value;
     }
 
+    /*
+     * Writers bump invalidations before evicting, so a value read before a write is either evicted by the writer
+     * or by the re-check below.
+     */
+    private void fill(com.google.common.cache.Cache<K, V> l1, K key, V value, long version) {
+        if (l1 == null || value == null || invalidations.get() != version)
+            return;
+        l1.put(key, value);
+        if (invalidations.get() != version)
+            l1.invalidate(key);
+    }
+
+    private V load(Cache<K,V> c, K key, Callable<V> callable) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, flight);
+        if (existing != null)
+            return await(existing);
+
+        try {
+            // another caller may have finished loading between our miss and putIfAbsent.
+            V value = c.get(key);
+            if (value == null)
+                value = call(c, key, callable);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, flight);
+        }
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new SystemException(ex.getCause());
+        }
+    }
+
+    private V call(Cache<K,V> c, K key, Callable<V> callable) {
+        V value;
+        long start = System.nanoTime();
+        try {
+            value = callable.call();
+        } catch (Exception e) {
+            statistics.loadFailed();
+            throw new SystemException(e);
+        }
+        statistics.loaded(System.nanoTime() - start);
+        if (value != null) {
+            c.put(key, value);
+            loaded(key, value);
+        }
+        return value;
+    }
+
+    /*
+     * Reloads the entry in the background once it is within refreshAhead of expiring.  Readers keep getting
+     * the current value meanwhile.  Reloads run on a bounded pool; when it is saturated the entry is left to expire.
+     */
+    private void refreshAhead(Cache<K,V> c, K key, Callable<V> callable) {
+        Long expiration = loaded.get(key);
+        if (expiration == null || expiration - System.currentTimeMillis() > configuration.getRefreshAhead())
+            return;
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, flight) != null)
+            return;
+
+        try {
+            ThreadPool.rateLimitedThreadPool(REFRESH_POOL, REFRESH_THREADS, REFRESH_THREADS, 60, REFRESH_QUEUE).execute(() -> {
+                try {
+                    flight.complete(call(c, key, callable));
+                    invalidate(key, false);
+                } catch (RuntimeException ex) {
+                    logger.warn("Cannot refresh {} in cache {}", key, name, ex);
+                    flight.completeExceptionally(ex);
+                } finally {
+                    loading.remove(key, flight);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            Logger.suppress(ex);
+            loading.remove(key, flight);
+            // callers that missed in the meantime wait on flight.
+            V value = c.get(key);
+            flight.complete(value != null ? value : call(c, key, callable));
+        }
+    }
+
+    /*
+     * Records when the entry expires, following the same policy as the cache provider.  Entries expiring on
+     * timeToIdle do not expire while they are read, so they are not refreshed ahead.
+     */
+    private void loaded(K key, V value) {
+        if (configuration.getRefreshAhead() <= 0)
+            return;
+        EntryExpiry<K, V> entryExpiry = configuration.getEntryExpiry();
+        if (entryExpiry == null && configuration.getTimeToIdle() > 0)
+            return;
+        long ttl = (entryExpiry != null) ? entryExpiry.expiry(key, value) : -1L;
+        if (ttl < 0)
+            ttl = configuration.getExpiry();
+        long now = System.currentTimeMillis();
+        loaded.put(key, now + ttl);
+        // expired entries are gone from the cache, so are their expiration times.
+        if (now - lastPrune > configuration.getExpiry()) {
+            lastPrune = now;
+            loaded.values().removeIf(t -> t < now);
+        }
+    }
+
     public boolean remove(K key) {
         Cache<K,V> c = getCache();
-        return c.remove(key);
+        loaded.remove(key);
+        boolean removed = c.remove(key);
+        invalidate(key, true);
+        return removed;
     }
 
     public void put(K key, V value) {
         getCache().put(key, value);
+        loaded(key, value);
+        invalidate(key, true);
+    }
+
+    /**
+     * Removes every entry, on other nodes as well when the NotificationCenter has a cluster broadcast.
+     */
+    public void clear() {
+        getCache().removeAll();
+        loaded.clear();
+        evict(near, null, true);
+        NotificationCenter center = notificationCenter;
+        if (center == null)
+            return;
+        CacheInvalidation invalidation = CacheInvalidation.all(name, center.getId(), this);
+        center.fireNotification(invalidation);
+        center.publish(CacheInvalidation.topic(name), invalidation);
+    }
+
+    /**
+     * Stops listening for invalidations and drops the near cache.  The facade starts over on next use.
+     */
+    public synchronized void close() {
+        unlisten();
+        near = null;
+        cache = null;
+    }
+
+    private void invalidate(K key, boolean publish) {
+        com.google.common.cache.Cache<K, V> l1 = near;
+        if (l1 == null)
+            return;
+        evict(l1, key, false);
+        NotificationCenter center = notificationCenter;
+        if (center == null)
+            return;
+        CacheInvalidation invalidation = new CacheInvalidation(name, key, center.getId(), this);
+        center.fireNotification(invalidation);
+        if (!publish)
+            return;
+        if (key instanceof Serializable) {
+            center.publish(CacheInvalidation.topic(name), invalidation);
+        } else if (!unpublishedKeyWarned) {
+            unpublishedKeyWarned = true;
+            logger.warn("Keys of cache {} are not Serializable; writes are not invalidated on other nodes", name);
+        }
     }
 
-    protected synchronized Cache<K,V> getCache() {
-        if (cache != null)
+    private void evict(com.google.common.cache.Cache<K, V> l1, Object key, boolean all) {
+        if (l1 == null)
+            return;
+        invalidations.incrementAndGet();
+        if (all)
+            l1.invalidateAll();
+        else if (key != null)
+            l1.invalidate(key);
+    }
+
+    private synchronized void listen() {
+        if (listeningTo != null || near == null || notificationCenter == null)
+            return;
+        NotificationCenter center = notificationCenter;
+        invalidationListener = notification -> {
+            if (notification instanceof CacheInvalidation && ((CacheInvalidation) notification).getPublisher() != this) {
+                CacheInvalidation invalidation = (CacheInvalidation) notification;
+                evict(near, invalidation.getKey(), invalidation.isAll());
+            }
+        };
+        invalidationSubscriber = notice -> {
+            CacheInvalidation invalidation = (CacheInvalidation) notice.getUserObject();
+            Cache<K, V> c = cache;
+            // facades sharing the NotificationCenter have been notified directly.
+            if (c == null || center.getId().equals(invalidation.getOrigin()))
+                return;
+            if (invalidation.isAll())
+                c.removeAll();
+            else if (invalidation.getKey() != null)
+                c.remove((K) invalidation.getKey());
+            evict(near, invalidation.getKey(), invalidation.isAll());
+        };
+        center.addSourceNotificationListener(name, invalidationListener);
+        center.subscribe(CacheInvalidation.topic(name), invalidationSubscriber);
+        listeningTo = center;
+    }
+
+    private synchronized void unlisten() {
+        if (listeningTo == null)
+            return;
+        listeningTo.removeSourceNotificationListener(name, invalidationListener);
+        listeningTo.unsubscribe(CacheInvalidation.topic(name), invalidationSubscriber);
+        listeningTo = null;
+        invalidationListener = null;
+        invalidationSubscriber = null;
+    }
+
+    protected Cache<K,V> getCache() {
+        Cache<K,V> c = cache;
+        if (c != null)
+            return c;
+        synchronized (this) {
+            if (cache == null) {
+                if (configuration == null) {
+                    initPool();
+                }
+                if (configuration.getNearCacheSize() > 0) {
+                    long expiry = (configuration.getNearCacheExpiry() > 0) ? configuration.getNearCacheExpiry() : configuration.getExpiry();
+                    near = CacheBuilder.newBuilder()
+                            .maximumSize(configuration.getNearCacheSize())
+                            .expireAfterWrite(expiry, TimeUnit.MILLISECONDS)
+                            .build();
+                }
+                Cache<K, V> created = configuration.getCache(name, keyClass, valueClass);
+                statistics = CacheStatistics.of(name);
+                if (statistics.monitor(created))
+                    configuration.getProvider().monitor(created, statistics);
+                cache = created;
+                listen();
+            }
             return cache;
-        if (configuration == null) {
-            initPool();
         }
-        cache = configuration.getCache(name, keyClass, valueClass);
-        return cache;
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.cache;
+
+import net.e6tech.elements.common.notification.Notification;
+
+/**
+ * Sent when an entry of a CacheFacade is written or removed so that near caches of the same name drop it, or when
+ * the cache is cleared.  Delivered to facades sharing a NotificationCenter as a notification whose source is the cache
+ * name and to other nodes by publishing to {@link #topic(String)}; only invalidations of Serializable keys are
+ * published.
+ */
+@SuppressWarnings("squid:S1948")
+public class CacheInvalidation implements Notification {
+    private static final long serialVersionUID = 4185079131367236521L;
+
+    private String cacheName;
+    private Object key;
+    private boolean all;
+    private String origin;
+    private transient Object publisher;
+
+    public CacheInvalidation() {
+    }
+
+    public CacheInvalidation(String cacheName, Object key, String origin, Object publisher) {
+        this.cacheName = cacheName;
+        this.key = key;
+        this.origin = origin;
+        this.publisher = publisher;
+    }
+
+    public static CacheInvalidation all(String cacheName, String origin, Object publisher) {
+        CacheInvalidation invalidation = new CacheInvalidation(cacheName, null, origin, publisher);
+        invalidation.all = true;
+        return invalidation;
+    }
+
+    public static String topic(String cacheName) {
+        return CacheInvalidation.class.getName() + ":" + cacheName;
+    }
+
+    @Override
+    public Object source() {
+        return cacheName;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public void setCacheName(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * @return invalidated key, null if all entries are invalidated.
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    public void setKey(Object key) {
+        this.key = key;
+    }
+
+    /**
+     * @return true if the cache was cleared.
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    public void setAll(boolean all) {
+        this.all = all;
+    }
+
+    /**
+     * @return id of the NotificationCenter the invalidation was published through.
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public Object getPublisher() {
+        return publisher;
+    }
+}
@@ -17,6 +17,8 @@
 package net.e6tech.elements.common.cache;
 
 import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
 
 /**
  * Created by futeh.
@@ -25,5 +27,20 @@ public interface CacheProvider {
 
     String getProviderClassName();
 
+    /**
+     * Returns the CacheManager for caches of the given configuration.  Providers override it when some settings,
+     * e.g. a disk tier, require a specially configured manager.
+     */
+    default CacheManager getCacheManager(CacheConfiguration cachePool) {
+        return Caching.getCachingProvider(getProviderClassName()).getCacheManager();
+    }
+
     <K,V> Cache<K,V> createCache(CacheConfiguration cachePool, String poolName, Class<K> keyClass, Class<V> valueClass);
+
+    /**
+     * Gives statistics access to the eviction, expiration and size counters of a cache created by this provider,
+     * see {@link CacheStatistics#setSource}.  The default does nothing.
+     */
+    default <K,V> void monitor(Cache<K,V> cache, CacheStatistics statistics) {
+    }
 }
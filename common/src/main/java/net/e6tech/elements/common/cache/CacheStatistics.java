@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.e6tech.elements.common.cache;
+
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a named cache, shared by every CacheFacade of that name and registered as
+ * net.e6tech.elements:type=Cache,name=&lt;name&gt;.  Counters are LongAdders and load times go into a lock-free
+ * Histogram.  Recording can be turned off and on at runtime with setEnabled.
+ *
+ * Evictions, expirations, the entry count and the estimated size are read on demand from counters kept by the
+ * cache provider, see {@link CacheProvider#monitor}, so recording them costs nothing on the cache operations.
+ */
+public class CacheStatistics implements CacheStatisticsMXBean {
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static Map<String, CacheStatistics> statistics = new ConcurrentHashMap<>();
+
+    private String name;
+    private volatile boolean enabled = true;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final Histogram loadTime = new Histogram();
+    private Object monitored;
+    private volatile Source source;
+    private volatile long evictionBase;
+    private volatile long expirationBase;
+
+    protected CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the statistics of the named cache, creating and registering them as an MBean the first time.
+     */
+    public static CacheStatistics of(String name) {
+        return statistics.computeIfAbsent(name, n -> new CacheStatistics(n).register());
+    }
+
+    /**
+     * @return statistics of the named cache, or null if no CacheFacade of that name has been used.
+     */
+    public static CacheStatistics find(String name) {
+        return statistics.get(name);
+    }
+
+    protected CacheStatistics register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("net.e6tech.elements:type=Cache,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName))
+                server.registerMBean(this, objectName);
+        } catch (Exception ex) {
+            logger.warn("Cannot register cache statistics {} as MBean", name, ex);
+        }
+        return this;
+    }
+
+    /*
+     * Returns true the first time a cache instance is seen, i.e. when the provider should start reporting its events.
+     */
+    synchronized boolean monitor(Object cache) {
+        if (monitored == cache)
+            return false;
+        monitored = cache;
+        return true;
+    }
+
+    public void hit() {
+        if (enabled)
+            hits.increment();
+    }
+
+    public void miss() {
+        if (enabled)
+            misses.increment();
+    }
+
+    /**
+     * @param nanos time spent in the loader, in nanoseconds.
+     */
+    public void loaded(long nanos) {
+        if (enabled)
+            loadTime.record(nanos);
+    }
+
+    public void loadFailed() {
+        if (enabled)
+            loadFailures.increment();
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public void setSource(Source source) {
+        this.source = source;
+    }
+
+    public Histogram loadTime() {
+        return loadTime;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public long getLoads() {
+        return loadTime.getCount();
+    }
+
+    @Override
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    @Override
+    public double getAverageLoadTime() {
+        return loadTime.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadTime50() {
+        return loadTime.getPercentile(50.0) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadTime99() {
+        return loadTime.getPercentile(99.0) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxLoadTime() {
+        return loadTime.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getEvictions() {
+        Source s = source;
+        return s == null ? 0 : s.getEvictions() - evictionBase;
+    }
+
+    @Override
+    public long getExpirations() {
+        Source s = source;
+        return s == null ? 0 : s.getExpirations() - expirationBase;
+    }
+
+    @Override
+    public long getEntryCount() {
+        Source s = source;
+        return s == null ? -1 : s.getEntryCount();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        Source s = source;
+        return s == null ? -1 : s.getEstimatedSize();
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        loadFailures.reset();
+        loadTime.reset();
+        Source s = source;
+        if (s != null) {
+            evictionBase = s.getEvictions();
+            expirationBase = s.getExpirations();
+        }
+    }
+
+    /**
+     * Counters kept by the cache implementation.
+     */
+    public interface Source {
+
+        long getEvictions();
+
+        long getExpirations();
+
+        long getEntryCount();
+
+        /**
+         * @return bytes occupied by the cache, -1 if unknown.
+         */
+        long getEstimatedSize();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.cache;
+
+/**
+ * Computes the time to live of an individual entry when it is created or updated.
+ */
+@FunctionalInterface
+public interface EntryExpiry<K, V> {
+
+    /**
+     * @param key entry key
+     * @param value new value
+     * @return time to live in milliseconds; a negative value means the configured expiry.
+     */
+    long expiry(K key, V value);
+}
@@ -18,72 +18,187 @@ package net.e6tech.elements.common.cache.ehcache;
 
 import net.e6tech.elements.common.cache.CacheConfiguration;
 import net.e6tech.elements.common.cache.CacheProvider;
+import net.e6tech.elements.common.cache.CacheStatistics;
+import net.e6tech.elements.common.cache.EntryExpiry;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.reflection.Reflection;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.DefaultStatisticsService;
+import org.ehcache.core.statistics.TierStatistics;
 import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
 import org.ehcache.jsr107.Eh107Configuration;
 import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.spi.service.ServiceCreationConfiguration;
 
 import javax.cache.Cache;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 /**
+ * Entries are expired by Ehcache's per entry expiry policies: time to live, time to idle or a CacheConfiguration.entryExpiry
+ * evaluated for each value.  Expired entries are dropped lazily when accessed or when evicted.
+ *
+ * Besides the heap tier bounded by maxEntries, caches may have off-heap and disk tiers.  Values in those tiers are
+ * serialized with the configured key and value serializers, or Ehcache's defaults which require Serializable types.
  * Created by futeh.
  */
 @SuppressWarnings("unchecked")
 public class EhcacheProvider implements CacheProvider {
-
-    private static ExecutorService executorService = Executors.newSingleThreadExecutor(r -> new Thread(r, "EhcacheProviderCleaner"));
+    private static final Logger logger = Logger.getLogger();
+    private static final Map<CacheManager, StatisticsService> statisticsServices = Collections.synchronizedMap(new WeakHashMap<>());
 
     @Override
     public String getProviderClassName() {
         return EhcacheCachingProvider.class.getName();
     }
 
+    /*
+     * The manager is built with a StatisticsService created here, see StatisticsServiceFactory, so that monitor can
+     * read Ehcache's counters.
+     */
+    @Override
+    public CacheManager getCacheManager(CacheConfiguration cachePool) {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(getProviderClassName());
+        DefaultStatisticsService statisticsService = new DefaultStatisticsService();
+        URI uri = provider.getDefaultURI();
+        List<ServiceCreationConfiguration<?, ?>> services = new ArrayList<>();
+        services.add(new StatisticsServiceFactory.Configuration(statisticsService));
+        if (cachePool.getDiskSize() > 0) {
+            File directory = new File(cachePool.getDiskPath()).getAbsoluteFile();
+            services.add(new DefaultPersistenceConfiguration(directory));
+            uri = directory.toURI();
+        }
+        DefaultConfiguration configuration = new DefaultConfiguration(provider.getDefaultClassLoader(),
+                services.toArray(new ServiceCreationConfiguration<?, ?>[0]));
+        CacheManager manager = provider.getCacheManager(uri, configuration);
+        // a manager already open for the uri was built without our service.
+        if (statisticsService.isStarted())
+            statisticsServices.put(manager, statisticsService);
+        return manager;
+    }
+
     public <K,V> Cache<K,V> createCache(CacheConfiguration cachePool, String poolName, Class<K> keyClass, Class<V> valueClass) {
 
         ResourcePoolsBuilder builder = (cachePool.getMaxEntries() > 0)
                 ? ResourcePoolsBuilder.heap(cachePool.getMaxEntries())
                 : ResourcePoolsBuilder.newResourcePoolsBuilder();
+        if (cachePool.getOffHeapSize() > 0)
+            builder = builder.offheap(cachePool.getOffHeapSize(), MemoryUnit.MB);
+        if (cachePool.getDiskSize() > 0)
+            builder = builder.disk(cachePool.getDiskSize(), MemoryUnit.MB, cachePool.isDiskPersistent());
 
-        ExpiryPolicy policy = ExpiryPolicyBuilder.timeToLiveExpiration(java.time.Duration.ofMillis(cachePool.getExpiry()));
-        org.ehcache.config.CacheConfiguration cacheConfiguration = CacheConfigurationBuilder
+        CacheConfigurationBuilder<K, V> configurationBuilder = CacheConfigurationBuilder
                 .newCacheConfigurationBuilder(keyClass, valueClass, builder)
-                .withExpiry(policy)
-                .build();
+                .withExpiry(expiryPolicy(cachePool));
+        if (cachePool.getKeySerializer() != null)
+            configurationBuilder = configurationBuilder.withKeySerializer(Reflection.loadClass(cachePool.getKeySerializer(), keyClass.getClassLoader()));
+        if (cachePool.getValueSerializer() != null)
+            configurationBuilder = configurationBuilder.withValueSerializer(Reflection.loadClass(cachePool.getValueSerializer(), valueClass.getClassLoader()));
+        org.ehcache.config.CacheConfiguration cacheConfiguration = configurationBuilder.build();
+
+        return cachePool.getCacheManager().createCache(poolName, Eh107Configuration.fromEhcacheCacheConfiguration(cacheConfiguration));
+    }
+
+    @Override
+    public <K, V> void monitor(Cache<K, V> cache, CacheStatistics statistics) {
+        StatisticsService service = statisticsServices.get(cache.getCacheManager());
+        if (service != null)
+            statistics.setSource(new EhcacheSource(service, cache.getName()));
+        else
+            logger.warn("Eviction and size statistics of cache {} are not available: its CacheManager was not created by EhcacheProvider", cache.getName());
+    }
 
-        Cache<K, V> cache = cachePool.getCacheManager().createCache(poolName, Eh107Configuration.fromEhcacheCacheConfiguration(cacheConfiguration));
-        return (Cache<K, V>) Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class[] { Cache.class}, new CacheInvocationHandler<K,V>(cache, cachePool));
+    protected <K, V> ExpiryPolicy<? super K, ? super V> expiryPolicy(CacheConfiguration cachePool) {
+        if (cachePool.getEntryExpiry() != null)
+            return new EntryExpiryPolicy<>(cachePool.getEntryExpiry(), Duration.ofMillis(cachePool.getExpiry()));
+        else if (cachePool.getTimeToIdle() > 0)
+            return ExpiryPolicyBuilder.timeToIdleExpiration(Duration.ofMillis(cachePool.getTimeToIdle()));
+        return ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(cachePool.getExpiry()));
     }
 
-    private class CacheInvocationHandler<K, V> implements InvocationHandler {
-        Cache<K, V> cache;
-        long lastPut;
-        long expiry;
+    private static class EntryExpiryPolicy<K, V> implements ExpiryPolicy<K, V> {
+        private EntryExpiry<K, V> entryExpiry;
+        private Duration defaultExpiry;
+
+        EntryExpiryPolicy(EntryExpiry<K, V> entryExpiry, Duration defaultExpiry) {
+            this.entryExpiry = entryExpiry;
+            this.defaultExpiry = defaultExpiry;
+        }
+
+        private Duration expiry(K key, V value) {
+            long millis = entryExpiry.expiry(key, value);
+            return (millis < 0) ? defaultExpiry : Duration.ofMillis(millis);
+        }
+
+        @Override
+        public Duration getExpiryForCreation(K key, V value) {
+            return expiry(key, value);
+        }
 
-        CacheInvocationHandler(Cache<K, V> cache, CacheConfiguration cachePool) {
-            this.cache = cache;
-            this.expiry = cachePool.getExpiry();
-            this.lastPut = System.currentTimeMillis();
+        @Override
+        public Duration getExpiryForAccess(K key, Supplier<? extends V> value) {
+            return null; // unchanged
+        }
+
+        @Override
+        public Duration getExpiryForUpdate(K key, Supplier<? extends V> oldValue, V newValue) {
+            return expiry(key, newValue);
+        }
+    }
+
+    private static class EhcacheSource implements CacheStatistics.Source {
+        private StatisticsService service;
+        private String alias;
+
+        EhcacheSource(StatisticsService service, String alias) {
+            this.service = service;
+            this.alias = alias;
+        }
+
+        @Override
+        public long getEvictions() {
+            return service.getCacheStatistics(alias).getCacheEvictions();
+        }
+
+        @Override
+        public long getExpirations() {
+            return service.getCacheStatistics(alias).getCacheExpirations();
+        }
+
+        // every entry is in the lowest tier, upper tiers hold copies of the hot ones; so entries are counted once
+        // while the copies do add to the size below.
+        @Override
+        public long getEntryCount() {
+            long count = 0;
+            for (TierStatistics tier : service.getCacheStatistics(alias).getTierStatistics().values())
+                count = Math.max(count, tier.getMappings());
+            return count;
         }
 
         @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            if (method.getName().startsWith("put")
-                    && System.currentTimeMillis() - lastPut > expiry) {
-                executorService.submit(() ->
-                    cache.iterator().forEachRemaining(entry -> {
-                        // expire entries by accessing
-                    })
-                );
-                lastPut = System.currentTimeMillis();
+        public long getEstimatedSize() {
+            long size = -1;
+            for (TierStatistics tier : service.getCacheStatistics(alias).getTierStatistics().values()) {
+                long occupied = tier.getOccupiedByteSize();
+                if (occupied >= 0)
+                    size = Math.max(size, 0) + occupied;
             }
-            return method.invoke(cache, args);
+            return size;
         }
     }
 }
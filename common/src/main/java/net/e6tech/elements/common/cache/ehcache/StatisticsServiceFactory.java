@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.cache.ehcache;
+
+import org.ehcache.core.spi.service.ServiceFactory;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.spi.service.ServiceCreationConfiguration;
+
+/**
+ * Lets EhcacheProvider hand a StatisticsService it created to a CacheManager built through the JSR-107 provider,
+ * which otherwise creates one of its own and keeps it to itself.  Used only when the manager's configuration has a
+ * {@link Configuration}; registered in META-INF/services.
+ */
+@ServiceFactory.RequiresConfiguration
+public class StatisticsServiceFactory implements ServiceFactory<StatisticsService> {
+
+    @Override
+    public int rank() {
+        return 10; // ahead of Ehcache's DefaultStatisticsServiceFactory
+    }
+
+    @Override
+    public StatisticsService create(ServiceCreationConfiguration<StatisticsService, ?> configuration) {
+        return ((Configuration) configuration).getService();
+    }
+
+    @Override
+    public Class<? extends StatisticsService> getServiceType() {
+        return StatisticsService.class;
+    }
+
+    public static class Configuration implements ServiceCreationConfiguration<StatisticsService, Void> {
+        private final StatisticsService service;
+
+        public Configuration(StatisticsService service) {
+            this.service = service;
+        }
+
+        public StatisticsService getService() {
+            return service;
+        }
+
+        @Override
+        public Class<StatisticsService> getServiceType() {
+            return StatisticsService.class;
+        }
+    }
+}
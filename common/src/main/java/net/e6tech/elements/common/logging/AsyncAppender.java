@@ -0,0 +1,380 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves formatting and writing of log messages off the logging thread.  Callers copy the message and its arguments
+ * into a preallocated slot of a ring buffer; a background thread formats and writes it through the slot's Target.
+ * Arguments are formatted later, so they should not be mutated after logging.  The caller's thread name and Log4j
+ * ThreadContext are captured with the message and restored on the appender thread while the Target writes it.
+ *
+ * When the buffer is full, the overflow policy decides: BLOCK waits for room, DROP discards the message and
+ * SYNCHRONOUS writes it on the calling thread, possibly out of order.  Queued messages are written on shutdown, at the
+ * latest by the JVM shutdown hook; those the appender thread cannot write in time are written on the thread calling
+ * shutdown.  Messages logged by a Target while it writes, on the appender thread itself, are written right away
+ * rather than queued behind the message being written.
+ *
+ * The default appender, used by ConsoleLogger and the JUL bridge when the system property
+ * elements.common.logging.async is true, is created on first use.
+ */
+@SuppressWarnings("squid:S2696")
+public class AsyncAppender {
+    public static final String ASYNC = "elements.common.logging.async";
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+    private static AsyncAppender defaultAppender;
+
+    public enum Overflow {
+        BLOCK,
+        DROP,
+        SYNCHRONOUS
+    }
+
+    /**
+     * Writes a queued message, on the appender thread.
+     */
+    @FunctionalInterface
+    public interface Target {
+        void append(Event event);
+    }
+
+    private final Disruptor<Event> disruptor;
+    private final RingBuffer<Event> ringBuffer;
+    private final EventHandler<Event> handler;
+    private volatile Overflow overflow = Overflow.BLOCK;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder synchronous = new LongAdder();
+    private final Thread shutdownHook;
+    private volatile boolean shutdown = false;
+    private volatile Thread thread;
+
+    public AsyncAppender() {
+        this(8192);
+    }
+
+    /**
+     * @param bufferSize number of slots, rounded up to a power of 2.
+     */
+    public AsyncAppender(int bufferSize) {
+        int size = 1;
+        while (size < bufferSize)
+            size <<= 1;
+        disruptor = new Disruptor<>(Event::new, size, runnable -> {
+            Thread appenderThread = new Thread(runnable, "AsyncAppender");
+            appenderThread.setDaemon(true);
+            thread = appenderThread;
+            return appenderThread;
+        }, ProducerType.MULTI, new BlockingWaitStrategy());
+        handler = (event, sequence, endOfBatch) -> {
+            if (event.claim())
+                event.write();
+        };
+        disruptor.handleEventsWith(handler);
+        ringBuffer = disruptor.start();
+        shutdownHook = new Thread(this::flushOnExit, "AsyncAppender-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public static synchronized AsyncAppender getDefault() {
+        if (defaultAppender == null)
+            defaultAppender = new AsyncAppender();
+        return defaultAppender;
+    }
+
+    /**
+     * @return the default appender if asynchronous logging is turned on by the system property, otherwise null.
+     */
+    public static AsyncAppender configured() {
+        return Boolean.getBoolean(ASYNC) ? getDefault() : null;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(Overflow overflow) {
+        this.overflow = overflow;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSynchronous() {
+        return synchronous.sum();
+    }
+
+    public int getCapacity() {
+        return ringBuffer.getBufferSize();
+    }
+
+    public long getQueueDepth() {
+        return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+    }
+
+    public void append(Target target, Object level, String message, Throwable thrown) {
+        append(target, level, message, 0, null, null, null, thrown);
+    }
+
+    public void append(Target target, Object level, String format, Object arg) {
+        append(target, level, format, 1, arg, null, null, null);
+    }
+
+    public void append(Target target, Object level, String format, Object arg1, Object arg2) {
+        append(target, level, format, 2, arg1, arg2, null, null);
+    }
+
+    public void append(Target target, Object level, String format, Object[] arguments, Throwable thrown) {
+        append(target, level, format, -1, null, null, arguments, thrown);
+    }
+
+    @SuppressWarnings("squid:S00107")
+    private void append(Target target, Object level, String message, int argCount, Object arg1, Object arg2, Object[] arguments, Throwable thrown) {
+        // a full ring would never drain if the appender thread waited on it.
+        if (shutdown || Thread.currentThread() == thread) {
+            writeNow(target, level, message, argCount, arg1, arg2, arguments, thrown);
+            return;
+        }
+        long sequence;
+        if (overflow == Overflow.BLOCK) {
+            sequence = ringBuffer.next();
+        } else {
+            try {
+                sequence = ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                if (overflow == Overflow.DROP) {
+                    dropped.increment();
+                } else {
+                    synchronous.increment();
+                    writeNow(target, level, message, argCount, arg1, arg2, arguments, thrown);
+                }
+                return;
+            }
+        }
+        try {
+            Event event = ringBuffer.get(sequence);
+            event.set(target, level, message, argCount, arg1, arg2, arguments, thrown);
+            event.capture(Thread.currentThread().getName(), ThreadContext.isEmpty() ? null : ThreadContext.getImmutableContext());
+            event.sequence = sequence;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    @SuppressWarnings("squid:S00107")
+    private static void writeNow(Target target, Object level, String message, int argCount, Object arg1, Object arg2, Object[] arguments, Throwable thrown) {
+        Event event = new Event();
+        event.set(target, level, message, argCount, arg1, arg2, arguments, thrown);
+        event.write();
+    }
+
+    /**
+     * Waits until the messages queued so far are written.
+     * @return false if they are not written within the timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = ringBuffer.getCursor();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (disruptor.getSequenceValueFor(handler) < target) {
+            if (System.nanoTime() - deadline >= 0)
+                return false;
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued messages and stops the appender thread; later messages are written synchronously.
+     */
+    public void shutdown() {
+        stop();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
+        synchronized (AsyncAppender.class) {
+            if (defaultAppender == this)
+                defaultAppender = null;
+        }
+    }
+
+    private void flushOnExit() {
+        stop();
+    }
+
+    private void stop() {
+        shutdown = true;
+        try {
+            disruptor.shutdown(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            disruptor.halt();
+            drain();
+        }
+    }
+
+    /**
+     * Writes, on the calling thread, what the halted appender thread left in the buffer.  Each slot is claimed first
+     * so that a message is never written by both threads.  Slots that were never published are counted as dropped.
+     */
+    @SuppressWarnings("squid:S106")
+    private void drain() {
+        long lost = 0;
+        long cursor = ringBuffer.getCursor();
+        for (long sequence = disruptor.getSequenceValueFor(handler) + 1; sequence <= cursor; sequence++) {
+            Event event = ringBuffer.get(sequence);
+            if (event.sequence != sequence)
+                lost++;
+            else if (event.claim() && event.target != null)
+                event.write();
+        }
+        if (lost > 0) {
+            dropped.add(lost);
+            System.err.println("AsyncAppender: " + lost + " message(s) dropped on shutdown");
+        }
+    }
+
+    /**
+     * A slot of the ring buffer.  argCount is 0 for a plain message, 1 or 2 for arg1 and arg2, and -1 for arguments.
+     */
+    public static class Event {
+        private static final AtomicIntegerFieldUpdater<Event> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(Event.class, "claimed");
+        private volatile int claimed;
+        private volatile long sequence = -1L; // of the last message filled in by its producer, for drain
+        private Target target;
+        private Object level;
+        private String message;
+        private int argCount;
+        private Object arg1;
+        private Object arg2;
+        private Object[] arguments;
+        private Throwable thrown;
+        private String threadName;
+        private Map<String, String> context;
+
+        @SuppressWarnings("squid:S00107")
+        void set(Target target, Object level, String message, int argCount, Object arg1, Object arg2, Object[] arguments, Throwable thrown) {
+            this.target = target;
+            this.level = level;
+            this.message = message;
+            this.argCount = argCount;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arguments = arguments;
+            this.thrown = thrown;
+            this.threadName = null;
+            this.context = null;
+            this.claimed = 0;
+        }
+
+        boolean claim() {
+            return CLAIMED.compareAndSet(this, 0, 1);
+        }
+
+        void capture(String threadName, Map<String, String> context) {
+            this.threadName = threadName;
+            this.context = context;
+        }
+
+        @SuppressWarnings("squid:S1181")
+        void write() {
+            Thread thread = Thread.currentThread();
+            String name = thread.getName();
+            boolean rename = threadName != null && !threadName.equals(name);
+            // only queued messages carry the caller's context; the writing thread's own is put back afterwards.
+            Map<String, String> saved = null;
+            try {
+                if (rename)
+                    thread.setName(threadName);
+                if (threadName != null) {
+                    saved = ThreadContext.getImmutableContext();
+                    ThreadContext.clearMap();
+                    if (context != null)
+                        ThreadContext.putAll(context);
+                }
+                target.append(this);
+            } catch (Throwable th) {
+                th.printStackTrace(System.err);
+            } finally {
+                if (saved != null) {
+                    ThreadContext.clearMap();
+                    if (!saved.isEmpty())
+                        ThreadContext.putAll(saved);
+                }
+                if (rename)
+                    thread.setName(name);
+                // do not hold on to the arguments until the slot is reused.
+                set(null, null, null, 0, null, null, null, null);
+            }
+        }
+
+        public Object getLevel() {
+            return level;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getArgCount() {
+            return argCount;
+        }
+
+        public Object getArg1() {
+            return arg1;
+        }
+
+        public Object getArg2() {
+            return arg2;
+        }
+
+        public Object[] getArguments() {
+            return arguments;
+        }
+
+        public Throwable getThrown() {
+            return thrown;
+        }
+
+        /**
+         * @return name of the thread that logged the message, or null if it is written on that thread.
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return the logging thread's ThreadContext, or null if it was empty or the message is written on that thread.
+         */
+        public Map<String, String> getContext() {
+            return context;
+        }
+    }
+}
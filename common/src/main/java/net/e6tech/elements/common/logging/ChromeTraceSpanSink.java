@@ -0,0 +1,139 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+import net.e6tech.elements.common.util.SystemException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes spans to a file in the Chrome trace event format, as complete ("X") events, one thread per track.  The file
+ * can be opened with chrome://tracing or Perfetto; the viewers accept a file cut short, so close() only needs to be
+ * called to flush the buffer.
+ */
+@SuppressWarnings("squid:S1192")
+public class ChromeTraceSpanSink implements SpanSink, AutoCloseable {
+    private static final long ORIGIN = System.nanoTime();
+
+    private final Writer writer;
+    private final int pid;
+    private boolean first = true;
+    private boolean closed = false;
+
+    public ChromeTraceSpanSink(String path) {
+        this(new File(path));
+    }
+
+    public ChromeTraceSpanSink(File file) {
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null)
+                Files.createDirectories(dir.toPath());
+            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), 64 * 1024);
+            writer.write("[\n");
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+        String jvm = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        int at = jvm.indexOf('@');
+        int id;
+        try {
+            id = Integer.parseInt(at > 0 ? jvm.substring(0, at) : jvm);
+        } catch (NumberFormatException ex) {
+            id = 1;
+        }
+        pid = id;
+    }
+
+    @Override
+    public synchronized void onEnd(Span span) {
+        if (closed)
+            return;
+        try {
+            if (!first)
+                writer.write(",\n");
+            first = false;
+            writer.write("{\"name\":\"");
+            escape(span.getName());
+            writer.write("\",\"ph\":\"X\",\"ts\":");
+            writer.write(micros(Math.max(0, span.getStart() - ORIGIN)));
+            writer.write(",\"dur\":");
+            writer.write(micros(span.getDuration()));
+            writer.write(",\"pid\":");
+            writer.write(Integer.toString(pid));
+            writer.write(",\"tid\":");
+            writer.write(Long.toString(span.getThread().getId()));
+            writer.write(",\"args\":{\"trace\":");
+            writer.write(Long.toString(span.getTraceId()));
+            writer.write(",\"span\":");
+            writer.write(Long.toString(span.getId()));
+            if (span.getParent() != null) {
+                writer.write(",\"parent\":");
+                writer.write(Long.toString(span.getParent().getId()));
+            }
+            writer.write("}}");
+        } catch (IOException e) {
+            closed = true;
+            Logger.getLogger().warn("Cannot write trace", e);
+        }
+    }
+
+    private static String micros(long nanos) {
+        return (nanos / 1000) + "." + (nanos % 1000 / 100);
+    }
+
+    private void escape(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            if (!closed)
+                writer.flush();
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            writer.write("\n]\n");
+            writer.close();
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+    }
+}
@@ -22,9 +22,10 @@ import org.slf4j.helpers.MessageFormatter;
 import java.io.PrintStream;
 
 @SuppressWarnings("squid:S106")
-public class ConsoleLogger implements org.slf4j.Logger {
+public class ConsoleLogger implements org.slf4j.Logger, AsyncAppender.Target {
 
     private PrintStream out = System.out;
+    private AsyncAppender appender = AsyncAppender.configured();
     private boolean traceEnabled = false;
     private boolean debugEnabled = false;
     private boolean infoEnabled = true;
@@ -89,33 +90,96 @@ public class ConsoleLogger implements org.slf4j.Logger {
         this.out = out;
     }
 
+    public AsyncAppender getAppender() {
+        return appender;
+    }
+
+    /**
+     * Formats and writes messages on the appender's thread instead of the caller's.  Set to null to write synchronously.
+     */
+    public void setAppender(AsyncAppender appender) {
+        this.appender = appender;
+    }
+
+    public ConsoleLogger appender(AsyncAppender appender) {
+        setAppender(appender);
+        return this;
+    }
+
     public void println(String msg) {
-        if (out != null)
+        if (out == null)
+            return;
+        if (appender != null)
+            appender.append(this, null, msg, (Throwable) null);
+        else
             out.println(msg);
     }
 
     public void println(String format, Object arg) {
-        if (out != null)
+        if (out == null)
+            return;
+        if (appender != null)
+            appender.append(this, null, format, arg);
+        else
             out.println(MessageFormatter.format(format, arg).getMessage());
     }
 
     public void println(String format, Object arg1, Object arg2) {
-        if (out != null)
+        if (out == null)
+            return;
+        if (appender != null)
+            appender.append(this, null, format, arg1, arg2);
+        else
             out.println(MessageFormatter.format(format, arg1, arg2).getMessage());
     }
 
     public void println(String format, Object... arguments) {
-        if (out != null)
+        if (out == null)
+            return;
+        if (appender != null)
+            appender.append(this, null, format, arguments, null);
+        else
             out.println(MessageFormatter.arrayFormat(format, arguments).getMessage());
     }
 
     public void println(String msg, Throwable t) {
-        if (out != null) {
-            println(msg);
-            if (t != null) {
-                t.printStackTrace(out);
-                out.println();
-            }
+        if (out == null)
+            return;
+        if (appender != null)
+            appender.append(this, null, msg, t);
+        else
+            write(msg, t);
+    }
+
+    private void write(String msg, Throwable t) {
+        out.println(msg);
+        if (t != null) {
+            t.printStackTrace(out);
+            out.println();
+        }
+    }
+
+    @Override
+    public void append(AsyncAppender.Event event) {
+        PrintStream stream = out;
+        if (stream == null)
+            return;
+        switch (event.getArgCount()) {
+            case 0:
+                if (event.getThrown() != null)
+                    write(event.getMessage(), event.getThrown());
+                else
+                    stream.println(event.getMessage());
+                break;
+            case 1:
+                stream.println(MessageFormatter.format(event.getMessage(), event.getArg1()).getMessage());
+                break;
+            case 2:
+                stream.println(MessageFormatter.format(event.getMessage(), event.getArg1(), event.getArg2()).getMessage());
+                break;
+            default:
+                stream.println(MessageFormatter.arrayFormat(event.getMessage(), event.getArguments()).getMessage());
+                break;
         }
     }
 
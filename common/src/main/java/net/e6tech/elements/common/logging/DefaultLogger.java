@@ -0,0 +1,472 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+import net.e6tech.elements.common.util.SystemException;
+import org.apache.logging.log4j.ThreadContext;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+/**
+ * Logger returned by the Logger factory methods.  Calls go straight to the SLF4J logger, which is resolved on first use
+ * and then held in a field, so that a log statement costs one virtual call and disabled levels allocate nothing.
+ *
+ * Resolution is deferred because calling LoggerFactory.getLogger initializes Log4j, which must not happen before
+ * log4j.configurationFile and logDir are set.  Until then, messages go to the console.
+ * Created by futeh.
+ */
+@SuppressWarnings({"squid:S106", "squid:S2696", "squid:MethodCyclomaticComplexity", "squid:S1192"}) // we need to use System.out
+public class DefaultLogger implements Logger {
+
+    private static final String LOG_DIR = "logDir";
+    private static String logDir;
+
+    static {
+        System.setProperty("java.util.logging.manager", "net.e6tech.elements.common.logging.jul.LogManager");
+    }
+
+    private static ConsoleLogger consoleLogger = new ConsoleLogger();
+
+    // benign race: resolution is idempotent, every thread ends up with the same SLF4J logger.
+    private org.slf4j.Logger slf4jLogger;
+    private Class loggingClass;
+    private String loggingName;
+    private final LogLevel level;
+
+    DefaultLogger(org.slf4j.Logger slf4jLogger) {
+        this(slf4jLogger, null, null, LogLevel.ERROR);
+    }
+
+    DefaultLogger(Class cls) {
+        this(null, cls, null, LogLevel.ERROR);
+    }
+
+    DefaultLogger(String name) {
+        this(null, null, name, LogLevel.ERROR);
+    }
+
+    private DefaultLogger(org.slf4j.Logger slf4jLogger, Class loggingClass, String loggingName, LogLevel level) {
+        this.slf4jLogger = slf4jLogger;
+        this.loggingClass = loggingClass;
+        this.loggingName = loggingName;
+        this.level = level;
+    }
+
+    private org.slf4j.Logger delegate() {
+        org.slf4j.Logger logger = slf4jLogger;
+        return (logger != null) ? logger : resolve();
+    }
+
+    // This level of indirection is needed, otherwise, Log4j will look at the system property
+    // prematurely.
+    // this method should only be called when the caller starts to log output.
+    @SuppressWarnings("squid:S3776")
+    private org.slf4j.Logger resolve() {
+        Class cls = loggingClass;
+        String name = loggingName;
+        if (cls == null && name == null)
+            return (slf4jLogger != null) ? slf4jLogger : consoleLogger;
+
+        if (System.getProperty("log4j.configurationFile") == null) {
+            return consoleLogger;
+        }
+
+        // if logDir is not configured we should just use consoleLogger.
+        if (ThreadContext.get(LOG_DIR) == null) {
+            if (logDir == null) {
+                if (System.getProperty(LOG_DIR) != null)
+                    logDir = System.getProperty(LOG_DIR);
+                else if (System.getProperty(Logger.logDir) != null)
+                    logDir = System.getProperty(Logger.logDir);
+            }
+            if (logDir == null)
+                return consoleLogger;
+            else ThreadContext.put(LOG_DIR, logDir);
+        }
+
+        // calling LoggerFactory.getLogger will trigger log4j being initialized.
+        org.slf4j.Logger logger = (cls != null) ? LoggerFactory.getLogger(cls) : LoggerFactory.getLogger(name);
+        slf4jLogger = logger;
+        return logger;
+    }
+
+    // ***************************************************************************************
+    // LoggerExtension
+    // ***************************************************************************************
+    @Override
+    public Logger logger(LogLevel level) {
+        return new DefaultLogger(slf4jLogger, loggingClass, loggingName, level);
+    }
+
+    @Override
+    public void log(String msg, Throwable e) {
+        logWithLevel(level, msg, e);
+    }
+
+    @Override
+    public Logger log(LogLevel l, String msg, Throwable e) {
+        Logger logger = logger(l);
+        logger.log(msg, e);
+        return logger;
+    }
+
+    @Override
+    public SystemException systemException(String msg, Throwable th) {
+        SystemException t = Logger.super.systemException(msg, th);
+        logWithLevel(level, msg, th);
+        return t;
+    }
+
+    @Override
+    public <T extends Throwable> T exception(Class<T> exceptionClass, String msg, Throwable e) {
+        T t = Logger.super.exception(exceptionClass, msg, e);
+        logWithLevel(level, msg, e);
+        return t;
+    }
+
+    private void logWithLevel(LogLevel l, String msg, Throwable e) {
+        org.slf4j.Logger logger = delegate();
+        switch (l) {
+            case FATAL:
+            case ERROR:
+                logger.error(msg, e);
+                break;
+            case WARN:
+                logger.warn(msg, e);
+                break;
+            case INFO:
+                logger.info(msg, e);
+                break;
+            case DEBUG:
+                logger.debug(msg, e);
+                break;
+            case TRACE:
+                logger.trace(msg, e);
+                break;
+            default:
+                logger.warn(msg, e);
+                break;
+        }
+    }
+
+    // ***************************************************************************************
+    // org.slf4j.Logger
+    // ***************************************************************************************
+    @Override
+    public String getName() {
+        return delegate().getName();
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return delegate().isTraceEnabled();
+    }
+
+    @Override
+    public void trace(String msg) {
+        delegate().trace(msg);
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        delegate().trace(format, arg);
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        delegate().trace(format, arg1, arg2);
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        delegate().trace(format, arguments);
+    }
+
+    @Override
+    public void trace(String msg, Throwable t) {
+        delegate().trace(msg, t);
+    }
+
+    @Override
+    public boolean isTraceEnabled(Marker marker) {
+        return delegate().isTraceEnabled(marker);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg) {
+        delegate().trace(marker, msg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg) {
+        delegate().trace(marker, format, arg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg1, Object arg2) {
+        delegate().trace(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object... arguments) {
+        delegate().trace(marker, format, arguments);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg, Throwable t) {
+        delegate().trace(marker, msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate().isDebugEnabled();
+    }
+
+    @Override
+    public void debug(String msg) {
+        delegate().debug(msg);
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        delegate().debug(format, arg);
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        delegate().debug(format, arg1, arg2);
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        delegate().debug(format, arguments);
+    }
+
+    @Override
+    public void debug(String msg, Throwable t) {
+        delegate().debug(msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled(Marker marker) {
+        return delegate().isDebugEnabled(marker);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg) {
+        delegate().debug(marker, msg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg) {
+        delegate().debug(marker, format, arg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        delegate().debug(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object... arguments) {
+        delegate().debug(marker, format, arguments);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg, Throwable t) {
+        delegate().debug(marker, msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate().isInfoEnabled();
+    }
+
+    @Override
+    public void info(String msg) {
+        delegate().info(msg);
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        delegate().info(format, arg);
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        delegate().info(format, arg1, arg2);
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        delegate().info(format, arguments);
+    }
+
+    @Override
+    public void info(String msg, Throwable t) {
+        delegate().info(msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled(Marker marker) {
+        return delegate().isInfoEnabled(marker);
+    }
+
+    @Override
+    public void info(Marker marker, String msg) {
+        delegate().info(marker, msg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg) {
+        delegate().info(marker, format, arg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        delegate().info(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object... arguments) {
+        delegate().info(marker, format, arguments);
+    }
+
+    @Override
+    public void info(Marker marker, String msg, Throwable t) {
+        delegate().info(marker, msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate().isWarnEnabled();
+    }
+
+    @Override
+    public void warn(String msg) {
+        delegate().warn(msg);
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        delegate().warn(format, arg);
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        delegate().warn(format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        delegate().warn(format, arguments);
+    }
+
+    @Override
+    public void warn(String msg, Throwable t) {
+        delegate().warn(msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled(Marker marker) {
+        return delegate().isWarnEnabled(marker);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg) {
+        delegate().warn(marker, msg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg) {
+        delegate().warn(marker, format, arg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        delegate().warn(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object... arguments) {
+        delegate().warn(marker, format, arguments);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg, Throwable t) {
+        delegate().warn(marker, msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate().isErrorEnabled();
+    }
+
+    @Override
+    public void error(String msg) {
+        delegate().error(msg);
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        delegate().error(format, arg);
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        delegate().error(format, arg1, arg2);
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        delegate().error(format, arguments);
+    }
+
+    @Override
+    public void error(String msg, Throwable t) {
+        delegate().error(msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled(Marker marker) {
+        return delegate().isErrorEnabled(marker);
+    }
+
+    @Override
+    public void error(Marker marker, String msg) {
+        delegate().error(marker, msg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg) {
+        delegate().error(marker, format, arg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        delegate().error(marker, format, arg1, arg2);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object... arguments) {
+        delegate().error(marker, format, arguments);
+    }
+
+    @Override
+    public void error(Marker marker, String msg, Throwable t) {
+        delegate().error(marker, msg, t);
+    }
+}
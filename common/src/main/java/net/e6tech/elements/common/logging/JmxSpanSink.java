@@ -0,0 +1,107 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+import net.e6tech.elements.common.util.concurrent.Histogram;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records span durations in a histogram per span name, each registered as net.e6tech.elements:type=Span,name=&lt;name&gt;.
+ * Span names should come from a small fixed set.
+ */
+public class JmxSpanSink implements SpanSink {
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEnd(Span span) {
+        Statistics stats = statistics.get(span.getName());
+        if (stats == null)
+            stats = statistics.computeIfAbsent(span.getName(), n -> new Statistics(n).register());
+        stats.durations.record(span.getDuration());
+    }
+
+    public SpanStatisticsMXBean getStatistics(String name) {
+        return statistics.get(name);
+    }
+
+    public static class Statistics implements SpanStatisticsMXBean {
+        private final String name;
+        private final Histogram durations = new Histogram();
+
+        Statistics(String name) {
+            this.name = name;
+        }
+
+        Statistics register() {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName("net.e6tech.elements:type=Span,name=" + ObjectName.quote(name));
+                if (!server.isRegistered(objectName))
+                    server.registerMBean(this, objectName);
+            } catch (Exception ex) {
+                logger.warn("Cannot register span statistics {} as MBean", name, ex);
+            }
+            return this;
+        }
+
+        public Histogram durations() {
+            return durations;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return durations.getCount();
+        }
+
+        @Override
+        public double getAverage() {
+            return durations.getMean() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getDuration50() {
+            return durations.getPercentile(50) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getDuration99() {
+            return durations.getPercentile(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxDuration() {
+            return durations.getMax() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public void resetStatistics() {
+            durations.reset();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+/**
+ * Logs finished spans that took at least threshold milliseconds, at the configured level, to the logger named Span.
+ */
+public class LogSpanSink implements SpanSink {
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private Logger logger = Logger.getLogger("Span");
+    private LogLevel logLevel = LogLevel.DEBUG;
+    private long threshold = 0;
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(LogLevel logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onEnd(Span span) {
+        long duration = span.getDuration();
+        if (duration < threshold * NANOS_PER_MILLI || !isEnabled())
+            return;
+        StringBuilder builder = new StringBuilder(96);
+        builder.append("Thread[").append(span.getThread().getName()).append("] ");
+        for (int i = 0; i < span.getDepth(); i++)
+            builder.append("  ");
+        builder.append(span.getName()).append(' ')
+                .append(duration / NANOS_PER_MILLI).append('.').append(duration % NANOS_PER_MILLI / 1000 / 100)
+                .append("ms trace=").append(span.getTraceId()).append(" span=").append(span.getId());
+        if (span.getParent() != null)
+            builder.append(" parent=").append(span.getParent().getId());
+        switch (logLevel) {
+            case FATAL:
+            case ERROR:
+                logger.error(builder.toString());
+                break;
+            case WARN:
+                logger.warn(builder.toString());
+                break;
+            case INFO:
+                logger.info(builder.toString());
+                break;
+            case DEBUG:
+                logger.debug(builder.toString());
+                break;
+            default:
+                logger.trace(builder.toString());
+                break;
+        }
+    }
+
+    private boolean isEnabled() {
+        switch (logLevel) {
+            case FATAL:
+            case ERROR:
+                return logger.isErrorEnabled();
+            case WARN:
+                return logger.isWarnEnabled();
+            case INFO:
+                return logger.isInfoEnabled();
+            case DEBUG:
+                return logger.isDebugEnabled();
+            default:
+                return logger.isTraceEnabled();
+        }
+    }
+}
@@ -18,8 +18,6 @@ package net.e6tech.elements.common.logging;
 import net.e6tech.elements.common.reflection.Reflection;
 import org.apache.logging.log4j.ThreadContext;
 
-import java.lang.reflect.Proxy;
-
 /**
  * Created by futeh.
  *
@@ -55,32 +53,26 @@ public interface Logger extends org.slf4j.Logger, LoggerExtension {
 
     static Logger getLogger() {
         Class cls = Reflection.getCallingClass();
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[]{Logger.class},
-                new LogHandler(cls));
+        return new DefaultLogger(cls);
     }
 
     static Logger getLogger(Class cls) {
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
-                new LogHandler(cls));
+        return new DefaultLogger(cls);
     }
 
     static Logger getLogger(String name) {
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
-                new LogHandler(name));
+        return new DefaultLogger(name);
     }
 
     static Logger nullLogger() {
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
-                new LogHandler(new NullLogger()));
+        return new DefaultLogger(new NullLogger());
     }
 
     static Logger consoleLogger() {
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
-                new LogHandler(new ConsoleLogger()));
+        return new DefaultLogger(new ConsoleLogger());
     }
 
     static Logger from(org.slf4j.Logger logger) {
-        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
-                new LogHandler(logger));
+        return new DefaultLogger(logger);
     }
 }
@@ -0,0 +1,310 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.logging;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named, timed section of work.  Spans nest: a span started while another is open on the same thread becomes its
+ * child, e.g.
+ * <pre>
+ * try (Span span = Span.start("loadAccount")) {
+ *     ...
+ * }
+ * </pre>
+ * Spans are confined to the thread that started them.  To continue a trace on another thread, wrap the task with
+ * {@link #wrap(Runnable)} or {@link #wrap(Callable)}, or attach the parent with {@link #attach(Span)}; ThreadPool and
+ * UnitOfWork do so already.
+ *
+ * Whether a trace is recorded is decided when its root span starts, 1 in sampleRate; the spans of unsampled
+ * traces, or all spans when there are no sinks, are a shared no-op instance.  Finished spans are passed to the sinks,
+ * see LogSpanSink, JmxSpanSink and ChromeTraceSpanSink.
+ */
+@SuppressWarnings("squid:S2696")
+public class Span implements AutoCloseable {
+    private static final AtomicLong ids = new AtomicLong();
+    private static final List<SpanSink> sinks = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Context> context = ThreadLocal.withInitial(Context::new);
+    private static volatile int sampleRate = 1;
+    private static volatile boolean enabled = false;
+
+    /** returned when tracing is off */
+    private static final Span DISABLED = new Span();
+    /** returned inside a trace that is not sampled */
+    private static final Span SUPPRESSED = new Span();
+
+    private final String name;
+    private final Span parent;
+    private final long traceId;
+    private final long id;
+    private final int depth;
+    private final Thread thread;
+    private final long start;
+    private long end;
+
+    private Span() {
+        name = null;
+        parent = null;
+        traceId = 0;
+        id = 0;
+        depth = 0;
+        thread = null;
+        start = 0;
+    }
+
+    private Span(String name, Span parent) {
+        this.name = name;
+        this.parent = parent;
+        this.id = ids.incrementAndGet();
+        this.traceId = (parent == null) ? id : parent.traceId;
+        this.depth = (parent == null) ? 0 : parent.depth + 1;
+        this.thread = Thread.currentThread();
+        this.start = System.nanoTime();
+    }
+
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Records 1 in sampleRate traces.  1, the default, records all of them; 0 turns tracing off.
+     */
+    public static void setSampleRate(int sampleRate) {
+        if (sampleRate < 0)
+            throw new IllegalArgumentException();
+        Span.sampleRate = sampleRate;
+        enabled = sampleRate > 0 && !sinks.isEmpty();
+    }
+
+    public static void addSink(SpanSink sink) {
+        sinks.add(sink);
+        enabled = sampleRate > 0;
+    }
+
+    public static void removeSink(SpanSink sink) {
+        sinks.remove(sink);
+        enabled = sampleRate > 0 && !sinks.isEmpty();
+    }
+
+    public static List<SpanSink> getSinks() {
+        return sinks;
+    }
+
+    /**
+     * Starts a span, a child of the current span of this thread if there is one.
+     */
+    public static Span start(String name) {
+        if (!enabled)
+            return DISABLED;
+        Context ctx = context.get();
+        if (ctx.suppressed > 0) {
+            ctx.suppressed++;
+            return SUPPRESSED;
+        }
+        if (ctx.current == null) {
+            int rate = sampleRate;
+            if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+                ctx.suppressed++;
+                return SUPPRESSED;
+            }
+        }
+        Span span = new Span(name, ctx.current);
+        ctx.current = span;
+        return span;
+    }
+
+    /**
+     * @return the innermost open span of this thread, or null.
+     */
+    public static Span current() {
+        if (!enabled)
+            return null;
+        return context.get().current;
+    }
+
+    /**
+     * Returns what to pass to {@link #attach(Span)} on another thread to continue the trace of this thread: the current
+     * span, a marker when the trace is not sampled so that the other thread does not start a trace of its own, or null
+     * outside of a trace.
+     */
+    public static Span capture() {
+        if (!enabled)
+            return null;
+        Context ctx = context.get();
+        if (ctx.current == null && ctx.suppressed > 0)
+            return SUPPRESSED;
+        return ctx.current;
+    }
+
+    /**
+     * Makes parent the current span of this thread until the returned scope is closed.  A null parent does nothing.
+     * Attaching what {@link #capture()} returned inside an unsampled trace suppresses the spans started in the scope.
+     */
+    public static Scope attach(Span parent) {
+        if (parent == null || !enabled)
+            return Scope.NONE;
+        Context ctx = context.get();
+        Scope scope = new Scope(ctx, ctx.current, ctx.suppressed);
+        if (parent == SUPPRESSED) {
+            ctx.current = null;
+            ctx.suppressed = 1;
+        } else {
+            ctx.current = parent;
+            ctx.suppressed = 0;
+        }
+        return scope;
+    }
+
+    /**
+     * Returns a Runnable that runs in the trace of the calling thread, see {@link #capture()}, or the runnable itself
+     * outside of a trace.
+     */
+    @SuppressWarnings("try")
+    public static Runnable wrap(Runnable runnable) {
+        Span parent = capture();
+        if (parent == null)
+            return runnable;
+        return () -> {
+            try (Scope scope = attach(parent)) {
+                runnable.run();
+            }
+        };
+    }
+
+    /**
+     * Callable counterpart of {@link #wrap(Runnable)}.
+     */
+    @SuppressWarnings("try")
+    public static <V> Callable<V> wrap(Callable<V> callable) {
+        Span parent = capture();
+        if (parent == null)
+            return callable;
+        return () -> {
+            try (Scope scope = attach(parent)) {
+                return callable.call();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (this == DISABLED)
+            return;
+        Context ctx = context.get();
+        if (this == SUPPRESSED) {
+            if (ctx.suppressed > 0)
+                ctx.suppressed--;
+            return;
+        }
+        if (end != 0)
+            return;
+        end = System.nanoTime();
+        if (ctx.current == this)
+            ctx.current = parent;
+        for (SpanSink sink : sinks)
+            sink.onEnd(this);
+    }
+
+    public boolean isRecording() {
+        return name != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * @return System.nanoTime() when the span started.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return System.nanoTime() when the span ended, 0 while open.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return duration in nanoseconds, or the time so far while open.
+     */
+    public long getDuration() {
+        if (name == null)
+            return 0;
+        return (end == 0 ? System.nanoTime() : end) - start;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? "Span[]" : "Span[" + name + ", trace=" + traceId + ", id=" + id + "]";
+    }
+
+    private static class Context {
+        Span current;
+        int suppressed;
+    }
+
+    /**
+     * Restores the previous current span when closed.
+     */
+    public static class Scope implements AutoCloseable {
+        static final Scope NONE = new Scope(null, null, 0);
+
+        private final Context context;
+        private final Span previous;
+        private final int suppressed;
+
+        Scope(Context context, Span previous, int suppressed) {
+            this.context = context;
+            this.previous = previous;
+            this.suppressed = suppressed;
+        }
+
+        @Override
+        public void close() {
+            if (context == null)
+                return;
+            context.current = previous;
+            context.suppressed = suppressed;
+        }
+    }
+}
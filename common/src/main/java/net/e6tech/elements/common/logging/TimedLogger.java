@@ -19,19 +19,20 @@ package net.e6tech.elements.common.logging;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Stack;
 
 /**
- * This class is not thread safe
+ * An instance is not thread safe.
  * Created by futeh.
+ * @deprecated use {@link Span}, which is thread safe, nests and does not walk the stack.
  */
+@Deprecated
 @SuppressWarnings({"squid:S1149", "squid:MethodCyclomaticComplexity"})
 public class TimedLogger {
 
     private static Set<String> includes = Collections.synchronizedSet(new HashSet<>());
     private static Set<String> excludes = Collections.synchronizedSet(new HashSet<>());
     private static String regex;
-    private static Stack<StringBuilder> builders = new Stack<>();
+    private static ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(StringBuilder::new);
     private static long defaultTimeout = 50L;
 
     private long start = System.currentTimeMillis();
@@ -261,16 +262,12 @@ public class TimedLogger {
     }
 
     private static StringBuilder checkout() {
-        synchronized (builders) {
-            if (!builders.isEmpty())
-                return builders.pop();
-        }
-        return new StringBuilder();
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        return builder;
     }
 
     private static void checkin(StringBuilder builder) {
-        synchronized (builders) {
-            builders.push(builder);
-        }
+        builder.setLength(0);
     }
 }
@@ -18,6 +18,8 @@ package net.e6tech.elements.common.logging.jul;
 
 
 
+import net.e6tech.elements.common.logging.AsyncAppender;
+
 import java.util.logging.Filter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -27,7 +29,9 @@ import java.util.logging.LogRecord;
  * Created by futeh.
  */
 @SuppressWarnings("squid:S00122")
-public class LoggerAdapter extends java.util.logging.Logger {
+public class LoggerAdapter extends java.util.logging.Logger implements AsyncAppender.Target {
+
+    private static volatile AsyncAppender appender = AsyncAppender.configured();
 
     net.e6tech.elements.common.logging.Logger logger;
 
@@ -70,11 +74,48 @@ public class LoggerAdapter extends java.util.logging.Logger {
         }
     }
 
+    public static AsyncAppender getAppender() {
+        return appender;
+    }
+
+    /**
+     * Hands JUL messages to the appender's thread before they reach the elements Logger.  Set to null to log
+     * synchronously.
+     */
+    public static void setAppender(AsyncAppender asyncAppender) {
+        appender = asyncAppender;
+    }
+
+    @Override
+    public void append(AsyncAppender.Event event) {
+        Level level = (Level) event.getLevel();
+        switch (event.getArgCount()) {
+            case 0:
+                if (event.getThrown() != null)
+                    logNow(level, event.getMessage(), event.getThrown());
+                else
+                    logNow(level, event.getMessage());
+                break;
+            case 1:
+                logNow(level, event.getMessage(), event.getArg1());
+                break;
+            default:
+                logNow(level, event.getMessage(), event.getArguments());
+                break;
+        }
+    }
+
     @Override
     public boolean isLoggable(final Level level) {
-        if (Level.ALL.equals(level)) return true;
+        if (Level.ALL.equals(level)) return logger.isInfoEnabled();
         else if (Level.CONFIG.equals(level)) return logger.isInfoEnabled();
-        return true;
+        else if (Level.FINE.equals(level)) return logger.isDebugEnabled();
+        else if (Level.FINER.equals(level)) return logger.isDebugEnabled();
+        else if (Level.FINEST.equals(level)) return logger.isTraceEnabled();
+        else if (Level.INFO.equals(level)) return logger.isInfoEnabled();
+        else if (Level.SEVERE.equals(level)) return logger.isErrorEnabled();
+        else if (Level.WARNING.equals(level)) return logger.isWarnEnabled();
+        return false;
     }
 
     @Override
@@ -89,6 +130,14 @@ public class LoggerAdapter extends java.util.logging.Logger {
 
     @Override
     public void log(final Level level, final String msg) {
+        AsyncAppender async = appender;
+        if (async == null)
+            logNow(level, msg);
+        else if (isLoggable(level))
+            async.append(this, level, msg, (Throwable) null);
+    }
+
+    private void logNow(final Level level, final String msg) {
         if (Level.ALL.equals(level)) logger.info(msg);
         else if (Level.CONFIG.equals(level)) logger.info(msg);
         else if (Level.FINE.equals(level)) logger.debug(msg);
@@ -101,6 +150,14 @@ public class LoggerAdapter extends java.util.logging.Logger {
 
     @Override
     public void log(final Level level, final String msg, final Object param1) {
+        AsyncAppender async = appender;
+        if (async == null)
+            logNow(level, msg, param1);
+        else if (isLoggable(level))
+            async.append(this, level, msg, param1);
+    }
+
+    private void logNow(final Level level, final String msg, final Object param1) {
         if (Level.ALL.equals(level)) logger.info(msg, param1);
         else if (Level.CONFIG.equals(level)) logger.info(msg, param1);
         else if (Level.FINE.equals(level)) logger.debug(msg, param1);
@@ -113,6 +170,14 @@ public class LoggerAdapter extends java.util.logging.Logger {
 
     @Override
     public void log(final Level level, final String msg, final Object[] params) {
+        AsyncAppender async = appender;
+        if (async == null)
+            logNow(level, msg, params);
+        else if (isLoggable(level))
+            async.append(this, level, msg, params, null);
+    }
+
+    private void logNow(final Level level, final String msg, final Object[] params) {
         if (Level.ALL.equals(level)) logger.info(msg, params);
         else if (Level.CONFIG.equals(level)) logger.info(msg, params);
         else if (Level.FINE.equals(level)) logger.debug(msg, params);
@@ -125,6 +190,14 @@ public class LoggerAdapter extends java.util.logging.Logger {
 
     @Override
     public void log(final Level level, final String msg, final Throwable thrown) {
+        AsyncAppender async = appender;
+        if (async == null)
+            logNow(level, msg, thrown);
+        else if (isLoggable(level))
+            async.append(this, level, msg, thrown);
+    }
+
+    private void logNow(final Level level, final String msg, final Throwable thrown) {
         if (Level.ALL.equals(level)) logger.info(msg, thrown);
         else if (Level.CONFIG.equals(level)) logger.info(msg, thrown);
         else if (Level.FINE.equals(level)) logger.debug(msg, thrown);
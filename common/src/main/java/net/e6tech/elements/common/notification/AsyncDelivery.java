@@ -0,0 +1,99 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.notification;
+
+/**
+ * Settings of an asynchronous subscription, see NotificationCenter.addNotificationListener(Class, NotificationListener, AsyncDelivery).
+ * Notifications are queued in a bounded buffer and delivered by a thread of the subscription, in batches of up to
+ * batchSize notifications collected for at most batchTimeout milliseconds.
+ */
+public class AsyncDelivery {
+
+    /**
+     * What happens to a notification fired when the buffer of the subscription is full.
+     */
+    public enum Overflow {
+        /** the firing thread waits for room */
+        BLOCK,
+        /** the new notification is dropped */
+        DROP_NEWEST,
+        /** the oldest queued notification is dropped to make room */
+        DROP_OLDEST
+    }
+
+    private String name;
+    private int bufferSize = 1024;
+    private int batchSize = 1;
+    private long batchTimeout = 0L;
+    private Overflow overflow = Overflow.BLOCK;
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Name of the subscription's delivery thread and MBean.  Defaults to the listener's description.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException();
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Maximum number of notifications passed to NotificationListener.onEvents at once.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException();
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * How long, in milliseconds, a partial batch waits for more notifications before it is delivered.  0 delivers
+     * whatever is queued right away.
+     */
+    public void setBatchTimeout(long batchTimeout) {
+        if (batchTimeout < 0)
+            throw new IllegalArgumentException();
+        this.batchTimeout = batchTimeout;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(Overflow overflow) {
+        this.overflow = overflow;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.notification;
+
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers the notifications of one subscription on its own thread.  onEvent only queues the notification in a bounded
+ * buffer, so the firing thread does not wait for the listener unless the buffer is full and the overflow is BLOCK.
+ *
+ * Notifications fired by the same thread are delivered in the order they were fired; dropped notifications leave
+ * gaps but never reorder.  Exceptions thrown by the listener are logged and do not stop the delivery.  After close,
+ * notifications are delivered on the firing thread.
+ *
+ * Registered as net.e6tech.elements:type=Notification,name=&lt;name&gt; for queue depth and lag.
+ */
+@SuppressWarnings("unchecked")
+public class AsyncNotificationListener<T extends Notification> implements NotificationListener<T>, AsyncNotificationListenerMXBean {
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final long IDLE_POLL = 100L;
+    private static final AtomicInteger count = new AtomicInteger();
+
+    private final NotificationListener<T> listener;
+    private final String name;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final AsyncDelivery.Overflow overflow;
+    private final BlockingQueue<Envelope<T>> queue;
+    private final Thread thread;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Histogram lag = new Histogram();
+    private ObjectName objectName;
+    private volatile boolean running = true;
+
+    public AsyncNotificationListener(NotificationListener<T> listener, AsyncDelivery delivery) {
+        this.listener = listener;
+        this.name = (delivery.getName() != null ? delivery.getName() : listener.getDescription()) + "-" + count.incrementAndGet();
+        this.batchSize = delivery.getBatchSize();
+        this.batchTimeout = TimeUnit.MILLISECONDS.toNanos(delivery.getBatchTimeout());
+        this.overflow = delivery.getOverflow();
+        this.queue = new ArrayBlockingQueue<>(delivery.getBufferSize());
+        thread = new Thread(this::deliver, name);
+        thread.setDaemon(true);
+        thread.start();
+        register();
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("net.e6tech.elements:type=Notification,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName))
+                server.registerMBean(this, objectName);
+        } catch (Exception ex) {
+            logger.warn("Cannot register notification listener {} as MBean", name, ex);
+        }
+    }
+
+    public NotificationListener<T> getListener() {
+        return listener;
+    }
+
+    @Override
+    public Class<? extends Notification>[] getNotificationTypes() {
+        return listener.getNotificationTypes();
+    }
+
+    @Override
+    public String getDescription() {
+        return listener.getDescription();
+    }
+
+    @Override
+    public void onEvent(T notification) {
+        if (!running) {
+            deliverNow(notification);
+            return;
+        }
+        Envelope<T> envelope = new Envelope<>(notification);
+        switch (overflow) {
+            case DROP_NEWEST:
+                if (!queue.offer(envelope))
+                    dropped.increment();
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(envelope)) {
+                    if (queue.poll() != null)
+                        dropped.increment();
+                }
+                break;
+            default:
+                try {
+                    queue.put(envelope);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+                break;
+        }
+        // closed meanwhile: the delivery thread may have exited before seeing it.
+        if (!running && !thread.isAlive()) {
+            Envelope<T> left;
+            while ((left = queue.poll()) != null)
+                deliverNow(left.notification);
+        }
+    }
+
+    private void deliverNow(T notification) {
+        try {
+            listener.onEvent(notification);
+        } catch (Exception ex) {
+            failures.increment();
+            logger.warn("Notification listener {} failed", name, ex);
+        }
+        delivered.increment();
+    }
+
+    /**
+     * Stops the delivery thread after the queued notifications have been delivered.  Later notifications are delivered
+     * synchronously.
+     */
+    public void close() {
+        running = false;
+        try {
+            if (objectName != null && ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ex) {
+            logger.warn("Cannot unregister notification listener {}", name, ex);
+        }
+    }
+
+    private void deliver() {
+        List<Envelope<T>> envelopes = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Envelope<T> first = queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                envelopes.add(first);
+                collect(envelopes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (envelopes.isEmpty())
+                continue;
+            long now = System.nanoTime();
+            // a new list per batch, listeners may keep it or hand it off.
+            List<T> batch = new ArrayList<>(envelopes.size());
+            for (Envelope<T> envelope : envelopes) {
+                lag.record(now - envelope.fired);
+                batch.add(envelope.notification);
+            }
+            try {
+                if (batch.size() == 1)
+                    listener.onEvent(batch.get(0));
+                else
+                    listener.onEvents(Collections.unmodifiableList(batch));
+            } catch (Exception ex) {
+                failures.increment();
+                logger.warn("Notification listener {} failed", name, ex);
+            }
+            delivered.add(batch.size());
+            batches.increment();
+            envelopes.clear();
+        }
+    }
+
+    // fills the batch with what is queued, waiting up to batchTimeout for the rest.
+    private void collect(List<Envelope<T>> envelopes) throws InterruptedException {
+        if (batchSize == 1)
+            return;
+        queue.drainTo(envelopes, batchSize - envelopes.size());
+        long deadline = System.nanoTime() + batchTimeout;
+        while (envelopes.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                break;
+            Envelope<T> envelope = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (envelope == null)
+                break;
+            envelopes.add(envelope);
+            queue.drainTo(envelopes, batchSize - envelopes.size());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    @Override
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getAverageLag() {
+        return lag.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLag50() {
+        return lag.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLag99() {
+        return lag.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxLag() {
+        return lag.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void resetStatistics() {
+        delivered.reset();
+        dropped.reset();
+        batches.reset();
+        failures.reset();
+        lag.reset();
+    }
+
+    private static class Envelope<T> {
+        private final T notification;
+        private final long fired = System.nanoTime();
+
+        Envelope(T notification) {
+            this.notification = notification;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.notification;
+
+/**
+ * Runtime view of an asynchronous subscription.  Lag is the time from firing to delivery, in milliseconds.
+ */
+public interface AsyncNotificationListenerMXBean {
+
+    String getName();
+
+    int getQueueDepth();
+
+    int getCapacity();
+
+    long getDelivered();
+
+    long getDropped();
+
+    long getBatches();
+
+    long getFailures();
+
+    double getAverageLag();
+
+    double getLag50();
+
+    double getLag99();
+
+    double getMaxLag();
+
+    void resetStatistics();
+}
@@ -21,25 +21,46 @@ import net.e6tech.elements.common.subscribe.Subscriber;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Listeners registered for a class receive notifications of that class and its subclasses, unless a subclass closer
+ * to the notification has listeners of its own.  The resolved listeners of each concrete notification class are kept in a
+ * dispatch table computed on first fire and dropped for the affected classes when listeners are added or removed,
+ * so that firing is a map lookup and an array walk.
+ *
+ * Listeners run on the firing thread unless subscribed with an AsyncDelivery, in which case they are
+ * called on a thread of their own, see AsyncNotificationListener.
  * Created by futeh on 1/21/16.
  */
 @SuppressWarnings({"unchecked", "squid:S1149"})
 public class NotificationCenter implements Broadcast {
 
+    private final String id = UUID.randomUUID().toString();
     private Map<Object, List<NotificationListener>> srcNotificationListeners = new ConcurrentHashMap<>();
     private Map<Class, List<NotificationListener>> notificationListeners = new ConcurrentHashMap<>();
+    private Map<Class, NotificationListener[]> dispatchTable = new ConcurrentHashMap<>();
+    private final Object dispatchLock = new Object();
+    private Map<List<Object>, AsyncNotificationListener> asyncListeners = new ConcurrentHashMap<>();
 
     // for broadcasting
     Map<Object, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
     List<Broadcast> broadcasts = new CopyOnWriteArrayList<>();
 
+    /**
+     * Unique id of this instance; lets subscribers recognize messages published through it when they come back from
+     * a cluster broadcast.
+     */
+    public String getId() {
+        return id;
+    }
+
     public void addSourceNotificationListener(Object src, NotificationListener listener) {
         List<NotificationListener> listeners = srcNotificationListeners.computeIfAbsent(src, n -> new CopyOnWriteArrayList<>());
         listeners.add(listener);
@@ -47,17 +68,98 @@ public class NotificationCenter implements Broadcast {
 
     public void removeSourceNotificationListener(Object src, NotificationListener listener) {
         List<NotificationListener> listeners = srcNotificationListeners.computeIfAbsent(src, n -> new CopyOnWriteArrayList<>());
-        listeners.remove(listener);
+        AsyncNotificationListener async = asyncListeners.remove(Arrays.asList(src, listener));
+        if (async != null) {
+            listeners.remove(async);
+            async.close();
+        } else {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Same as addSourceNotificationListener(Object, NotificationListener) except that the listener is called on its own
+     * thread as described by AsyncDelivery.
+     */
+    public void addSourceNotificationListener(Object src, NotificationListener listener, AsyncDelivery delivery) {
+        AsyncNotificationListener async = new AsyncNotificationListener(listener, delivery);
+        AsyncNotificationListener previous = asyncListeners.put(Arrays.asList(src, listener), async);
+        if (previous != null) {
+            srcNotificationListeners.get(src).remove(previous);
+            previous.close();
+        }
+        addSourceNotificationListener(src, async);
     }
 
     public <T extends Notification> void addNotificationListener(Class<T> cls, NotificationListener<T> listener) {
-        List<NotificationListener> listeners = notificationListeners.computeIfAbsent(cls, n -> new CopyOnWriteArrayList<>());
-        listeners.add(listener);
+        synchronized (dispatchLock) {
+            List<NotificationListener> listeners = notificationListeners.computeIfAbsent(cls, n -> new CopyOnWriteArrayList<>());
+            listeners.add(listener);
+            invalidate(cls);
+        }
+    }
+
+    /**
+     * Same as addNotificationListener(Class, NotificationListener) except that the listener is called on its own thread
+     * as described by AsyncDelivery.  Remove it with removeNotificationListener using the same listener.
+     */
+    public <T extends Notification> void addNotificationListener(Class<T> cls, NotificationListener<T> listener, AsyncDelivery delivery) {
+        AsyncNotificationListener<T> async = new AsyncNotificationListener<>(listener, delivery);
+        synchronized (dispatchLock) {
+            AsyncNotificationListener previous = asyncListeners.put(Arrays.asList(cls, listener), async);
+            if (previous != null) {
+                removeListener(cls, previous);
+                previous.close();
+            }
+            addNotificationListener(cls, async);
+        }
     }
 
     public <T extends Notification> void removeNotificationListener(Class<T> cls, NotificationListener<T> listener) {
-        List<NotificationListener> listeners = notificationListeners.computeIfAbsent(cls, n -> new CopyOnWriteArrayList<>());
-        listeners.remove(listener);
+        synchronized (dispatchLock) {
+            AsyncNotificationListener async = asyncListeners.remove(Arrays.asList(cls, listener));
+            if (async != null) {
+                removeListener(cls, async);
+                async.close();
+            } else {
+                removeListener(cls, listener);
+            }
+        }
+    }
+
+    // must be called holding dispatchLock.
+    private void removeListener(Class cls, NotificationListener listener) {
+        List<NotificationListener> listeners = notificationListeners.get(cls);
+        if (listeners != null && listeners.remove(listener)) {
+            if (listeners.isEmpty())
+                notificationListeners.remove(cls);
+            invalidate(cls);
+        }
+    }
+
+    // must be called holding dispatchLock.  Only entries for cls and its subclasses can change.
+    private void invalidate(Class cls) {
+        dispatchTable.keySet().removeIf(cls::isAssignableFrom);
+    }
+
+    private NotificationListener[] dispatch(Class notificationClass) {
+        NotificationListener[] listeners = dispatchTable.get(notificationClass);
+        if (listeners != null)
+            return listeners;
+
+        // computed under the lock so that a concurrent add or remove cannot be overwritten by a stale table.
+        synchronized (dispatchLock) {
+            return dispatchTable.computeIfAbsent(notificationClass, key -> {
+                Class cls = key;
+                while (cls != null && !cls.equals(Object.class)) {
+                    List<NotificationListener> list = notificationListeners.get(cls);
+                    if (list != null && !list.isEmpty())
+                        return list.toArray(new NotificationListener[0]);
+                    cls = cls.getSuperclass();
+                }
+                return new NotificationListener[0];
+            });
+        }
     }
 
     public void fireNotification(Notification notification) {
@@ -68,15 +170,8 @@ public class NotificationCenter implements Broadcast {
             }
         }
 
-        Class cls = notification.getClass();
-        while (!cls.equals(Object.class)) {
-            List<NotificationListener> listeners = notificationListeners.get(cls);
-            if (listeners != null) {
-                listeners.forEach(listener -> listener.onEvent(notification));
-                break;
-            }
-            cls = cls.getSuperclass();
-        }
+        for (NotificationListener listener : dispatch(notification.getClass()))
+            listener.onEvent(notification);
     }
 
     public List<NotificationListener> getNotificationListeners(Notification notification) {
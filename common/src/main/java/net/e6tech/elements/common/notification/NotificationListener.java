@@ -19,6 +19,7 @@ package net.e6tech.elements.common.notification;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.util.List;
 
 /**
  * Created by futeh on 1/21/16.
@@ -70,4 +71,13 @@ public interface NotificationListener<T extends Notification> {
     }
 
     void onEvent(T notification);
+
+    /**
+     * Called by asynchronous subscriptions with a batch of notifications, see AsyncDelivery.batchSize.  The list is
+     * unmodifiable and is not reused, so it may be kept after the call.
+     */
+    default void onEvents(List<T> notifications) {
+        for (T notification : notifications)
+            onEvent(notification);
+    }
 }
@@ -20,9 +20,11 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 
 import java.lang.invoke.*;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 @SuppressWarnings("squid:S00112")
@@ -62,6 +64,61 @@ public class Lambda {
         }
     }
 
+    private static BiFunction createBiFunction(final MethodHandles.Lookup lookup,
+                                               final MethodHandle method) throws Exception {
+        final CallSite site = LambdaMetafactory.metafactory(lookup,
+                "apply",
+                MethodType.methodType(BiFunction.class),
+                MethodType.methodType(Object.class, Object.class, Object.class), //signature of method BiFunction.apply after type erasure
+                method,
+                method.type().wrap()); //actual signature of method, primitive return is boxed
+        try {
+            return (BiFunction) site.getTarget().invokeExact();
+        } catch (final Exception e) {
+            throw e;
+        } catch (final Throwable e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Returns a Lookup with private access to cls so that private methods can be bound with LambdaMetafactory.
+     * Uses MethodHandles.privateLookupIn on Java 9 and above and the private Lookup constructor on Java 8.
+     */
+    @SuppressWarnings("squid:S3011")
+    public static MethodHandles.Lookup privateLookupIn(Class cls) throws ReflectiveOperationException {
+        try {
+            Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            return (MethodHandles.Lookup) privateLookupIn.invoke(null, cls, MethodHandles.lookup());
+        } catch (NoSuchMethodException ex) {
+            Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, Integer.TYPE);
+            constructor.setAccessible(true);
+            return constructor.newInstance(cls, -1);
+        }
+    }
+
+    /**
+     * Binds a single argument instance method, void or not, to a BiFunction taking the target and the argument.
+     * Void methods return null.
+     */
+    public static BiFunction reflectBiFunction(final MethodHandles.Lookup lookup, final Method method) throws ReflectiveOperationException {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            if (method.getReturnType().equals(void.class)) {
+                BiConsumer consumer = createSetter(lookup, handle);
+                return (target, arg) -> {
+                    consumer.accept(target, arg);
+                    return null;
+                };
+            }
+            return createBiFunction(lookup, handle);
+        } catch (ReflectiveOperationException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new ReflectiveOperationException(e);
+        }
+    }
+
     public static Function reflectGetter(final MethodHandles.Lookup lookup, final Method getter) throws ReflectiveOperationException {
         try {
             return GETTERS.get(getter, () -> createGetter(lookup, lookup.unreflect(getter)));
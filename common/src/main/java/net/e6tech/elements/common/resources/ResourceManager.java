@@ -20,7 +20,7 @@ import net.e6tech.elements.common.inject.Module;
 import net.e6tech.elements.common.inject.ModuleFactory;
 import net.e6tech.elements.common.interceptor.Interceptor;
 import net.e6tech.elements.common.logging.Logger;
-import net.e6tech.elements.common.logging.TimedLogger;
+import net.e6tech.elements.common.logging.Span;
 import net.e6tech.elements.common.notification.NotificationCenter;
 import net.e6tech.elements.common.notification.NotificationListener;
 import net.e6tech.elements.common.notification.ShutdownNotification;
@@ -271,7 +271,7 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
         return atoms.remove(name);
     }
 
-    @SuppressWarnings("squid:CommentedOutCodeLine")
+    @SuppressWarnings({"squid:CommentedOutCodeLine", "try"})
     public Atom createAtom(String atomName, Consumer<Atom> consumer, Atom prototypeAtom, boolean prototype) {
         if (name != null && atoms.get(atomName) != null) {
             logger.warn("Atom named " + atomName + " already exists!", new Throwable());
@@ -303,10 +303,9 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
 
         }
         consumer.accept(atom);
-        TimedLogger timed = new TimedLogger(0);
-        Atom comp = atom.build();
-        timed.log("Atom " + atomName);
-        return comp;
+        try (Span span = Span.start("Atom " + atomName)) {
+            return atom.build();
+        }
     }
 
     @SuppressWarnings("unchecked")
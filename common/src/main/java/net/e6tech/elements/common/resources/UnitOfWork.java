@@ -16,6 +16,7 @@ limitations under the License.
 
 package net.e6tech.elements.common.resources;
 
+import net.e6tech.elements.common.logging.Span;
 import net.e6tech.elements.common.util.function.ConsumerWithException;
 import net.e6tech.elements.common.util.function.FunctionWithException;
 import net.e6tech.elements.common.util.function.RunnableWithException;
@@ -26,6 +27,8 @@ import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 
 /**
+ * Work submitted to a UnitOfWork is traced as a UnitOfWork span, a child of the span that was current when open was
+ * called, so traces continue when a unit of work is opened on one thread and used on another.
  * Created by futeh.
  */
 public class UnitOfWork implements Transactional, Configurable<UnitOfWork> {
@@ -35,6 +38,7 @@ public class UnitOfWork implements Transactional, Configurable<UnitOfWork> {
     Consumer<Resources> preOpen;
     private Configurator configurator = new Configurator();
     Resources resources;
+    private Span span;
 
     public UnitOfWork(ResourceManager resourceManager) {
         this.resourceManager = resourceManager;
@@ -65,6 +69,7 @@ public class UnitOfWork implements Transactional, Configurable<UnitOfWork> {
     public <T extends Resources> T open() {
         if (resources != null && resources.isOpen())
             return (T) resources;
+        span = Span.capture();
         resources = resourceManager.open(this.configurator, r -> {
             if (preOpen != null)
                 preOpen.accept(r);
@@ -94,30 +99,43 @@ public class UnitOfWork implements Transactional, Configurable<UnitOfWork> {
         resources = null;
         configurator.clear();
         preOpen = null;
+        span = null;
     }
 
+    @SuppressWarnings("try")
     public void submit(RunnableWithException work) {
         if (resources == null || !resources.isOpen())
             throw new IllegalStateException(RESOURCES_NOT_OPEN);
-        resources.submit((ConsumerWithException<Resources, Exception>) res -> work.run());
+        try (Span.Scope scope = Span.attach(span); Span s = Span.start("UnitOfWork")) {
+            resources.submit((ConsumerWithException<Resources, Exception>) res -> work.run());
+        }
     }
 
+    @SuppressWarnings("try")
     public <T extends Resources> void submit(ConsumerWithException<T, Exception> work) {
         if (resources == null || !resources.isOpen())
             throw new IllegalStateException(RESOURCES_NOT_OPEN);
-        resources.submit(work);
+        try (Span.Scope scope = Span.attach(span); Span s = Span.start("UnitOfWork")) {
+            resources.submit(work);
+        }
     }
 
+    @SuppressWarnings("try")
     public <T> T submit(Callable<T> work) {
         if (resources == null || !resources.isOpen())
             throw new IllegalStateException(RESOURCES_NOT_OPEN);
-        return resources.submit((FunctionWithException<Resources, T, Exception>) res -> work.call());
+        try (Span.Scope scope = Span.attach(span); Span s = Span.start("UnitOfWork")) {
+            return resources.submit((FunctionWithException<Resources, T, Exception>) res -> work.call());
+        }
     }
 
+    @SuppressWarnings("try")
     public <T extends Resources, R> R submit(FunctionWithException<T, R, Exception> work) {
         if (resources == null || !resources.isOpen())
             throw new IllegalStateException(RESOURCES_NOT_OPEN);
-        return resources.submit(work);
+        try (Span.Scope scope = Span.attach(span); Span s = Span.start("UnitOfWork")) {
+            return resources.submit(work);
+        }
     }
 
     public boolean isOpened() {
@@ -19,34 +19,100 @@ package net.e6tech.elements.common.subscribe;
 import net.e6tech.elements.common.logging.Logger;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
+ * Delivers published objects to the subscribers of a topic on the thread pool.
+ *
+ * Subscribers are kept in an immutable snapshot, topic to array of subscribers, that is replaced on subscribe and
+ * unsubscribe.  Publishing reads the snapshot without locking and does not submit a task when a topic has no subscribers.
+ *
+ * A topic can be set to coalesce: objects published within the window after the first one are collapsed so that
+ * only the latest is delivered when the window closes.  With a key function, objects are collapsed per key
+ * instead of per topic.
  * Created by futeh.
  */
+@SuppressWarnings("unchecked")
 public class DefaultBroadcast implements Broadcast {
 
+    private static final Subscriber[] NONE = new Subscriber[0];
+    private static ScheduledExecutorService timer;
+
     Logger logger = Logger.getLogger();
-    Map<String, List<Subscriber>> subscribers = new HashMap<>();
-    Map<String, List<Subscriber>> copy = new HashMap<>();
+    private volatile Map<String, Subscriber[]> subscribers = Collections.emptyMap();
+    private Map<String, Coalescing> coalescing = new ConcurrentHashMap<>();
+    private Map<Object, Pending> pending = new ConcurrentHashMap<>();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
     ExecutorService threadPool;
 
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DefaultBroadcast-coalescing");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
     public void setThreadPool(ExecutorService threadPool) {
         this.threadPool = threadPool;
     }
 
+    /**
+     * Collapses objects published to the topic within window milliseconds into the latest one.
+     */
+    public void coalesce(String topic, long window) {
+        coalesce(topic, window, null);
+    }
+
+    /**
+     * Collapses objects of the same key, as returned by the key function, published to the topic within window
+     * milliseconds into the latest one.  A window of 0 turns coalescing off.
+     */
+    public void coalesce(String topic, long window, Function<Serializable, Object> key) {
+        if (window < 0)
+            throw new IllegalArgumentException();
+        if (window == 0)
+            coalescing.remove(topic);
+        else
+            coalescing.put(topic, new Coalescing(window, key));
+    }
+
+    /**
+     * @return number of tasks submitted to the thread pool.
+     */
+    public long getTasks() {
+        return tasks.sum();
+    }
+
+    /**
+     * @return number of published objects replaced by a later one before delivery.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
     @Override
-    public void subscribe(String topic, Subscriber subscriber) {
-        List<Subscriber> list = subscribers.computeIfAbsent(topic, key -> new LinkedList<Subscriber>());
-        synchronized (list) {
-            list.add(subscriber);
-            List<Subscriber> copyList = new LinkedList<>(list);
-            copy.put(topic, copyList);
-        }
+    public synchronized void subscribe(String topic, Subscriber subscriber) {
+        Map<String, Subscriber[]> map = new HashMap<>(subscribers);
+        Subscriber[] list = map.getOrDefault(topic, NONE);
+        list = Arrays.copyOf(list, list.length + 1);
+        list[list.length - 1] = subscriber;
+        map.put(topic, list);
+        subscribers = map;
     }
 
     @Override
@@ -55,12 +121,23 @@ public class DefaultBroadcast implements Broadcast {
     }
 
     @Override
-    public void unsubscribe(String topic, Subscriber subscriber) {
-        List<Subscriber> list = subscribers.computeIfAbsent(topic, key -> new LinkedList<Subscriber>());
-        synchronized (list) {
-            list.remove(subscriber);
-            List<Subscriber> copyList = new LinkedList<>(list);
-            copy.put(topic, copyList);
+    public synchronized void unsubscribe(String topic, Subscriber subscriber) {
+        Subscriber[] list = subscribers.get(topic);
+        if (list == null)
+            return;
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].equals(subscriber)) {
+                Map<String, Subscriber[]> map = new HashMap<>(subscribers);
+                Subscriber[] copy = new Subscriber[list.length - 1];
+                System.arraycopy(list, 0, copy, 0, i);
+                System.arraycopy(list, i + 1, copy, i, list.length - i - 1);
+                if (copy.length == 0)
+                    map.remove(topic);
+                else
+                    map.put(topic, copy);
+                subscribers = map;
+                return;
+            }
         }
     }
 
@@ -69,23 +146,35 @@ public class DefaultBroadcast implements Broadcast {
         unsubscribe(topic.getName(), subscriber);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void publish(String topic, Serializable object) {
-        threadPool.execute(()-> {
-            try {
-                Notice notice = new Notice(topic, object);
-                List<Subscriber> list = subscribers.computeIfAbsent(topic, key -> new LinkedList<Subscriber>());
-                synchronized (list) {
-                    list = copy.computeIfAbsent(topic, key -> new LinkedList<Subscriber>());
-                }
-                for (Subscriber subscriber : list) {
-                    subscriber.receive(notice);
-                }
-            } catch (Exception e) {
-                logger.warn(e.getMessage(), e);
+        if (subscribers.get(topic) == null)
+            return;
+
+        Coalescing coalesce = coalescing.get(topic);
+        if (coalesce == null) {
+            execute(() -> deliver(topic, object));
+            return;
+        }
+
+        Object key = (coalesce.key == null) ? topic : Arrays.asList(topic, coalesce.key.apply(object));
+        boolean[] created = new boolean[1];
+        pending.compute(key, (k, p) -> {
+            if (p == null) {
+                created[0] = true;
+                return new Pending(object);
             }
+            p.object = object;
+            coalesced.increment();
+            return p;
         });
+        if (created[0]) {
+            timer().schedule(() -> {
+                Pending p = pending.remove(key);
+                if (p != null)
+                    execute(() -> deliver(topic, p.object));
+            }, coalesce.window, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -93,4 +182,44 @@ public class DefaultBroadcast implements Broadcast {
         publish(cls.getName(), object);
     }
 
+    private void execute(Runnable runnable) {
+        tasks.increment();
+        if (threadPool == null)
+            runnable.run();
+        else
+            threadPool.execute(runnable);
+    }
+
+    // the subscribers are read at delivery time so that those unsubscribed in the meantime are skipped.
+    private void deliver(String topic, Serializable object) {
+        Subscriber[] list = subscribers.get(topic);
+        if (list == null)
+            return;
+        Notice notice = new Notice(topic, object);
+        for (Subscriber subscriber : list) {
+            try {
+                subscriber.receive(notice);
+            } catch (Exception e) {
+                logger.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class Coalescing {
+        private final long window;
+        private final Function<Serializable, Object> key;
+
+        Coalescing(long window, Function<Serializable, Object> key) {
+            this.window = window;
+            this.key = key;
+        }
+    }
+
+    private static class Pending {
+        private volatile Serializable object;
+
+        Pending(Serializable object) {
+            this.object = object;
+        }
+    }
 }
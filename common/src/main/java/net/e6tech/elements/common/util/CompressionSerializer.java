@@ -16,52 +16,320 @@
 
 package net.e6tech.elements.common.util;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import net.e6tech.elements.common.reflection.Reflection;
+
 import java.io.*;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Serializes an object graph and compresses the result.  Both steps are pluggable: a Serialization turns objects into
+ * bytes (Java serialization, Jackson, or Kryo from the network module) and a Codec compresses blocks (none, Deflate at
+ * any level, or LZCodec, an LZ77 codec that trades ratio for speed).
+ *
+ * Payloads start with a four byte header: a magic byte, the format version, the serialization id and the codec id, so
+ * that fromBytes can read any registered combination.  Payloads written before the header was introduced are GZIP
+ * streams of Java serialization; they are recognized by the GZIP magic number and remain readable.
+ *
+ * The default and level constructors still write that legacy format, since nodes running an older version can only
+ * read GZIP; during a rolling upgrade mixed nodes keep exchanging payloads.  The header format is opt-in through the
+ * constructor taking a Serialization and a Codec, once every reader understands it.
+ */
 public class CompressionSerializer {
+    public static final int MAGIC = 0xE6;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4;
+    private static final Serialization[] serializations = new Serialization[256];
+    private static final Codec[] codecs = new Codec[256];
+
+    static {
+        register(new JavaSerialization());
+        register(new JacksonSerialization());
+        register(new NoCodec());
+        register(new DeflateCodec());
+        register(new LZCodec());
+    }
 
     int compressionLevel = Deflater.BEST_SPEED;
+    private Serialization serialization;
+    private Codec codec;
 
     public CompressionSerializer() {
+        this(Deflater.BEST_SPEED);
     }
 
+    /**
+     * Writes Java serialization in a GZIP stream at the given level, without the header.
+     */
     public CompressionSerializer(int level) {
         this.compressionLevel = level;
+        this.serialization = serializations[JavaSerialization.ID];
+    }
+
+    public CompressionSerializer(Serialization serialization, Codec codec) {
+        this.serialization = serialization;
+        this.codec = codec;
+    }
+
+    /**
+     * Makes a serialization available to fromBytes.  Ids 1 to 15 are reserved for serializations shipped with elements.
+     */
+    public static synchronized void register(Serialization serialization) {
+        serializations[serialization.id() & 0xff] = serialization;
+    }
+
+    public static synchronized void register(Codec codec) {
+        codecs[codec.id() & 0xff] = codec;
+    }
+
+    public static Serialization getSerialization(int id) {
+        return serializations[id & 0xff];
+    }
+
+    public static Codec getCodec(int id) {
+        return codecs[id & 0xff];
+    }
+
+    public Serialization getSerialization() {
+        return serialization;
+    }
+
+    /**
+     * @return the codec, or null if payloads are written in the legacy GZIP format.
+     */
+    public Codec getCodec() {
+        return codec;
     }
 
-    @SuppressWarnings({"squid:S1171", "squid:S3599"})
     public byte[] toBytes(Object obj) throws IOException {
-        if (obj != null) {
-            try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                  GZIPOutputStream zos = new GZIPOutputStream(bos) {
-                      { this.def.setLevel(compressionLevel); }
-                 };
-                 ObjectOutputStream oos = new ObjectOutputStream(zos)
-            ) {
-                oos.writeObject(obj);
-                oos.flush();
-                zos.finish();
-                return bos.toByteArray();
-            }
-        } else {
+        if (obj == null)
             return new byte[0];
-        }
+        if (codec == null)
+            return toLegacyBytes(obj);
+        Buffer serialized = new Buffer(1024);
+        serialization.write(obj, serialized);
+        Buffer out = new Buffer(HEADER_SIZE + serialized.size() / 2 + 16);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(serialization.id());
+        out.write(codec.id());
+        codec.encode(serialized.array(), 0, serialized.size(), out);
+        return out.toByteArray();
     }
 
     @SuppressWarnings("unchecked")
     public static <T> T fromBytes(byte[] obj) throws IOException, ClassNotFoundException {
-        if (obj != null && obj.length > 0) {
-            try (ObjectInputStream ois =
-                         new ObjectInputStream(
-                                 new GZIPInputStream(
-                                         new ByteArrayInputStream(obj)))) {
-                return (T) ois.readObject();
-            }
-        } else {
+        if (obj == null || obj.length == 0)
             return null;
+        if (obj.length > 1 && (obj[0] & 0xff) == 0x1f && (obj[1] & 0xff) == 0x8b)
+            return (T) fromLegacyBytes(obj);
+        if (obj.length < HEADER_SIZE || (obj[0] & 0xff) != MAGIC)
+            throw new IOException("Not a CompressionSerializer payload");
+        if (obj[1] != VERSION)
+            throw new IOException("Unsupported CompressionSerializer version " + obj[1]);
+        Serialization serialization = serializations[obj[2] & 0xff];
+        if (serialization == null)
+            throw new IOException("No serialization registered with id " + (obj[2] & 0xff));
+        Codec codec = codecs[obj[3] & 0xff];
+        if (codec == null)
+            throw new IOException("No codec registered with id " + (obj[3] & 0xff));
+        try (InputStream in = codec.decode(obj, HEADER_SIZE, obj.length - HEADER_SIZE)) {
+            return (T) serialization.read(in);
+        }
+    }
+
+    @SuppressWarnings({"squid:S1171", "squid:S3599"})
+    private byte[] toLegacyBytes(Object obj) throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+             GZIPOutputStream zos = new GZIPOutputStream(bos) {
+                 { this.def.setLevel(compressionLevel); }
+             };
+             ObjectOutputStream oos = new ObjectOutputStream(zos)
+        ) {
+            oos.writeObject(obj);
+            oos.flush();
+            zos.finish();
+            return bos.toByteArray();
+        }
+    }
+
+    private static Object fromLegacyBytes(byte[] obj) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois =
+                     new ObjectInputStream(
+                             new GZIPInputStream(
+                                     new ByteArrayInputStream(obj)))) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * Turns an object graph into bytes and back.
+     */
+    public interface Serialization {
+        int id();
+
+        void write(Object obj, OutputStream out) throws IOException;
+
+        Object read(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Compresses a block of bytes.  decode must be able to read what encode wrote with any settings.
+     */
+    public interface Codec {
+        int id();
+
+        void encode(byte[] src, int offset, int length, OutputStream out) throws IOException;
+
+        InputStream decode(byte[] src, int offset, int length) throws IOException;
+    }
+
+    public static class JavaSerialization implements Serialization {
+        public static final int ID = 1;
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public void write(Object obj, OutputStream out) throws IOException {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(obj);
+            oos.flush();
+        }
+
+        @Override
+        public Object read(InputStream in) throws IOException, ClassNotFoundException {
+            return new ObjectInputStream(in).readObject();
+        }
+    }
+
+    /**
+     * Writes the class name followed by the object as JSON.  Suited to bean graphs; objects nested under Object typed
+     * properties come back as maps and lists.
+     */
+    public static class JacksonSerialization implements Serialization {
+        public static final int ID = 2;
+        private final ObjectMapper mapper;
+
+        public JacksonSerialization() {
+            this(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+        }
+
+        public JacksonSerialization(ObjectMapper mapper) {
+            this.mapper = mapper.copy()
+                    .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+                    .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+        }
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public void write(Object obj, OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeUTF(obj.getClass().getName());
+            mapper.writeValue((OutputStream) data, obj);
+            data.flush();
+        }
+
+        @Override
+        public Object read(InputStream in) throws IOException, ClassNotFoundException {
+            DataInputStream data = new DataInputStream(in);
+            String className = data.readUTF();
+            Class<?> cls;
+            try {
+                cls = Reflection.loadClass(className, null);
+            } catch (SystemException ex) {
+                throw new ClassNotFoundException(className, ex.getCause());
+            }
+            return mapper.readValue((InputStream) data, cls);
+        }
+    }
+
+    public static class NoCodec implements Codec {
+        public static final int ID = 0;
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public void encode(byte[] src, int offset, int length, OutputStream out) throws IOException {
+            out.write(src, offset, length);
+        }
+
+        @Override
+        public InputStream decode(byte[] src, int offset, int length) {
+            return new ByteArrayInputStream(src, offset, length);
+        }
+    }
+
+    public static class DeflateCodec implements Codec {
+        public static final int ID = 1;
+        private final int level;
+
+        public DeflateCodec() {
+            this(Deflater.BEST_SPEED);
+        }
+
+        public DeflateCodec(int level) {
+            this.level = level;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public void encode(byte[] src, int offset, int length, OutputStream out) throws IOException {
+            Deflater deflater = new Deflater(level);
+            try {
+                DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, 8192);
+                dos.write(src, offset, length);
+                dos.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public InputStream decode(byte[] src, int offset, int length) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(new ByteArrayInputStream(src, offset, length), inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
         }
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * LZ77 block codec in the style of LZ4: a single pass with a hash table of 4 byte sequences, no entropy coding.
+ * Compresses several times faster than Deflate at a lower ratio.
+ *
+ * A block is the uncompressed length as a varint followed by sequences.  Each sequence is a token whose high nibble
+ * is the literal length and low nibble the match length minus 4, extra length bytes when a nibble is 15, the
+ * literals, and a 2 byte little endian match offset.  The last sequence has literals only.
+ */
+public class LZCodec implements CompressionSerializer.Codec {
+    public static final int ID = 2;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+    private static final ThreadLocal<int[]> hashTables = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public void encode(byte[] src, int offset, int length, OutputStream out) throws IOException {
+        writeVarInt(out, length);
+        int end = offset + length;
+        int anchor = offset;
+        if (length > MATCH_LIMIT) {
+            int[] table = hashTables.get();
+            Arrays.fill(table, -1);
+            int limit = end - MATCH_LIMIT;
+            int matchEnd = end - LAST_LITERALS;
+            int ip = offset;
+            while (ip < limit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash];
+                table[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    // skip faster through data that does not compress.
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchEnd && src[ip + matchLength] == src[ref + matchLength])
+                    matchLength++;
+                writeSequence(out, src, anchor, ip - anchor, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        writeSequence(out, src, anchor, end - anchor, 0, 0);
+    }
+
+    @SuppressWarnings("squid:S135")
+    @Override
+    public InputStream decode(byte[] src, int offset, int length) throws IOException {
+        int[] position = { offset };
+        int end = offset + length;
+        int size = readVarInt(src, position, end);
+        // a byte of input expands to at most 255 bytes, so a larger length is corrupt; checked before allocating.
+        if (size < 0 || size > 255L * (end - position[0]))
+            throw new IOException("Corrupt LZ block");
+        byte[] dst = new byte[size];
+        int ip = position[0];
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (op >= size)
+                    break;
+
+                int matchOffset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+                ip += 2;
+                int matchLength = token & 0x0f;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - matchOffset;
+                if (matchOffset == 0 || ref < 0 || op + matchLength > size)
+                    throw new IOException("Corrupt LZ block");
+                if (matchOffset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                } else {
+                    // overlapping match repeats the last matchOffset bytes.
+                    for (int i = 0; i < matchLength; i++)
+                        dst[op + i] = dst[ref + i];
+                }
+                op += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Corrupt LZ block", ex);
+        }
+        if (ip > end)
+            throw new IOException("Corrupt LZ block");
+        return new ByteArrayInputStream(dst);
+    }
+
+    private static void writeSequence(OutputStream out, byte[] src, int literalStart, int literals, int matchOffset, int matchLength) throws IOException {
+        int extraMatch = matchLength - MIN_MATCH;
+        int token = (Math.min(literals, 15) << 4) | (matchLength == 0 ? 0 : Math.min(extraMatch, 15));
+        out.write(token);
+        if (literals >= 15)
+            writeLength(out, literals - 15);
+        out.write(src, literalStart, literals);
+        if (matchLength == 0)
+            return;
+        out.write(matchOffset & 0xff);
+        out.write((matchOffset >>> 8) & 0xff);
+        if (extraMatch >= 15)
+            writeLength(out, extraMatch - 15);
+    }
+
+    private static void writeLength(OutputStream out, int length) throws IOException {
+        int remaining = length;
+        while (remaining >= 255) {
+            out.write(255);
+            remaining -= 255;
+        }
+        out.write(remaining);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarInt(byte[] src, int[] position, int end) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int ip = position[0];
+        while (ip < end && shift < 35) {
+            int b = src[ip++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                position[0] = ip;
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("Corrupt LZ block");
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xff) | ((src[i + 1] & 0xff) << 8) | ((src[i + 2] & 0xff) << 16) | ((src[i + 3] & 0xff) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
@@ -25,7 +25,9 @@ import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Locale.ENGLISH;
 
@@ -55,21 +57,32 @@ import static java.util.Locale.ENGLISH;
  *     example: "${key := A ?B:C}";  the spaces after the '?' are important.
  *  ${var:^script} executes the script with value of var and returns a string from the execution.
  *  </pre>
+ *
+ * The template is compiled once, when the TextSubstitution is created, into literal and expression segments, and
+ * property getters are looked up once per class.  A TextSubstitution can be shared among threads; build(binding,
+ * auxillary, appendable) renders into a caller supplied buffer.
  */
 @SuppressWarnings("unchecked")
 public class TextSubstitution {
 
     private static DefaultScriptable defaultScriptable = new DefaultScriptable();
+    private static final Optional<Method> NO_GETTER = Optional.empty();
+    private static final ClassValue<Map<String, Optional<Method>>> getters = new ClassValue<Map<String, Optional<Method>>>() {
+        @Override
+        protected Map<String, Optional<Method>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
 
-    private Map<String, Var> variables;
+    private Segment[] segments;
     private String template;
     private Scriptable script = defaultScriptable;
 
-    // NOTE.  If template ever gets modified, parseVariableNames needs to be called.
+    // NOTE.  If template ever gets modified, compile needs to be called.
 
     public TextSubstitution(String template) {
         this.template = template;
-        variables = parseVariableNames(template);
+        segments = compile(template);
     }
 
     public TextSubstitution(Reader reader) throws IOException {
@@ -80,7 +93,7 @@ public class TextSubstitution {
             builder.append(buffer, 0, len);
         }
         this.template = builder.toString();
-        variables = parseVariableNames(template);
+        segments = compile(template);
         reader.close();
     }
 
@@ -104,23 +117,36 @@ public class TextSubstitution {
     public String build(Object binding, Map<String, Object> auxillary) {
         if (template == null)
             return "";
-        String text = template;
-        for (Map.Entry<String, Var> entry : variables.entrySet()) {
-            Var var = entry.getValue();
-            text = replaceVariable(entry.getKey(), var.build(binding, auxillary), text);
-        }
+        return build(binding, auxillary, new StringBuilder(template.length() + 64)).toString();
+    }
 
-        text = text.replace("\\$", "$");
-        return text;
+    /**
+     * Renders into builder, which may be reused across calls.
+     */
+    public StringBuilder build(Object binding, Map<String, Object> auxillary, StringBuilder builder) {
+        try {
+            write(binding, auxillary, builder);
+        } catch (IOException e) {
+            // StringBuilder does not throw IOException
+            throw new SystemException(e);
+        }
+        return builder;
     }
 
-    private String replaceVariable(String key, String value, String text) {
-        return text.replace("${" + key + "}", value);
+    public void write(Object binding, Map<String, Object> auxillary, Appendable out) throws IOException {
+        if (template == null)
+            return;
+        for (Segment segment : segments)
+            segment.render(binding, auxillary, out);
     }
 
-    private void parse(String text, List<Var> varList) {
+    private Segment[] compile(String text) {
+        if (text == null)
+            return new Segment[0];
+        List<Segment> list = new ArrayList<>();
         int max = text.length();
         int pos = 0;
+        int literalStart = 0;
         int prev = -1;
         while (pos < max - 1) {
             if (pos > 0)
@@ -128,12 +154,24 @@ public class TextSubstitution {
             if (prev != '\\' && text.codePointAt(pos) == '$' && text.codePointAt(pos + 1) == '{') {
                 int start = pos + 2;
                 Var var = parseVar(text, start);
-                varList.add(var);
-                pos = start + var.text.length() + 1; // +1 for '}'
+                int end = start + var.text.length();
+                if (end >= max) // no closing '}', leave it as text.
+                    break;
+                addLiteral(list, text.substring(literalStart, pos));
+                list.add(var);
+                pos = end + 1; // +1 for '}'
+                literalStart = pos;
             } else {
                 pos ++;
             }
         }
+        addLiteral(list, text.substring(literalStart));
+        return list.toArray(new Segment[0]);
+    }
+
+    private static void addLiteral(List<Segment> list, String text) {
+        if (!text.isEmpty())
+            list.add(new Literal(text.replace("\\$", "$")));
     }
 
     @SuppressWarnings("squid:S3776")
@@ -199,6 +237,8 @@ public class TextSubstitution {
         Var variable = new Var(text, key == null ? text : key);
         variable.strategy = strategy;
         variable.defaultValue = defaultValue;
+        if (defaultValue.contains("${"))
+            variable.nestedDefault = new TextSubstitution(defaultValue);
         return variable;
     }
 
@@ -217,17 +257,6 @@ public class TextSubstitution {
         return max;
     }
 
-    private Map<String, Var> parseVariableNames(String text) {
-        Map<String, Var> vars = new LinkedHashMap<>();
-        List<Var> varList = new LinkedList<>();
-        parse(text, varList);
-
-        for (Var v : varList) {
-            vars.put(v.text, v);
-        }
-        return vars;
-    }
-
     public static String capitalize(String name) {
         if (name == null || name.length() == 0) {
             return name;
@@ -235,7 +264,40 @@ public class TextSubstitution {
         return name.substring(0, 1).toUpperCase(ENGLISH) + name.substring(1);
     }
 
-    private class Var {
+    private static Method getter(Class cls, String property) {
+        Map<String, Optional<Method>> methods = getters.get(cls);
+        Optional<Method> method = methods.get(property);
+        if (method == null) {
+            try {
+                method = Optional.ofNullable(new PropertyDescriptor(property, cls, "is" + capitalize(property), null).getReadMethod());
+            } catch (IntrospectionException ex) {
+                Logger.suppress(ex);
+                method = NO_GETTER;
+            }
+            methods.put(property, method);
+        }
+        return method.orElse(null);
+    }
+
+    @FunctionalInterface
+    private interface Segment {
+        void render(Object binding, Map<String, Object> auxillary, Appendable out) throws IOException;
+    }
+
+    private static class Literal implements Segment {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(Object binding, Map<String, Object> auxillary, Appendable out) throws IOException {
+            out.append(text);
+        }
+    }
+
+    private class Var implements Segment {
         String text;
         String key;
         String strategy;
@@ -244,6 +306,8 @@ public class TextSubstitution {
         private String leading;
         private String trailing;
         private String[] path;
+        private TextSubstitution nestedKey;
+        private TextSubstitution nestedDefault;
 
         Var(String text, String key) {
             this.text = text;
@@ -272,53 +336,65 @@ public class TextSubstitution {
             if (index < key.length())
                 trailing = key.substring(index);
             path = key.split("\\.");
+            for (int i = 0; i < path.length; i++)
+                path[i] = path[i].trim();
+            if (key.contains("${"))
+                nestedKey = new TextSubstitution(key);
         }
 
-        @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S135", "squid:S1141", "squid:S134", "squid:S3776"})
-        String build(Object object, Map<String, Object> auxillary) {
-            String[] components = path;
-            if (key.contains("${")) {
-                components = new TextSubstitution(key).build(object, auxillary).split("\\.");
+        @Override
+        public void render(Object binding, Map<String, Object> auxillary, Appendable out) throws IOException {
+            if (strategy == null && nestedKey == null) {
+                Object result = resolve(binding, auxillary, path);
+                if (result != null)
+                    out.append(leading).append(result.toString()).append(trailing);
+            } else {
+                out.append(build(binding, auxillary));
             }
+        }
 
+        @SuppressWarnings({"squid:S135", "squid:S1141"})
+        private Object resolve(Object object, Map<String, Object> auxillary, String[] components) {
             Object result = object;
-            PropertyDescriptor desc;
             for (String comp : components) {
-                comp = comp.trim();
                 if (comp.isEmpty()) { // skip empty path component
                     result = null;
                     continue;
                 }
+                if (result == null)
+                    break;
                 try {
-                    if (result == null)
-                        break;
-
                     if (result instanceof Map) {
                         result = ((Map) result).get(comp);
-                        if (result == null)
-                            result = auxillary.get(comp);
                     } else {
-                        try {
-                            desc = new PropertyDescriptor(comp, result.getClass(), "is" + capitalize(comp), null);
-                            result = desc.getReadMethod().invoke(result);
-                        } catch (IntrospectionException ex) {
-                            Logger.suppress(ex);
-                            result = null;
-                        }
-                        if (result == null)
-                            result = auxillary.get(comp);
+                        Method getter = getter(result.getClass(), comp);
+                        result = getter == null ? null : getter.invoke(result);
                     }
+                    if (result == null)
+                        result = auxillary.get(comp);
                 } catch (Exception e) {
                     Logger.suppress(e);
                     throw new SystemException(e);
                 }
             }
+            return result;
+        }
 
-            String value = defaultValue;
-            if (value.contains("${")) {
-                value = new TextSubstitution(defaultValue).build(object, auxillary);
+        @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S134", "squid:S3776"})
+        String build(Object object, Map<String, Object> auxillary) {
+            String[] components = path;
+            if (nestedKey != null) {
+                components = nestedKey.build(object, auxillary).split("\\.");
+                for (int i = 0; i < components.length; i++)
+                    components[i] = components[i].trim();
             }
 
+            Object result = resolve(object, auxillary, components);
+
+            String value = defaultValue;
+            if (nestedDefault != null)
+                value = nestedDefault.build(object, auxillary);
+
             if (result == null) {
                 // variable not defined
                 if (":+".equals(strategy)) {
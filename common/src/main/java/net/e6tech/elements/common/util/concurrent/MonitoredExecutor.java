@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ThreadPoolExecutor that records how long tasks wait in the queue, how long they run
+ * and how many are rejected.  If a TokenBucket is set, a worker acquires a permit before running
+ * each task so that the executor as a whole does not exceed the bucket's rate.
+ *
+ * Tasks are queued wrapped with their enqueue time; remove, purge and shutdownNow see through the wrapper, the queue
+ * returned by getQueue does not.
+ */
+public class MonitoredExecutor extends ThreadPoolExecutor {
+    private final Histogram waitTime = new Histogram();
+    private final Histogram executionTime = new Histogram();
+    private final LongAdder rejected = new LongAdder();
+    private volatile TokenBucket rateLimiter;
+
+    public MonitoredExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                             BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        setRejectedExecutionHandler(getRejectedExecutionHandler());
+    }
+
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    public Histogram getExecutionTime() {
+        return executionTime;
+    }
+
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(TokenBucket rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public void resetStatistics() {
+        waitTime.reset();
+        executionTime.reset();
+        rejected.reset();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        // DiscardOldestPolicy resubmits an already wrapped task.
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null)
+            throw new NullPointerException();
+        if (handler instanceof CountingHandler)
+            super.setRejectedExecutionHandler(handler);
+        else
+            super.setRejectedExecutionHandler(new CountingHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        RejectedExecutionHandler handler = super.getRejectedExecutionHandler();
+        return (handler instanceof CountingHandler) ? ((CountingHandler) handler).handler : handler;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable r : getQueue()) {
+            if (r instanceof TimedTask && ((TimedTask) r).task.equals(task))
+                return super.remove(r);
+        }
+        return super.remove(task);
+    }
+
+    @Override
+    public void purge() {
+        // the queue's iterator is weakly consistent, so removing while iterating is safe.
+        for (Runnable r : getQueue()) {
+            Runnable task = r instanceof TimedTask ? ((TimedTask) r).task : r;
+            if (task instanceof Future && ((Future<?>) task).isCancelled())
+                super.remove(r);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> list = super.shutdownNow();
+        List<Runnable> unwrapped = new ArrayList<>(list.size());
+        for (Runnable r : list)
+            unwrapped.add(r instanceof TimedTask ? ((TimedTask) r).task : r);
+        return unwrapped;
+    }
+
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long queued = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            TokenBucket limiter = rateLimiter;
+            if (limiter != null) {
+                try {
+                    limiter.acquire();
+                } catch (InterruptedException e) {
+                    // the task still runs so that its Future completes; it sees the interrupt.
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long start = System.nanoTime();
+            waitTime.record(start - queued);
+            try {
+                task.run();
+            } finally {
+                executionTime.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private class CountingHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler handler;
+
+        CountingHandler(RejectedExecutionHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            handler.rejectedExecution(r, executor);
+        }
+    }
+}
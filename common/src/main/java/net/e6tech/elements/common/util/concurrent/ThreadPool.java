@@ -16,10 +16,15 @@
 
 package net.e6tech.elements.common.util.concurrent;
 
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.logging.Span;
 import net.e6tech.elements.common.resources.BindClass;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -29,15 +34,21 @@ import java.util.function.Function;
  * Created by futeh.
  */
 @BindClass(ExecutorService.class)
-public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorService  {
+public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorService, ThreadPoolMXBean  {
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
 
-    private static Map<String, ThreadPool> cachedThreadPools = new HashMap<>();
-    private static Map<String, ThreadPool> rateLimitedThreadPools = new HashMap<>();
-    private static Map<String, ThreadPool> fixedThreadPools = new HashMap<>();
+    private static Map<String, ThreadPool> cachedThreadPools = new ConcurrentHashMap<>();
+    private static Map<String, ThreadPool> rateLimitedThreadPools = new ConcurrentHashMap<>();
+    private static Map<String, ThreadPool> fixedThreadPools = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService sizer;
 
     private String name;
     private boolean daemon = true;
     private ExecutorService executorService;
+    private volatile Adaptive adaptive;
+    private String kind;
+    private ObjectName objectName;
 
     protected ThreadPool(String name, Function<ThreadFactory, ExecutorService> newPool) {
         this.name = name;
@@ -50,9 +61,10 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
      * @param name name of the pool
      * @return ThreadPool
      */
-    public static synchronized ThreadPool cachedThreadPool(String name) {
+    public static ThreadPool cachedThreadPool(String name) {
         return cachedThreadPools.computeIfAbsent(name, poolName ->
-                new ThreadPool(name, Executors::newCachedThreadPool));
+                new ThreadPool(name, p -> new MonitoredExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), p)).register("cached"));
     }
 
     /*
@@ -60,13 +72,24 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
      * Using this type of threadPool may result in RejectedExecutionException when submitting a task.
      */
     @SuppressWarnings("squid:S1602")
-    public static synchronized ThreadPool rateLimitedThreadPool(String name, int threadCoreSize, int threadMaxSize, long threadKeepAliveSec, int threadQueueSize) {
+    public static ThreadPool rateLimitedThreadPool(String name, int threadCoreSize, int threadMaxSize, long threadKeepAliveSec, int threadQueueSize) {
         return rateLimitedThreadPools.computeIfAbsent(name, poolName -> {
             return new ThreadPool(name, p ->
-                new ThreadPoolExecutor(threadCoreSize, threadMaxSize, threadKeepAliveSec, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threadQueueSize), p));
+                new MonitoredExecutor(threadCoreSize, threadMaxSize, threadKeepAliveSec, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threadQueueSize), p))
+                    .register("rateLimited");
         });
     }
 
+    /**
+     * Same as rateLimitedThreadPool but tasks are also throttled by the given TokenBucket, which may be shared
+     * with other pools.
+     */
+    public static ThreadPool rateLimitedThreadPool(String name, int threadCoreSize, int threadMaxSize, long threadKeepAliveSec, int threadQueueSize,
+                                                   TokenBucket rateLimiter) {
+        return rateLimitedThreadPool(name, threadCoreSize, threadMaxSize, threadKeepAliveSec, threadQueueSize)
+                .rateLimiter(rateLimiter);
+    }
+
     /**
      * Returns a fixed size pool.  If there are more requests than the number of threads, they are put into a queue to be processed when
      * a thread becomes available.
@@ -74,9 +97,118 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
      * @param nThreads number of threads
      * @return ThreadPool
      */
-    public static synchronized ThreadPool fixedThreadPool(String name, int nThreads) {
+    public static ThreadPool fixedThreadPool(String name, int nThreads) {
         return fixedThreadPools.computeIfAbsent(name, poolName ->
-                new ThreadPool(name, p -> Executors.newFixedThreadPool(nThreads, p)));
+                new ThreadPool(name, p -> new MonitoredExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), p)).register("fixed"));
+    }
+
+    /**
+     * @param kind cached, rateLimited or fixed, as in the kind key of the MBean name.
+     * @param name name of the pool
+     * @return the pool or null if no pool of that kind and name has been created.
+     */
+    public static ThreadPool find(String kind, String name) {
+        Map<String, ThreadPool> pools = pools(kind);
+        return pools == null ? null : pools.get(name);
+    }
+
+    private static Map<String, ThreadPool> pools(String kind) {
+        if (kind == null)
+            return null;
+        switch (kind) {
+            case "cached":
+                return cachedThreadPools;
+            case "rateLimited":
+                return rateLimitedThreadPools;
+            case "fixed":
+                return fixedThreadPools;
+            default:
+                return null;
+        }
+    }
+
+    protected ThreadPool register(String kind) {
+        this.kind = kind;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("net.e6tech.elements:type=ThreadPool,kind=" + kind + ",name=" + ObjectName.quote(name));
+            // a registration left over by a pool of the same name, e.g. from another class loader, is replaced.
+            if (server.isRegistered(on))
+                server.unregisterMBean(on);
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (Exception ex) {
+            logger.warn("Cannot register thread pool {} as MBean", name, ex);
+        }
+        return this;
+    }
+
+    /*
+     * Called on shutdown so that a pool created later under the same name starts afresh.
+     */
+    private synchronized void unregister() {
+        Map<String, ThreadPool> pools = pools(kind);
+        if (pools != null)
+            pools.remove(name, this);
+        if (objectName != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(objectName))
+                    server.unregisterMBean(objectName);
+            } catch (Exception ex) {
+                logger.warn("Cannot unregister thread pool {} MBean", name, ex);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Turns on adaptive sizing.  Every interval, the average time tasks spent waiting in the queue is
+     * compared against targetWaitMillis.  Core threads are added when tasks wait longer than the target and
+     * removed, one at a time, when the queueing delay falls well below it and threads are idle.
+     * Only pools backed by a ThreadPoolExecutor with a queue, i.e. fixed or rate limited pools, benefit from it.
+     * @param targetWaitMillis acceptable average queueing delay
+     * @param minCoreSize lower bound of core threads
+     * @param maxCoreSize upper bound of core threads
+     * @return this
+     */
+    public ThreadPool adaptive(long targetWaitMillis, int minCoreSize, int maxCoreSize) {
+        return adaptive(targetWaitMillis, minCoreSize, maxCoreSize, 1000L);
+    }
+
+    public synchronized ThreadPool adaptive(long targetWaitMillis, int minCoreSize, int maxCoreSize, long intervalMillis) {
+        if (!(executorService instanceof MonitoredExecutor))
+            throw new IllegalStateException("Thread pool " + name + " does not support adaptive sizing");
+        if (minCoreSize < 1 || maxCoreSize < minCoreSize || targetWaitMillis <= 0 || intervalMillis <= 0)
+            throw new IllegalArgumentException();
+        stopAdaptive();
+        adaptive = new Adaptive((MonitoredExecutor) executorService, targetWaitMillis, minCoreSize, maxCoreSize);
+        adaptive.future = sizer().scheduleWithFixedDelay(adaptive::resize, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public synchronized ThreadPool fixed() {
+        stopAdaptive();
+        return this;
+    }
+
+    private void stopAdaptive() {
+        if (adaptive != null) {
+            adaptive.future.cancel(false);
+            adaptive = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService sizer() {
+        if (sizer == null) {
+            sizer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ThreadPool-sizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sizer;
     }
 
     public ThreadPool daemon() {
@@ -88,6 +220,22 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
         return this;
     }
 
+    /**
+     * Limits the rate at which tasks are started.  Passing null removes the limit.
+     * @param rateLimiter token bucket, may be shared among pools
+     * @return this
+     */
+    public ThreadPool rateLimiter(TokenBucket rateLimiter) {
+        if (!(executorService instanceof MonitoredExecutor))
+            throw new IllegalStateException("Thread pool " + name + " does not support rate limiting");
+        ((MonitoredExecutor) executorService).setRateLimiter(rateLimiter);
+        return this;
+    }
+
+    public TokenBucket getRateLimiter() {
+        return (executorService instanceof MonitoredExecutor) ? ((MonitoredExecutor) executorService).getRateLimiter() : null;
+    }
+
     public ThreadPool rejectedExecutionHandler(RejectedExecutionHandler handler) {
         if (handler == null)
             throw new NullPointerException();
@@ -106,6 +254,118 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
         return (T) executorService;
     }
 
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getQueue().size() : 0;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getActiveCount() : 0;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getPoolSize() : 0;
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getCorePoolSize() : 0;
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getMaximumPoolSize() : 0;
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getCompletedTaskCount() : 0;
+    }
+
+    @Override
+    public long getTaskCount() {
+        return (executorService instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executorService).getTaskCount() : 0;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return (executorService instanceof MonitoredExecutor) ? ((MonitoredExecutor) executorService).getRejectedCount() : 0;
+    }
+
+    @Override
+    public double getAverageWaitTime() {
+        Histogram histogram = waitTime();
+        return histogram == null ? 0 : histogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getWaitTime50() {
+        return percentile(waitTime(), 50.0);
+    }
+
+    @Override
+    public double getWaitTime99() {
+        return percentile(waitTime(), 99.0);
+    }
+
+    @Override
+    public double getMaxWaitTime() {
+        Histogram histogram = waitTime();
+        return histogram == null ? 0 : histogram.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getAverageExecutionTime() {
+        Histogram histogram = executionTime();
+        return histogram == null ? 0 : histogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getExecutionTime50() {
+        return percentile(executionTime(), 50.0);
+    }
+
+    @Override
+    public double getExecutionTime99() {
+        return percentile(executionTime(), 99.0);
+    }
+
+    @Override
+    public double getMaxExecutionTime() {
+        Histogram histogram = executionTime();
+        return histogram == null ? 0 : histogram.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public boolean isAdaptive() {
+        return adaptive != null;
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (executorService instanceof MonitoredExecutor)
+            ((MonitoredExecutor) executorService).resetStatistics();
+    }
+
+    public Histogram waitTime() {
+        return (executorService instanceof MonitoredExecutor) ? ((MonitoredExecutor) executorService).getWaitTime() : null;
+    }
+
+    public Histogram executionTime() {
+        return (executorService instanceof MonitoredExecutor) ? ((MonitoredExecutor) executorService).getExecutionTime() : null;
+    }
+
+    private static double percentile(Histogram histogram, double percentile) {
+        return histogram == null ? 0 : histogram.getPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
     @Override
     public Thread newThread(Runnable runnable) {
         Thread thread = new Thread(runnable, "Broadcast");
@@ -116,11 +376,15 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
 
     @Override
     public void shutdown() {
+        fixed();
+        unregister();
         executorService.shutdown();
     }
 
     @Override
     public List<Runnable> shutdownNow() {
+        fixed();
+        unregister();
         return executorService.shutdownNow();
     }
 
@@ -141,41 +405,102 @@ public class ThreadPool implements java.util.concurrent.ThreadFactory, ExecutorS
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return executorService.submit(task);
+        return executorService.submit(Span.wrap(task));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return executorService.submit(task, result);
+        return executorService.submit(Span.wrap(task), result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return executorService.submit(task);
+        return executorService.submit(Span.wrap(task));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        return executorService.invokeAll(tasks);
+        return executorService.invokeAll(wrap(tasks));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-        return executorService.invokeAll(tasks, timeout, unit);
+        return executorService.invokeAll(wrap(tasks), timeout, unit);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        return executorService.invokeAny(tasks);
+        return executorService.invokeAny(wrap(tasks));
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        return executorService.invokeAny(tasks, timeout, unit);
+        return executorService.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    private static <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+        List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks)
+            wrapped.add(Span.wrap(task));
+        return wrapped;
     }
 
     @Override
     public void execute(Runnable command) {
-        executorService.execute(command);
+        executorService.execute(Span.wrap(command));
+    }
+
+    private static class Adaptive {
+        private final MonitoredExecutor executor;
+        private final long targetWaitNanos;
+        private final int minCoreSize;
+        private final int maxCoreSize;
+        private long lastCount;
+        private long lastSum;
+        private ScheduledFuture<?> future;
+
+        Adaptive(MonitoredExecutor executor, long targetWaitMillis, int minCoreSize, int maxCoreSize) {
+            this.executor = executor;
+            this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+            this.minCoreSize = minCoreSize;
+            this.maxCoreSize = maxCoreSize;
+            this.lastCount = executor.getWaitTime().getCount();
+            this.lastSum = executor.getWaitTime().getSum();
+        }
+
+        @SuppressWarnings("squid:S1181")
+        void resize() {
+            try {
+                long count = executor.getWaitTime().getCount();
+                long sum = executor.getWaitTime().getSum();
+                if (count < lastCount || sum < lastSum) {
+                    // statistics were reset, everything recorded since belongs to this interval.
+                    lastCount = 0;
+                    lastSum = 0;
+                }
+                long tasks = count - lastCount;
+                long averageWait = tasks > 0 ? (sum - lastSum) / tasks : 0;
+                lastCount = count;
+                lastSum = sum;
+
+                int core = executor.getCorePoolSize();
+                int size = core;
+                if (averageWait > targetWaitNanos || (tasks == 0 && !executor.getQueue().isEmpty())) {
+                    size = Math.min(maxCoreSize, core + Math.max(1, core / 4));
+                } else if (averageWait < targetWaitNanos / 4 && executor.getActiveCount() < core) {
+                    size = core - 1;
+                }
+                size = Math.max(minCoreSize, Math.min(maxCoreSize, size));
+                if (size > core) {
+                    if (executor.getMaximumPoolSize() < size)
+                        executor.setMaximumPoolSize(size);
+                    executor.setCorePoolSize(size);
+                } else if (size < core) {
+                    executor.setCorePoolSize(size);
+                }
+            } catch (Throwable th) {
+                logger.warn("Unable to resize thread pool", th);
+            }
+        }
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+/**
+ * Runtime view of a ThreadPool.  Times are reported in milliseconds.
+ */
+public interface ThreadPoolMXBean {
+
+    String getName();
+
+    int getQueueDepth();
+
+    int getActiveCount();
+
+    int getPoolSize();
+
+    int getCorePoolSize();
+
+    int getMaximumPoolSize();
+
+    long getCompletedTaskCount();
+
+    long getRejectedCount();
+
+    long getTaskCount();
+
+    double getAverageWaitTime();
+
+    double getWaitTime50();
+
+    double getWaitTime99();
+
+    double getMaxWaitTime();
+
+    double getAverageExecutionTime();
+
+    double getExecutionTime50();
+
+    double getExecutionTime99();
+
+    double getMaxExecutionTime();
+
+    boolean isAdaptive();
+
+    void resetStatistics();
+}
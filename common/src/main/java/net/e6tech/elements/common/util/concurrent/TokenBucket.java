@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free token bucket.  Tokens refill continuously at permitsPerSecond, fractions included, and
+ * up to burst tokens can accumulate while the bucket is idle.
+ *
+ * The bucket is kept as a single theoretical arrival time (the instant at which the bucket would be full
+ * again) in an AtomicLong, so acquiring a permit is one compare-and-set.  Time is kept in 1/16 of a
+ * nanosecond relative to the creation of the bucket in order to support fractional refill at high rates.
+ *
+ * A TokenBucket may be shared among several ThreadPools, see {@link ThreadPool#rateLimiter(TokenBucket)}.
+ */
+public class TokenBucket {
+    private static final int TICKS_PER_NANO = 16;
+    private static final long TICKS_PER_SECOND = TimeUnit.SECONDS.toNanos(1) * TICKS_PER_NANO;
+
+    private final long origin = System.nanoTime();
+    private final AtomicLong arrival = new AtomicLong(); // in ticks
+    private volatile long interval;                     // ticks per permit
+    private volatile long tolerance;                    // ticks worth of burst
+    private volatile double permitsPerSecond;
+    private volatile long burst;
+
+    public TokenBucket(double permitsPerSecond) {
+        this(permitsPerSecond, Math.max(1L, (long) permitsPerSecond));
+    }
+
+    public TokenBucket(double permitsPerSecond, long burst) {
+        configure(permitsPerSecond, burst);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public void setPermitsPerSecond(double permitsPerSecond) {
+        configure(permitsPerSecond, burst);
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    public void setBurst(long burst) {
+        configure(permitsPerSecond, burst);
+    }
+
+    private synchronized void configure(double permitsPerSecond, long burst) {
+        if (permitsPerSecond <= 0 || Double.isNaN(permitsPerSecond) || burst < 1)
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        long ticks = (long) (TICKS_PER_SECOND / permitsPerSecond);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.interval = Math.max(1L, ticks);
+        this.tolerance = interval * burst;
+    }
+
+    /**
+     * Number of tokens currently available, rounded down.
+     * @return available tokens
+     */
+    public long available() {
+        long now = now();
+        long free = now + tolerance - Math.max(arrival.get(), now);
+        return Math.max(0L, free / interval);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquires permits if they are available right now.  Never blocks.
+     * @param permits number of permits
+     * @return true if acquired
+     */
+    public boolean tryAcquire(int permits) {
+        return reserve(permits, 0L) >= 0;
+    }
+
+    /**
+     * Acquires permits if they become available within timeout.
+     * @param permits number of permits
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return true if acquired
+     * @throws InterruptedException if interrupted while waiting.  The permits are consumed nonetheless.
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        // toNanos saturates at Long.MAX_VALUE, so must the conversion to ticks.
+        long wait = reserve(permits, nanos > Long.MAX_VALUE / TICKS_PER_NANO ? Long.MAX_VALUE : nanos * TICKS_PER_NANO);
+        if (wait < 0)
+            return false;
+        park(wait);
+        return true;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * Acquires permits, waiting as long as necessary.
+     * @param permits number of permits
+     * @throws InterruptedException if interrupted while waiting.  The permits are consumed nonetheless.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        park(reserve(permits, Long.MAX_VALUE));
+    }
+
+    /*
+     * Reserves permits and returns the number of ticks the caller has to wait before using them or -1 if
+     * the wait would exceed maxWait.
+     */
+    private long reserve(int permits, long maxWait) {
+        if (permits < 1)
+            throw new IllegalArgumentException("permits must be positive");
+        long cost = interval * permits;
+        long limit = tolerance;
+        while (true) {
+            long now = now();
+            long current = arrival.get();
+            long next = Math.max(current, now) + cost;
+            long wait = next - now - limit;
+            if (wait > maxWait)
+                return -1;
+            if (arrival.compareAndSet(current, next))
+                return Math.max(0L, wait);
+        }
+    }
+
+    private static void park(long ticks) throws InterruptedException {
+        long nanos = ticks / TICKS_PER_NANO;
+        if (nanos <= 0)
+            return;
+        long deadline = System.nanoTime() + nanos;
+        while (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            nanos = deadline - System.nanoTime();
+        }
+    }
+
+    private long now() {
+        return (System.nanoTime() - origin) * TICKS_PER_NANO;
+    }
+}
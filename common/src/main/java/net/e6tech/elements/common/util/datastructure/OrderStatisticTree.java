@@ -0,0 +1,309 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.common.util.datastructure;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted collection backed by an AVL tree in which every node knows the size of its subtree, so that add, remove,
+ * get(index) and rank are all O(log n).  Elements that compare equal are kept in insertion order.
+ */
+@SuppressWarnings({"unchecked", "squid:S3776"})
+public class OrderStatisticTree<T extends Comparable> implements Iterable<T> {
+
+    private Node<T> root;
+    private boolean removed;
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    public boolean add(T value) {
+        root = insert(root, value);
+        return true;
+    }
+
+    /**
+     * @return the element at the index-th position in sorted order.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        Node<T> node = root;
+        int i = index;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            } else if (i == leftSize) {
+                return node.value;
+            } else {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements less than value.
+     */
+    public int rank(T value) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (node.value.compareTo(value) < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    public boolean contains(T value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * @return the index of the first element that compares equal to value and is equal to it, or -1.
+     */
+    public int indexOf(T value) {
+        int index = rank(value);
+        int size = size();
+        for (int i = index; i < size; i++) {
+            T candidate = get(i);
+            if (candidate.compareTo(value) != 0)
+                break;
+            if (candidate.equals(value))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes one element that compares equal to, and is equal to, value.
+     */
+    public boolean removeFirst(T value) {
+        removed = false;
+        root = delete(root, value);
+        return removed;
+    }
+
+    /**
+     * Removes every element that compares equal to, and is equal to, value.
+     */
+    public boolean removeAll(T value) {
+        boolean found = false;
+        while (removeFirst(value))
+            found = true;
+        return found;
+    }
+
+    public T remove(int index) {
+        T value = get(index);
+        root = deleteAt(root, index);
+        return value;
+    }
+
+    /**
+     * Verifies ordering, subtree sizes and balance; throws IllegalStateException if the tree is inconsistent.
+     */
+    public void check() {
+        check(root);
+        T prev = null;
+        for (T value : this) {
+            if (prev != null && prev.compareTo(value) > 0)
+                throw new IllegalStateException();
+            prev = value;
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Deque<Node<T>> stack = new ArrayDeque<>();
+
+            {
+                push(root);
+            }
+
+            private void push(Node<T> node) {
+                Node<T> n = node;
+                while (n != null) {
+                    stack.push(n);
+                    n = n.left;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (stack.isEmpty())
+                    throw new NoSuchElementException();
+                Node<T> node = stack.pop();
+                push(node.right);
+                return node.value;
+            }
+        };
+    }
+
+    private Node<T> insert(Node<T> node, T value) {
+        if (node == null)
+            return new Node<>(value);
+        if (value.compareTo(node.value) < 0)
+            node.left = insert(node.left, value);
+        else
+            node.right = insert(node.right, value);
+        return balance(node);
+    }
+
+    private Node<T> delete(Node<T> node, T value) {
+        if (node == null)
+            return null;
+        int order = value.compareTo(node.value);
+        if (order < 0) {
+            node.left = delete(node.left, value);
+        } else if (order > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            // equal elements may sit on either side of node.
+            node.left = delete(node.left, value);
+            if (!removed && node.value.equals(value)) {
+                removed = true;
+                return unlink(node);
+            }
+            if (!removed)
+                node.right = delete(node.right, value);
+        }
+        return balance(node);
+    }
+
+    private Node<T> deleteAt(Node<T> node, int index) {
+        int leftSize = size(node.left);
+        if (index < leftSize)
+            node.left = deleteAt(node.left, index);
+        else if (index > leftSize)
+            node.right = deleteAt(node.right, index - leftSize - 1);
+        else
+            return unlink(node);
+        return balance(node);
+    }
+
+    private Node<T> unlink(Node<T> node) {
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+        Node<T> successor = node.right;
+        while (successor.left != null)
+            successor = successor.left;
+        successor.right = deleteMin(node.right);
+        successor.left = node.left;
+        return balance(successor);
+    }
+
+    private Node<T> deleteMin(Node<T> node) {
+        if (node.left == null)
+            return node.right;
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private Node<T> balance(Node<T> node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right))
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        } else if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left))
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private int check(Node<T> node) {
+        if (node == null)
+            return 0;
+        int leftHeight = check(node.left);
+        int rightHeight = check(node.right);
+        if (node.size != size(node.left) + size(node.right) + 1 || Math.abs(leftHeight - rightHeight) > 1
+                || node.height != Math.max(leftHeight, rightHeight) + 1)
+            throw new IllegalStateException();
+        return node.height;
+    }
+
+    private static void update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static class Node<T> {
+        T value;
+        Node<T> left;
+        Node<T> right;
+        int size = 1;
+        int height = 1;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.e6tech.elements.common.util.file;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.SystemException;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Index of the non-class resources visible to a class loader, built once per class loader and again when URLs are
+ * added to it or to one of its parents, as PluginManager does.
+ *
+ * Jar entries are read when the index is built and kept in a sorted array, so a listing is a binary search for the
+ * prefix.  A jar that contains META-INF/elements/resources.idx, written at build time by main or writeIndex, is read
+ * from that file instead of its entries.  Directories on the class path are listed on demand and each listed
+ * directory is cached until its modification time changes, so exploded class directories stay current during
+ * development.  Symbolic links to directories are followed, each real directory once per listing.
+ */
+@SuppressWarnings("squid:S134")
+public class ClassPathIndex {
+    public static final String INDEX_FILE = "META-INF/elements/resources.idx";
+    private static Logger logger = Logger.getLogger();
+
+    private static Cache<ClassLoader, ClassPathIndex> indexes = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private final int urlCount;
+    private final String[] jarResources;
+    private final List<Path> directories;
+    private final Map<Path, Listing> listings = new ConcurrentHashMap<>();
+
+    ClassPathIndex(Collection<File> entries, int urlCount) {
+        this.urlCount = urlCount;
+        SortedSet<String> resources = new TreeSet<>();
+        List<Path> dirs = new ArrayList<>();
+        for (File entry : entries) {
+            if (entry.isDirectory()) {
+                dirs.add(entry.toPath());
+            } else if (entry.isFile()) {
+                try {
+                    scanJar(entry, resources);
+                } catch (IOException ex) {
+                    logger.warn("Cannot read class path entry " + entry, ex);
+                }
+            }
+        }
+        jarResources = resources.toArray(new String[0]);
+        directories = Collections.unmodifiableList(dirs);
+    }
+
+    public static ClassPathIndex of(ClassLoader classLoader) {
+        // URLClassLoader only ever adds URLs, so a different count means the index misses some.
+        int urls = urlCount(classLoader);
+        try {
+            ClassPathIndex index = indexes.get(classLoader, () -> new ClassPathIndex(classPathEntries(classLoader), urls));
+            if (index.urlCount != urls) {
+                indexes.invalidate(classLoader);
+                index = indexes.get(classLoader, () -> new ClassPathIndex(classPathEntries(classLoader), urls));
+            }
+            return index;
+        } catch (ExecutionException e) {
+            throw new SystemException(e.getCause());
+        }
+    }
+
+    private static int urlCount(ClassLoader classLoader) {
+        int count = 0;
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent())
+            if (loader instanceof URLClassLoader)
+                count += ((URLClassLoader) loader).getURLs().length;
+        return count;
+    }
+
+    /**
+     * Drops the index of a class loader, e.g. after jars have been added to it.
+     */
+    public static void invalidate(ClassLoader classLoader) {
+        indexes.invalidate(classLoader);
+    }
+
+    /**
+     * Lists resource names that start with prefix.  Unless recursive, resources below the next '/' after prefix are
+     * left out.
+     * @param extension null for any extension
+     */
+    public List<String> list(String prefix, String extension, boolean recursive) {
+        Set<String> found = new TreeSet<>();
+        int from = lowerBound(prefix);
+        for (int i = from; i < jarResources.length && jarResources[i].startsWith(prefix); i++)
+            accept(found, jarResources[i], prefix, extension, recursive);
+
+        int slash = prefix.lastIndexOf('/');
+        String parent = prefix.substring(0, slash + 1);
+        String segment = prefix.substring(slash + 1);
+        for (Path root : directories) {
+            Set<Path> visited = new HashSet<>();
+            Path dir = parent.isEmpty() ? root : root.resolve(parent);
+            Listing listing = listing(dir);
+            if (recursive)
+                visit(visited, dir);
+            for (String name : listing.files)
+                if (name.startsWith(segment))
+                    accept(found, parent + name, prefix, extension, recursive);
+            for (String name : listing.directories) {
+                if (!name.startsWith(segment))
+                    continue;
+                if (recursive)
+                    walk(dir.resolve(name), parent + name + "/", found, prefix, extension, visited);
+                else if (name.equals(segment))
+                    for (String file : listing(dir.resolve(name)).files)
+                        accept(found, parent + name + "/" + file, prefix, extension, false);
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * @return every resource ending with extension.
+     */
+    public List<String> listByExtension(String extension) {
+        return list("", extension, true);
+    }
+
+    private void walk(Path dir, String name, Set<String> found, String prefix, String extension, Set<Path> visited) {
+        if (!visit(visited, dir))
+            return;
+        Listing listing = listing(dir);
+        for (String file : listing.files)
+            accept(found, name + file, prefix, extension, true);
+        for (String sub : listing.directories)
+            walk(dir.resolve(sub), name + sub + "/", found, prefix, extension, visited);
+    }
+
+    // a symbolic link back to an enclosing directory would otherwise be walked forever.
+    private static boolean visit(Set<Path> visited, Path dir) {
+        try {
+            return visited.add(dir.toRealPath());
+        } catch (IOException e) {
+            Logger.suppress(e);
+            return false;
+        }
+    }
+
+    private static void accept(Set<String> found, String resource, String prefix, String extension, boolean recursive) {
+        if (!resource.startsWith(prefix))
+            return;
+        if ((recursive || resource.lastIndexOf('/') <= prefix.length())
+                && (extension == null || resource.endsWith(extension)))
+            found.add(resource);
+    }
+
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(jarResources, prefix);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    private Listing listing(Path dir) {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(dir);
+        } catch (IOException e) {
+            listings.remove(dir);
+            return Listing.EMPTY;
+        }
+        Listing listing = listings.get(dir);
+        if (listing == null || !listing.modified.equals(modified)) {
+            listing = new Listing(dir, modified);
+            listings.put(dir, listing);
+        }
+        return listing;
+    }
+
+    private static void scanJar(File file, Set<String> resources) throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            JarEntry index = jar.getJarEntry(INDEX_FILE);
+            if (index != null) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(index), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                        if (!line.isEmpty())
+                            resources.add(line);
+                }
+                return;
+            }
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && !entry.getName().endsWith(".class"))
+                    resources.add(entry.getName());
+            }
+        }
+    }
+
+    static Collection<File> classPathEntries(ClassLoader classLoader) {
+        Deque<ClassLoader> loaders = new ArrayDeque<>();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent())
+            loaders.push(loader);
+
+        Set<File> entries = new LinkedHashSet<>();
+        for (ClassLoader loader : loaders) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs())
+                    if ("file".equals(url.getProtocol()))
+                        addEntry(entries, toFile(url));
+            } else if (loader == ClassLoader.getSystemClassLoader()) {
+                for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator))
+                    if (!path.isEmpty())
+                        addEntry(entries, new File(path));
+            }
+        }
+        return entries;
+    }
+
+    private static void addEntry(Set<File> entries, File file) {
+        File entry = file.getAbsoluteFile();
+        if (!entries.add(entry) || !entry.isFile())
+            return;
+        // jars may add entries through the Class-Path attribute of their manifest.
+        try (JarFile jar = new JarFile(entry)) {
+            Manifest manifest = jar.getManifest();
+            String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath == null)
+                return;
+            for (String path : classPath.trim().split("\\s+")) {
+                if (path.isEmpty())
+                    continue;
+                try {
+                    URL url = new URL(entry.toURI().toURL(), path);
+                    if ("file".equals(url.getProtocol()))
+                        addEntry(entries, toFile(url));
+                } catch (IOException ex) {
+                    Logger.suppress(ex);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.suppress(ex);
+        }
+    }
+
+    private static File toFile(URL url) {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    /**
+     * Writes INDEX_FILE under root listing its resources, to be packaged with the jar.
+     */
+    public static void writeIndex(Path root) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.filter(Files::isRegularFile)
+                    .map(p -> root.relativize(p).toString().replace(File.separatorChar, '/'))
+                    .filter(name -> !name.endsWith(".class") && !name.equals(INDEX_FILE))
+                    .sorted()
+                    .forEach(names::add);
+        }
+        Path index = root.resolve(INDEX_FILE);
+        Files.createDirectories(index.getParent());
+        Files.write(index, names, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build step: java net.e6tech.elements.common.util.file.ClassPathIndex &lt;classes directory&gt;...
+     */
+    public static void main(String... args) throws IOException {
+        for (String arg : args)
+            writeIndex(Paths.get(arg));
+    }
+
+    private static class Listing {
+        static final Listing EMPTY = new Listing();
+        final FileTime modified;
+        final List<String> files = new ArrayList<>();
+        final List<String> directories = new ArrayList<>();
+
+        Listing() {
+            modified = FileTime.fromMillis(0);
+        }
+
+        Listing(Path dir, FileTime modified) {
+            this.modified = modified;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (Files.isDirectory(path))
+                        directories.add(name);
+                    else if (!name.endsWith(".class"))
+                        files.add(name);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                Logger.suppress(e);
+            }
+        }
+    }
+}
@@ -15,11 +15,6 @@
  */
 package net.e6tech.elements.common.util.file;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.reflect.ClassPath;
-import net.e6tech.elements.common.resources.Provision;
-
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -27,8 +22,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 /**
@@ -39,14 +32,6 @@ public class FileUtil {
 
     private static final String[] EMPTY_FILE_LIST = new String[0];
 
-    private static Cache<ClassLoader, List<String>> resourcesCache = CacheBuilder.newBuilder()
-            .initialCapacity(20)
-            .maximumSize(100)
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .concurrencyLevel(Provision.cacheBuilderConcurrencyLevel)
-            .build();
-
-
     private FileUtil() {
     }
 
@@ -92,38 +77,9 @@ public class FileUtil {
         while (fileName.endsWith("/"))
             fileName = fileName.substring(0, fileName.length() - 1);
 
-        List<String> resources = null;
-        try {
-            resources = resourcesCache.get(classLoader, () -> {
-                ClassPath classPath = ClassPath.from(classLoader);
-                List<String> found = new LinkedList<>();
-                for (ClassPath.ResourceInfo info : classPath.getResources()) {
-                    if (!(info instanceof ClassPath.ClassInfo)) {
-                        found.add(info.getResourceName());
-                    }
-                }
-                return found;
-            });
-        } catch (ExecutionException e) {
-            resources = new LinkedList<>();
-            ClassPath classPath = ClassPath.from(classLoader);
-            for (ClassPath.ResourceInfo info : classPath.getResources()) {
-                if (!(info instanceof ClassPath.ClassInfo)) {
-                    resources.add(info.getResourceName());
-                }
-            }
-            resourcesCache.put(classLoader, resources);
-        }
-
         List<String> list = new LinkedList<>();
-        for (String resourceName : resources) {
-            if (resourceName.startsWith(fileName)) {
-                if ((recursive || resourceName.lastIndexOf('/') <= fileName.length())
-                        && (extension == null || resourceName.endsWith(extension))) {
-                    list.add("classpath://" + resourceName);
-                }
-            }
-        }
+        for (String resourceName : ClassPathIndex.of(classLoader).list(fileName, extension, recursive))
+            list.add("classpath://" + resourceName);
         return list.toArray(new String[list.size()]);
     }
 
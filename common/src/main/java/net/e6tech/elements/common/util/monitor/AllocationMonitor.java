@@ -15,28 +15,65 @@
  */
 package net.e6tech.elements.common.util.monitor;
 
+import net.e6tech.elements.common.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created by futeh.
  *
  * Used to monitor objects gc state.
+ *
+ * Tracked objects are held by phantom references in a sharded concurrent registry, so monitoring does not serialize
+ * the allocating threads.  A single daemon thread drains the reference queue and, every checkInterval, reports
+ * objects still alive past their timeout as potential leaks.  With a sampleRate of N only about 1 in N objects is
+ * tracked, which makes it cheap enough to leave on.
+ *
+ * Registered as net.e6tech.elements:type=AllocationMonitor,name=&lt;name&gt; once it starts tracking.
  */
-public class AllocationMonitor {
+public class AllocationMonitor implements AllocationMonitorMXBean {
+    private static final Logger logger = Logger.getLogger();
+    private static final AtomicInteger count = new AtomicInteger();
+    private static final int SHARDS = 16;
+    private static final int MAX_SUSPECTS = 100;
 
+    private String name = "AllocationMonitor-" + count.incrementAndGet();
     private ReferenceQueue<Object> phantoms = new ReferenceQueue<>();
-    private Thread deallocThread = new Thread();
-    private final SortedSet<AllocationReference> allocated;
+    private Thread monitorThread;
+    @SuppressWarnings("unchecked")
+    private final Set<AllocationReference>[] shards = new Set[SHARDS];
     private long checkInterval = 1 * 60000L;
     private long expired = 1 * 60000L;
-    private boolean disabled = false;
+    private volatile boolean disabled = false;
+    private volatile int sampleRate = 1;
+    private boolean captureStackTrace = false;
+    private ObjectName objectName;
+
+    private final LongAdder monitored = new LongAdder();
+    private final LongAdder deallocated = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final Map<String, LongAdder> leaksByClass = new ConcurrentHashMap<>();
+    private final Deque<String> suspects = new ArrayDeque<>();
 
     public AllocationMonitor() {
-        Comparator<AllocationReference> comparator = Comparator.comparingLong(l -> l.expiredTime);
-        allocated = Collections.synchronizedSortedSet(new TreeSet<>(comparator));
+        for (int i = 0; i < SHARDS; i++)
+            shards[i] = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -46,15 +83,13 @@ public class AllocationMonitor {
      * @param timeout  timeout period
      * @param obj the object to be monitor
      * @param listener an AllocationListener
+     * @return true if the object is tracked, false if disabled or not sampled.
      */
-    public void monitorLeak(long timeout, Object obj, LeakListener listener) {
-        if (disabled)
-            return;
+    public boolean monitorLeak(long timeout, Object obj, LeakListener listener) {
         long realTimeout = timeout;
         if (realTimeout <= 0)
             realTimeout = expired;
-        allocated.add(new AllocationReference(realTimeout, obj, phantoms, listener));
-        checkGCThread();
+        return track(realTimeout, obj, listener);
     }
 
     /**
@@ -63,12 +98,38 @@ public class AllocationMonitor {
      *
      * @param obj the object to be monitor
      * @param listener an AllocationListener
+     * @return true if the object is tracked, false if disabled or not sampled.
      */
-    public void monitorDealloc(Object obj, DeallocationListener listener) {
+    public boolean monitorDealloc(Object obj, DeallocationListener listener) {
+        return track(0, obj, listener);
+    }
+
+    private boolean track(long timeout, Object obj, AllocationListener listener) {
         if (disabled)
-            return;
-        allocated.add(new AllocationReference(0, obj, phantoms, listener));
+            return false;
+        int rate = sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0)
+            return false;
         checkGCThread();
+        AllocationReference ref = new AllocationReference(timeout, obj, phantoms, listener);
+        if (captureStackTrace)
+            ref.allocation = new Throwable("allocated " + new Date(ref.startTime));
+        shard(ref).add(ref);
+        monitored.increment();
+        return true;
+    }
+
+    private Set<AllocationReference> shard(AllocationReference ref) {
+        return shards[ref.hashCode() & (SHARDS - 1)];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
     }
 
     public long getCheckInterval() {
@@ -87,87 +148,222 @@ public class AllocationMonitor {
         this.expired = expired;
     }
 
+    @Override
     public boolean isDisabled() {
         return disabled;
     }
 
+    @Override
     public void setDisabled(boolean disabled) {
         this.disabled = disabled;
     }
 
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Tracks about 1 in sampleRate objects.  1, the default, tracks all of them.
+     */
+    @Override
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 1)
+            throw new IllegalArgumentException();
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean isCaptureStackTrace() {
+        return captureStackTrace;
+    }
+
+    /**
+     * Records where tracked objects are allocated so that leak suspects show the stack trace.  Costly, mostly for
+     * use together with a high sampleRate.
+     */
+    public void setCaptureStackTrace(boolean captureStackTrace) {
+        this.captureStackTrace = captureStackTrace;
+    }
+
+    @Override
+    public long getTracked() {
+        long size = 0;
+        for (Set<AllocationReference> shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    @Override
+    public long getMonitored() {
+        return monitored.sum();
+    }
+
+    @Override
+    public long getDeallocated() {
+        return deallocated.sum();
+    }
+
+    @Override
+    public long getPotentialLeaks() {
+        return leaks.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLeaksByClass() {
+        Map<String, Long> map = new HashMap<>();
+        leaksByClass.forEach((k, v) -> map.put(k, v.sum()));
+        return map;
+    }
+
+    @Override
+    public String[] getLeakSuspects() {
+        synchronized (suspects) {
+            return suspects.toArray(new String[0]);
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        monitored.reset();
+        deallocated.reset();
+        leaks.reset();
+        leaksByClass.clear();
+        synchronized (suspects) {
+            suspects.clear();
+        }
+    }
+
     public synchronized void shutdown() {
-        if (deallocThread.isAlive()) {
-            deallocThread.interrupt();
+        if (monitorThread != null && monitorThread.isAlive()) {
+            monitorThread.interrupt();
         }
-        allocated.clear();
+        monitorThread = null;
+        for (Set<AllocationReference> shard : shards)
+            shard.clear();
         phantoms = new ReferenceQueue<>();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (objectName != null && server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (Exception ex) {
+            logger.warn("Cannot unregister allocation monitor {}", name, ex);
+        }
     }
 
-    @SuppressWarnings({"squid:S2276", "squid:S3776", "squid:S1188", "squid:S134"}) // we really want the thread to sleep, not wait
-    protected synchronized void checkGCThread() {
-        if (deallocThread.isAlive())
+    protected void checkGCThread() {
+        Thread thread = monitorThread;
+        if (thread != null && thread.isAlive())
             return;
-        Thread leakThread = new Thread(() -> {
-            Object wait = new Object();
-            while (true) {
-                try {
-                    synchronized (allocated) {
-                        Iterator<AllocationReference> iterator = allocated.iterator();
-                        while (iterator.hasNext()) {
-                            AllocationReference alloc = iterator.next();
-                            if (System.currentTimeMillis() > alloc.expiredTime) {
-                                alloc.getListener().onPotentialLeak();
-                                iterator.remove();
-                            } else {
-                                break;
-                            }
-                        }
-                    }
-                    synchronized (wait) {
-                        wait.wait(checkInterval);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
+        startMonitorThread();
+    }
+
+    private synchronized void startMonitorThread() {
+        if (monitorThread != null && monitorThread.isAlive())
+            return;
+        ReferenceQueue<Object> queue = phantoms;
+        monitorThread = new Thread(() -> monitor(queue), name);
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+        register();
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("net.e6tech.elements:type=AllocationMonitor,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName))
+                server.registerMBean(this, objectName);
+        } catch (Exception ex) {
+            logger.warn("Cannot register allocation monitor {} as MBean", name, ex);
+        }
+    }
 
-        deallocThread = new Thread(() -> {
+    // drains the reference queue and checks for leaks every checkInterval.
+    private void monitor(ReferenceQueue<Object> queue) {
+        long nextCheck = System.currentTimeMillis() + checkInterval;
+        while (!Thread.currentThread().isInterrupted()) {
             try {
-                while (true) {
-                    Reference<?> ref = phantoms.remove();
-                    allocated.remove(ref);
-                    if (ref instanceof AllocationReference) {
-                        AllocationReference alloc = (AllocationReference) ref;
-                        alloc.listener.onDeallocated();
-                    }
+                long wait = nextCheck - System.currentTimeMillis();
+                Reference<?> ref = (wait > 0) ? queue.remove(wait) : queue.poll();
+                while (ref != null) {
+                    dealloc(ref);
+                    ref = queue.poll();
+                }
+                if (System.currentTimeMillis() >= nextCheck) {
+                    checkLeaks();
+                    nextCheck = System.currentTimeMillis() + checkInterval;
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                leakThread.interrupt();
+            } catch (Exception ex) {
+                logger.warn("AllocationMonitor", ex);
             }
-        });
-        leakThread.setDaemon(true);
-        leakThread.start();
+        }
+    }
+
+    private void dealloc(Reference<?> ref) {
+        if (ref instanceof AllocationReference) {
+            AllocationReference alloc = (AllocationReference) ref;
+            if (shard(alloc).remove(alloc)) {
+                deallocated.increment();
+                alloc.listener.onDeallocated();
+            }
+        }
+    }
 
-        deallocThread.setDaemon(true);
-        deallocThread.start();
+    private void checkLeaks() {
+        long now = System.currentTimeMillis();
+        for (Set<AllocationReference> shard : shards) {
+            Iterator<AllocationReference> iterator = shard.iterator();
+            while (iterator.hasNext()) {
+                AllocationReference alloc = iterator.next();
+                if (now > alloc.expiredTime) {
+                    iterator.remove();
+                    alloc.clear();
+                    leak(alloc);
+                }
+            }
+        }
+    }
+
+    private void leak(AllocationReference alloc) {
+        leaks.increment();
+        leaksByClass.computeIfAbsent(alloc.className, k -> new LongAdder()).increment();
+        StringBuilder builder = new StringBuilder();
+        builder.append(alloc.className).append(" allocated ").append(new Date(alloc.startTime));
+        if (alloc.allocation != null) {
+            for (StackTraceElement element : alloc.allocation.getStackTrace())
+                builder.append("\n\tat ").append(element);
+        }
+        synchronized (suspects) {
+            if (suspects.size() >= MAX_SUSPECTS)
+                suspects.removeFirst();
+            suspects.addLast(builder.toString());
+        }
+        try {
+            alloc.getListener().onPotentialLeak();
+        } catch (Exception ex) {
+            logger.warn("onPotentialLeak failed", ex);
+        }
     }
 
     static class AllocationReference extends PhantomReference<Object> {
         AllocationListener listener;
         long startTime;
         long expiredTime;
+        String className;
+        Throwable allocation;
 
         @SuppressWarnings("unchecked")
         public AllocationReference(long timeout, Object referent, ReferenceQueue q, AllocationListener listener) {
             super(referent, q);
+            startTime = System.currentTimeMillis();
             if (timeout == 0)
                 expiredTime = Long.MAX_VALUE;
             else
-                expiredTime = System.currentTimeMillis() + timeout;
+                expiredTime = startTime + timeout;
             this.listener = listener;
+            this.className = referent.getClass().getName();
         }
 
         public AllocationListener getListener() {
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.e6tech.elements.common.util.monitor;
+
+import java.util.Map;
+
+/**
+ * Runtime view of an AllocationMonitor.
+ */
+public interface AllocationMonitorMXBean {
+
+    String getName();
+
+    boolean isDisabled();
+
+    void setDisabled(boolean disabled);
+
+    int getSampleRate();
+
+    void setSampleRate(int sampleRate);
+
+    long getTracked();
+
+    long getMonitored();
+
+    long getDeallocated();
+
+    long getPotentialLeaks();
+
+    /**
+     * @return number of potential leaks by class of the monitored object.
+     */
+    Map<String, Long> getLeaksByClass();
+
+    /**
+     * @return the most recent potential leaks, with allocation stack traces if captured.
+     */
+    String[] getLeakSuspects();
+
+    void resetStatistics();
+}
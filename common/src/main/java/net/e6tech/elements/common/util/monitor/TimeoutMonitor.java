@@ -16,20 +16,45 @@
 package net.e6tech.elements.common.util.monitor;
 
 import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.logging.Logger;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Calls TimeoutListener.onTimeout for listeners still open when their timeout elapses.
+ *
+ * Timeouts are kept in a hashed timing wheel of ticksPerWheel buckets, each covering tickDuration milliseconds,
+ * advanced by a single daemon thread per TimeoutMonitor.  Scheduling and cancelling are O(1) and there is no thread or
+ * task per listener; the thread parks while nothing is pending.  A timeout fires within one tick after it elapses.
+ * Call stop when the monitor is no longer needed to end the thread.
+ *
+ * The listener's timeout is read again when it expires, so a listener may extend it while running.  onTimeout is
+ * called on the injected thread pool if there is one, otherwise on the wheel thread.
  * Created by futeh.
  */
-@SuppressWarnings({"squid:S134", "squid:S135", "squid:S3776"})
 public class TimeoutMonitor {
+    private static final Logger logger = Logger.getLogger();
+    private static final AtomicInteger count = new AtomicInteger();
 
     long timeout = -1; // means disable, 0 means use default
+    private long tickDuration = 10L;
+    private int ticksPerWheel = 512;
 
     @Inject(optional = true)
     ExecutorService threadPool;
 
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private volatile Thread worker;
+    private Wheel wheel;
+
     public long getTimeout() {
         return timeout;
     }
@@ -46,21 +71,56 @@ public class TimeoutMonitor {
         this.threadPool = threadPool;
     }
 
-    public void monitor(TimeoutListener listener) {
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Resolution of the wheel in milliseconds.  Takes effect before the first monitor call.
+     */
+    public void setTickDuration(long tickDuration) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException();
+        this.tickDuration = tickDuration;
+    }
+
+    public int getTicksPerWheel() {
+        return ticksPerWheel;
+    }
+
+    /**
+     * Number of buckets, rounded up to a power of 2.  Timeouts longer than one revolution, ticksPerWheel * tickDuration,
+     * wait in their bucket for more rounds.  Takes effect before the first monitor call.
+     */
+    public void setTicksPerWheel(int ticksPerWheel) {
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+            throw new IllegalArgumentException();
+        this.ticksPerWheel = ticksPerWheel;
+    }
+
+    /**
+     * @return number of timeouts scheduled and neither expired nor cancelled.
+     */
+    public int getPendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Monitors the listener.
+     * @return a handle to cancel the timeout, or null if the listener has no timeout.
+     */
+    public Timeout monitor(TimeoutListener listener) {
         if (listener.getTimeout() < 0)
-            return;
+            return null;
 
         long initialTimeout = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
         if (initialTimeout > 0) {
-            Monitor monitor = new Monitor(listener);
-            if (threadPool != null)
-                threadPool.execute(monitor);
-            else {
-                Thread thread = new Thread(monitor);
-                thread.setDaemon(true);
-                thread.start();
-            }
+            long start = System.nanoTime();
+            Timeout t = new Timeout(listener, start, start + TimeUnit.MILLISECONDS.toNanos(initialTimeout));
+            schedule(t);
+            return t;
         }
+        return null;
     }
 
     protected boolean rollback(TimeoutListener listener) {
@@ -71,41 +131,285 @@ public class TimeoutMonitor {
         return false;
     }
 
-    class Monitor implements Runnable {
-        TimeoutListener listener;
+    private void schedule(Timeout t) {
+        pending.incrementAndGet();
+        scheduled.add(t);
+        Thread thread = worker;
+        if (thread == null)
+            thread = start();
+        LockSupport.unpark(thread);
+    }
 
-        Monitor(TimeoutListener listener) {
+    private synchronized Thread start() {
+        if (worker == null) {
+            wheel = new Wheel(tickDuration, ticksPerWheel);
+            Thread thread = new Thread(wheel::run, "TimeoutMonitor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+        return worker;
+    }
+
+    /**
+     * Stops the wheel thread and waits for it to end.  Pending timeouts are discarded without calling their listeners;
+     * a later monitor call starts a new thread.
+     */
+    public synchronized void stop() {
+        Thread thread = worker;
+        if (thread == null)
+            return;
+        worker = null;
+        wheel.stopped = true;
+        wheel = null;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // called with t in EXPIRING state, which keeps cancel() waiting until it is known whether t is rescheduled.
+    private void expire(Timeout t, long now) {
+        TimeoutListener listener = t.listener;
+        long current = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
+        if (!listener.isOpen() || current < 0) {
+            t.state = Timeout.EXPIRED;
+            return;
+        }
+        long deadline = t.start + TimeUnit.MILLISECONDS.toNanos(current);
+        if (deadline > now) { // extended in the meantime
+            Timeout next = new Timeout(listener, t.start, deadline);
+            t.next = next; // published before the state so that cancel() follows it
+            schedule(next);
+            t.state = Timeout.EXPIRED;
+            return;
+        }
+        t.state = Timeout.EXPIRED;
+        if (threadPool != null) {
+            threadPool.execute(() -> rollback(listener));
+        } else {
+            try {
+                rollback(listener);
+            } catch (Exception ex) {
+                logger.warn("onTimeout failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Handle of a monitored listener.
+     */
+    public class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final int EXPIRING = 3;
+
+        private final TimeoutListener listener;
+        private final long start;
+        private final long deadline;
+        volatile int state = PENDING; // not private, for the field updater
+        private volatile Timeout next; // when rescheduled because the listener extended its timeout
+        private long rounds;
+        private Bucket bucket;
+        private Timeout previousInBucket;
+        private Timeout nextInBucket;
+
+        Timeout(TimeoutListener listener, long start, long deadline) {
             this.listener = listener;
+            this.start = start;
+            this.deadline = deadline;
+        }
+
+        public TimeoutListener getListener() {
+            return listener;
+        }
+
+        /**
+         * Stops monitoring the listener.
+         * @return false if the timeout has already fired or been cancelled.
+         */
+        public boolean cancel() {
+            while (true) {
+                Timeout rescheduled = next;
+                if (rescheduled != null)
+                    return rescheduled.cancel();
+                if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                    pending.decrementAndGet();
+                    cancelled.add(this);
+                    return true;
+                }
+                if (state != EXPIRING)
+                    return next != null && next.cancel();
+                // the wheel thread is deciding whether to reschedule, which takes a couple of reads.
+                Thread.yield();
+            }
         }
 
-        public void run() {
-            long start = System.currentTimeMillis();
-            long sleep = 100;
-            while (sleep >= 0) {
-                long t = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
-                if (!listener.isOpen())
-                    break;
-                if (System.currentTimeMillis() - start > t) {
-                    if (rollback(listener))
+        public boolean isCancelled() {
+            Timeout rescheduled = next;
+            return rescheduled != null ? rescheduled.isCancelled() : state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            Timeout rescheduled = next;
+            return rescheduled != null ? rescheduled.isExpired() : state == EXPIRED;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    // doubly linked list of timeouts, only touched by the wheel thread.
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            if (head == null) {
+                head = tail = t;
+            } else {
+                tail.nextInBucket = t;
+                t.previousInBucket = tail;
+                tail = t;
+            }
+        }
+
+        Timeout remove(Timeout t) {
+            Timeout following = t.nextInBucket;
+            if (t.previousInBucket != null)
+                t.previousInBucket.nextInBucket = following;
+            if (following != null)
+                following.previousInBucket = t.previousInBucket;
+            if (t == head)
+                head = following;
+            if (t == tail)
+                tail = t.previousInBucket;
+            t.previousInBucket = null;
+            t.nextInBucket = null;
+            t.bucket = null;
+            return following;
+        }
+    }
+
+    private class Wheel {
+        private final long tickNanos;
+        private final Bucket[] buckets;
+        private final int mask;
+        private final long startTime = System.nanoTime();
+        private long tick;
+        private volatile boolean stopped;
+
+        Wheel(long tickDuration, int ticksPerWheel) {
+            tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+            int size = 1;
+            while (size < ticksPerWheel)
+                size <<= 1;
+            buckets = new Bucket[size];
+            for (int i = 0; i < size; i++)
+                buckets[i] = new Bucket();
+            mask = size - 1;
+        }
+
+        void run() {
+            while (!stopped) {
+                try {
+                    long now = waitForNextTick();
+                    if (stopped)
                         break;
-                } else {
-                    if (t - (System.currentTimeMillis() - start) < 100)
-                        sleep = t - (System.currentTimeMillis() - start);
-                    if (sleep < 100) {
-                        sleep = t - (System.currentTimeMillis() - start) - 10;
-                        if (sleep < 10) {
-                            sleep = t - (System.currentTimeMillis() - start) - 1;
-                        }
-                    }
+                    removeCancelled();
+                    transferScheduled();
+                    expireBucket(buckets[(int) (tick & mask)], now);
+                    tick++;
+                } catch (Exception ex) {
+                    logger.warn("TimeoutMonitor", ex);
+                }
+            }
+            discard();
+        }
+
+        private void discard() {
+            for (Bucket bucket : buckets) {
+                Timeout t = bucket.head;
+                while (t != null) {
+                    Timeout following = bucket.remove(t);
+                    discard(t);
+                    t = following;
+                }
+            }
+            Timeout t;
+            while ((t = scheduled.poll()) != null)
+                discard(t);
+            cancelled.clear();
+        }
+
+        private void discard(Timeout t) {
+            if (STATE.compareAndSet(t, Timeout.PENDING, Timeout.CANCELLED))
+                pending.decrementAndGet();
+        }
+
+        // sleeps until the end of the current tick, or parks while there is nothing to do.
+        private long waitForNextTick() {
+            while (true) {
+                long now = System.nanoTime();
+                if (stopped)
+                    return now;
+                if (pending.get() == 0 && scheduled.isEmpty()) {
+                    removeCancelled();
+                    LockSupport.park(this);
+                    // nothing sits in the wheel, so skip the ticks that passed while parked.
+                    tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+                    continue;
+                }
+                long deadline = startTime + (tick + 1) * tickNanos;
+                long sleep = deadline - now;
+                if (sleep <= 0)
+                    return now;
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+
+        private void transferScheduled() {
+            Timeout t;
+            while ((t = scheduled.poll()) != null) {
+                if (t.state != Timeout.PENDING)
+                    continue;
+                long ticks = (t.deadline - startTime) / tickNanos;
+                t.rounds = (ticks - tick) / buckets.length;
+                buckets[(int) (Math.max(ticks, tick) & mask)].add(t);
+            }
+        }
+
+        private void removeCancelled() {
+            Timeout t;
+            while ((t = cancelled.poll()) != null) {
+                if (t.bucket != null)
+                    t.bucket.remove(t);
+            }
+        }
+
+        private void expireBucket(Bucket bucket, long now) {
+            Timeout t = bucket.head;
+            while (t != null) {
+                if (t.rounds > 0) {
+                    t.rounds--;
+                    t = t.nextInBucket;
+                    continue;
+                }
+                Timeout following = bucket.remove(t);
+                if (STATE.compareAndSet(t, Timeout.PENDING, Timeout.EXPIRING)) {
+                    pending.decrementAndGet();
                     try {
-                        if (sleep >= 0)
-                            Thread.sleep(sleep);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                        expire(t, now);
+                    } finally {
+                        t.state = Timeout.EXPIRED;
                     }
                 }
+                t = following;
             }
-            rollback(listener);
         }
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.pool;
+
+import net.e6tech.elements.common.actor.concurrent.ActorExecutor;
+import net.e6tech.elements.common.actor.typed.worker.WorkEvents;
+import net.e6tech.elements.common.actor.typed.worker.WorkerPoolConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("all") // this is a test.
+public class StealingWorkerPoolTest {
+
+    private ActorExecutor executor(boolean workStealing, int initial, int max) {
+        WorkerPoolConfig config = new WorkerPoolConfig();
+        config.setName("StealingWorkerPoolTest" + System.nanoTime());
+        config.setInitialCapacity(initial);
+        config.setMaxCapacity(max);
+        config.setIdleTimeout(1000L);
+        config.setWorkStealing(workStealing);
+        ActorExecutor executor = new ActorExecutor(null, config);
+        executor.start();
+        return executor;
+    }
+
+    @Test
+    void growAndShrink() throws Exception {
+        ActorExecutor executor = executor(true, 2, 20);
+        CountDownLatch latch = new CountDownLatch(100);
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                count.incrementAndGet();
+                latch.countDown();
+            });
+        }
+        WorkEvents.StatusResponse response = executor.status();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(100, count.get());
+        response = executor.status();
+        assertTrue(response.getWorkerCount() > 2);
+
+        Thread.sleep(3500L);
+        response = executor.status();
+        assertEquals(2, response.getWorkerCount());
+        assertEquals(2, response.getIdleCount());
+        executor.stop();
+    }
+
+    @Test
+    void beforeStart() {
+        ActorExecutor executor = new ActorExecutor(null, new WorkerPoolConfig());
+        assertEquals(0, executor.getWaitTime().getCount());
+        assertEquals(0, executor.status().getWorkerCount());
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        int jobs = 200000;
+        int producers = 4;
+        for (boolean workStealing : new boolean[] {false, true, false, true}) {
+            ActorExecutor executor = executor(workStealing, 8, 8);
+            CountDownLatch latch = new CountDownLatch(jobs);
+            Thread[] threads = new Thread[producers];
+            long start = System.currentTimeMillis();
+            for (int p = 0; p < producers; p++) {
+                threads[p] = new Thread(() -> {
+                    for (int i = 0; i < jobs / producers; i++)
+                        executor.execute(latch::countDown);
+                });
+                threads[p].start();
+            }
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+            long elapsed = System.currentTimeMillis() - start;
+            System.out.println((workStealing ? "StealingWorkerPool " : "WorkerPool ") + jobs + " jobs in " + elapsed + "ms, "
+                    + (jobs * 1000L / Math.max(1, elapsed)) + " jobs/s");
+            executor.stop();
+        }
+    }
+}
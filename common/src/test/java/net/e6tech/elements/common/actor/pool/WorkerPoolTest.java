@@ -17,12 +17,20 @@
 package net.e6tech.elements.common.actor.pool;
 
 import net.e6tech.elements.common.actor.Genesis;
+import net.e6tech.elements.common.actor.concurrent.ActorExecutor;
+import net.e6tech.elements.common.actor.typed.worker.OverflowPolicy;
 import net.e6tech.elements.common.actor.typed.worker.WorkEvents;
+import net.e6tech.elements.common.actor.typed.worker.WorkerPoolConfig;
 import net.e6tech.elements.common.resources.Resources;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Created by futeh.
@@ -82,4 +90,76 @@ public class WorkerPoolTest {
 
         Thread.sleep(2100L);
     }
+
+    private ActorExecutor saturated(OverflowPolicy policy, boolean workStealing, CountDownLatch block, List<WorkEvents> shed) throws Exception {
+        WorkerPoolConfig config = new WorkerPoolConfig();
+        config.setName("bounded" + System.nanoTime());
+        config.setInitialCapacity(1);
+        config.setMaxCapacity(1);
+        config.setMaxWaiting(3);
+        config.setOverflowPolicy(policy);
+        config.setWorkStealing(workStealing);
+        ActorExecutor executor = new ActorExecutor(null, config);
+        executor.start();
+        executor.setOverflowListener(shed::add);
+
+        executor.execute(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(200L);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {});
+            Thread.sleep(50L);
+        }
+        Thread.sleep(200L);
+        assertTrue(executor.isSaturated());
+        assertEquals(3, executor.status().getWaitCount());
+        return executor;
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        for (boolean workStealing : new boolean[] { false, true }) {
+            // reject
+            CountDownLatch block = new CountDownLatch(1);
+            List<WorkEvents> shed = new CopyOnWriteArrayList<>();
+            ActorExecutor executor = saturated(OverflowPolicy.REJECT, workStealing, block, shed);
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+            assertEquals(1, shed.size());
+            block.countDown();
+            executor.stop();
+
+            // caller runs
+            block = new CountDownLatch(1);
+            shed.clear();
+            ActorExecutor executor2 = saturated(OverflowPolicy.CALLER_RUNS, workStealing, block, shed);
+            AtomicReference<Thread> ranOn = new AtomicReference<>();
+            executor2.execute(() -> ranOn.set(Thread.currentThread()));
+            assertSame(Thread.currentThread(), ranOn.get());
+            assertTrue(shed.isEmpty());
+            block.countDown();
+            executor2.stop();
+
+            // drop oldest
+            block = new CountDownLatch(1);
+            shed.clear();
+            ActorExecutor executor3 = saturated(OverflowPolicy.DROP_OLDEST, workStealing, block, shed);
+            CountDownLatch ran = new CountDownLatch(1);
+            executor3.execute(ran::countDown);
+            Thread.sleep(200L);
+            assertEquals(1, shed.size());
+            assertEquals(3, executor3.status().getWaitCount());
+            block.countDown();
+            ran.await();
+            Thread.sleep(100L);
+            WorkEvents.StatusResponse response = executor3.status();
+            assertEquals(1, response.getShedCount());
+            assertTrue(response.getMaxWaitTime() >= 200.0);
+            executor3.stop();
+        }
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.actor.typed;
+
+import net.e6tech.elements.common.actor.Genesis;
+import net.e6tech.elements.common.resources.Resources;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("all") // this is a test.
+public class ReceptorTest {
+
+    private static Genesis genesis;
+
+    @BeforeAll
+    static void setup() {
+        genesis = new Genesis();
+        genesis.setName("ReceptorTest");
+        genesis.setProfile("local");
+        genesis.initialize((Resources) null);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        genesis.shutdown();
+    }
+
+    @Test
+    void privateHandlers() throws Exception {
+        Counter counter = genesis.getGuardian().childActor(Counter.class).spawnNow(new Counter());
+        Counter proxy = counter.virtualize();
+        counter.latch = new CountDownLatch(3);
+        counter.getSelf().tell(new Ping());
+        counter.getSelf().tell(new Ping());
+        counter.getSelf().tell(new Ping());
+        assertTrue(counter.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3L, (long) proxy.count(new Count()));
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        Counter counter = genesis.getGuardian().childActor(Counter.class).spawnNow(new Counter());
+        int messages = 1000000;
+        for (int round = 0; round < 3; round++) {
+            counter.latch = new CountDownLatch(messages);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < messages; i++)
+                counter.getSelf().tell(new Ping());
+            assertTrue(counter.latch.await(60, TimeUnit.SECONDS));
+            long elapsed = System.currentTimeMillis() - start;
+            System.out.println("Receptor " + messages + " messages in " + elapsed + "ms, "
+                    + (messages * 1000L / Math.max(1, elapsed)) + " messages/s");
+        }
+    }
+
+    @Test
+    void dispatch() throws Exception {
+        Counter counter = new Counter();
+        counter.latch = new CountDownLatch(Integer.MAX_VALUE);
+        Method method = Counter.class.getDeclaredMethod("ping", Ping.class);
+        method.setAccessible(true);
+        BiFunction<Object, Object, Object> handler = new Receptor.OnMessage(method).handler;
+        Ping ping = new Ping();
+        int n = 10000000;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                method.invoke(counter, ping);
+            long reflect = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                handler.apply(counter, ping);
+            long bound = System.nanoTime() - start;
+            System.out.println("Method.invoke " + (reflect / n) + "ns/call, bound handler " + (bound / n) + "ns/call");
+        }
+        assertEquals(6L * n, counter.count);
+    }
+
+    public static class Ping {
+    }
+
+    public static class Count extends Ask {
+    }
+
+    public static class Counter extends Receptor<Object, Counter> {
+        private long count;
+        private volatile CountDownLatch latch;
+
+        @Typed
+        private void ping(Ping message) {
+            count++;
+            latch.countDown();
+        }
+
+        @Typed
+        public Long count(Count message) {
+            return count;
+        }
+    }
+}
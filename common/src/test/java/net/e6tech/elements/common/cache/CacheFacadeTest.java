@@ -16,17 +16,42 @@
 package net.e6tech.elements.common.cache;
 
 import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.notification.NotificationCenter;
+import net.e6tech.elements.common.subscribe.Broadcast;
+import net.e6tech.elements.common.subscribe.Notice;
+import net.e6tech.elements.common.subscribe.Subscriber;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.CacheManagerBuilder;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.ehcache.spi.serialization.Serializer;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -107,4 +132,487 @@ public class CacheFacadeTest {
         v = cache2.get("a");
         assertTrue(v == null);
     }
+
+    @Test
+    void singleFlight() throws Exception {
+        CacheFacade<Integer, String> facade = new CacheFacade<Integer, String>("singleFlight") {};
+        int keys = 10;
+        int readers = 200;
+        Map<Integer, AtomicInteger> loads = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Map<Integer, String> results = new ConcurrentHashMap<>();
+        Thread[] threads = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            int id = i;
+            int key = i % keys;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String value = facade.get(key, () -> {
+                    loads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    Thread.sleep(200L);
+                    return "value" + key;
+                });
+                results.put(id, value);
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(keys, loads.size());
+        for (AtomicInteger count : loads.values())
+            assertEquals(1, count.get());
+        assertEquals(readers, results.size());
+        results.forEach((id, value) -> assertEquals("value" + (id % keys), value));
+    }
+
+    @Test
+    void singleFlightFailure() throws Exception {
+        CacheFacade<Integer, String> facade = new CacheFacade<Integer, String>("singleFlightFailure") {};
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[20];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    facade.get(1, () -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(200L);
+                        throw new IllegalStateException("load failed");
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(1, loads.get());
+        assertEquals(threads.length, failures.get());
+        assertEquals("ok", facade.get(1, () -> "ok"));
+    }
+
+    @Test
+    void refreshAhead() throws Exception {
+        CacheFacade<Integer, String> facade = new CacheFacade<Integer, String>("refreshAhead") {}
+                .initPool(pool -> {
+                    pool.setExpiry(600L);
+                    pool.setRefreshAhead(300L);
+                });
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("1", facade.get(1, () -> Integer.toString(loads.incrementAndGet())));
+
+        Thread.sleep(400L);
+        // within refreshAhead of expiring: the current value is returned and a reload starts.
+        assertEquals("1", facade.get(1, () -> Integer.toString(loads.incrementAndGet())));
+        Thread.sleep(100L);
+        assertEquals(2, loads.get());
+
+        // past the original expiry, the refreshed entry is still there.
+        Thread.sleep(250L);
+        assertEquals("2", facade.get(1));
+    }
+
+    @Test
+    void refreshAheadEntryExpiry() throws Exception {
+        CacheFacade<Integer, String> facade = new CacheFacade<Integer, String>("refreshAheadEntryExpiry") {}
+                .initPool(pool -> {
+                    pool.setExpiry(60000L);
+                    pool.setRefreshAhead(300L);
+                    pool.setEntryExpiry((key, value) -> 600L);
+                });
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("1", facade.get(1, () -> Integer.toString(loads.incrementAndGet())));
+        // the entry expires after 600ms as per entryExpiry, not after the configured expiry.
+        Thread.sleep(400L);
+        assertEquals("1", facade.get(1, () -> Integer.toString(loads.incrementAndGet())));
+        Thread.sleep(100L);
+        assertEquals(2, loads.get());
+        Thread.sleep(250L);
+        assertEquals("2", facade.get(1));
+    }
+
+    @Test
+    void refreshAheadTimeToIdle() throws Exception {
+        CacheFacade<Integer, String> facade = new CacheFacade<Integer, String>("refreshAheadTimeToIdle") {}
+                .initPool(pool -> {
+                    pool.setExpiry(200L);
+                    pool.setRefreshAhead(150L);
+                    pool.setTimeToIdle(300L);
+                });
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            assertEquals("1", facade.get(1, () -> Integer.toString(loads.incrementAndGet())));
+            Thread.sleep(100L);
+        }
+        // entries kept alive by reads are not reloaded.
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void entryExpiry() throws Exception {
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("entryExpiry") {}
+                .initPool(pool -> pool.setEntryExpiry((key, value) -> ((String) value).startsWith("short") ? 100L : -1L));
+        facade.put(1L, "short");
+        facade.put(2L, "long");
+        Thread.sleep(150L);
+        assertNull(facade.get(1L));
+        assertEquals("long", facade.get(2L));
+
+        // expiry is recomputed on update
+        facade.put(2L, "short again");
+        Thread.sleep(150L);
+        assertNull(facade.get(2L));
+    }
+
+    @Test
+    void timeToIdle() throws Exception {
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("timeToIdle") {}
+                .initPool(pool -> pool.setTimeToIdle(200L));
+        facade.put(1L, "read");
+        facade.put(2L, "idle");
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(100L);
+            assertEquals("read", facade.get(1L));
+        }
+        assertNull(facade.get(2L));
+    }
+
+    @Test
+    void benchmark() {
+        int entries = 500000;
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("benchmark") {}
+                .initPool(pool -> {
+                    pool.setMaxEntries(entries);
+                    pool.setExpiry(60000L);
+                });
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < 3; round++) {
+            long cpu = threadMXBean.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            for (long i = 0; i < entries; i++)
+                facade.put(i, "v");
+            long putTime = System.nanoTime() - start;
+            long putCpu = threadMXBean.getCurrentThreadCpuTime() - cpu;
+
+            cpu = threadMXBean.getCurrentThreadCpuTime();
+            start = System.nanoTime();
+            for (long i = 0; i < entries; i++)
+                assertNotNull(facade.get(i));
+            long getTime = System.nanoTime() - start;
+            long getCpu = threadMXBean.getCurrentThreadCpuTime() - cpu;
+            System.out.println(entries + " entries: put " + (entries * 1000000000L / putTime) + "/s cpu " + putCpu / 1000000 + "ms, get "
+                    + (entries * 1000000000L / getTime) + "/s cpu " + getCpu / 1000000 + "ms");
+        }
+    }
+
+    @Test
+    void nearCache() {
+        NotificationCenter center = new NotificationCenter();
+        CacheFacade<Long, StringBuilder> facade1 = new CacheFacade<Long, StringBuilder>("nearCache") {}
+                .initPool(pool -> pool.setNearCacheSize(100));
+        CacheFacade<Long, StringBuilder> facade2 = new CacheFacade<Long, StringBuilder>("nearCache") {}
+                .initPool(pool -> pool.setNearCacheSize(100));
+        facade1.setNotificationCenter(center);
+        facade2.setNotificationCenter(center);
+
+        StringBuilder value = new StringBuilder("1");
+        facade1.put(1L, value);
+        assertSame(value, facade1.get(1L));
+        assertSame(value, facade2.get(1L));
+
+        // bypassing the facades, near caches keep serving their references.
+        facade1.getCache().put(1L, new StringBuilder("stale"));
+        assertSame(value, facade1.get(1L));
+
+        // writes through a facade invalidate every near cache of the same name.
+        facade2.put(1L, new StringBuilder("2"));
+        assertEquals("2", facade1.get(1L).toString());
+        assertEquals("2", facade2.get(1L).toString());
+
+        facade1.remove(1L);
+        assertNull(facade2.get(1L));
+        assertNull(facade1.get(1L));
+    }
+
+    /**
+     * Two nodes, each with its own NotificationCenter, bridged by a broadcast that delivers synchronously.  They share
+     * the cache as facades of the same name in one JVM do.
+     */
+    @Test
+    void remoteInvalidation() {
+        RecordingBroadcast broadcast = new RecordingBroadcast();
+        NotificationCenter center1 = new NotificationCenter();
+        center1.addBroadcast(broadcast);
+        NotificationCenter center2 = new NotificationCenter();
+        center2.addBroadcast(broadcast);
+        CacheFacade<CompositeKey, String> facade1 = new CacheFacade<CompositeKey, String>("remoteInvalidation") {}
+                .initPool(pool -> pool.setNearCacheSize(100));
+        CacheFacade<CompositeKey, String> facade2 = new CacheFacade<CompositeKey, String>("remoteInvalidation") {}
+                .initPool(pool -> pool.setNearCacheSize(100));
+        facade1.setNotificationCenter(center1);
+        facade2.setNotificationCenter(center2);
+
+        // keys that cannot be serialized are not published, in particular not as "clear everything".
+        CompositeKey key1 = new CompositeKey(1);
+        CompositeKey key2 = new CompositeKey(2);
+        facade1.put(key1, "1");
+        facade1.put(key2, "2");
+        facade1.remove(key2);
+        assertTrue(broadcast.published.isEmpty());
+        assertEquals("1", facade2.get(key1));
+
+        facade1.clear();
+        assertEquals(1, broadcast.published.size());
+        assertTrue(((CacheInvalidation) broadcast.published.get(0)).isAll());
+        assertNull(facade2.get(key1));
+
+        // closed facades stop listening.
+        assertEquals(2, broadcast.subscribers.size());
+        facade1.close();
+        facade2.close();
+        assertTrue(broadcast.subscribers.isEmpty());
+    }
+
+    private static class CompositeKey {
+        private final int id;
+
+        CompositeKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CompositeKey && ((CompositeKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    private static class RecordingBroadcast implements Broadcast {
+        final List<Serializable> published = new ArrayList<>();
+        final List<Subscriber> subscribers = new ArrayList<>();
+
+        @Override
+        public void subscribe(String topic, Subscriber subscriber) {
+            subscribers.add(subscriber);
+        }
+
+        @Override
+        public <T extends Serializable> void subscribe(Class<T> topic, Subscriber<T> subscriber) {
+            subscribe(topic.getName(), subscriber);
+        }
+
+        @Override
+        public void unsubscribe(String topic, Subscriber subscriber) {
+            subscribers.remove(subscriber);
+        }
+
+        @Override
+        public void unsubscribe(Class topic, Subscriber subscriber) {
+            unsubscribe(topic.getName(), subscriber);
+        }
+
+        @Override
+        public void publish(String topic, Serializable object) {
+            published.add(object);
+            for (Subscriber subscriber : new ArrayList<>(subscribers))
+                subscriber.receive(new Notice(topic, object));
+        }
+
+        @Override
+        public <T extends Serializable> void publish(Class<T> cls, T object) {
+            publish(cls.getName(), object);
+        }
+    }
+
+    @Test
+    void statistics() throws Exception {
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("statistics") {}
+                .initPool(pool -> {
+                    pool.setMaxEntries(10);
+                    pool.setExpiry(200L);
+                });
+        CacheStatistics statistics = facade.getStatistics();
+        for (long i = 0; i < 20; i++)
+            facade.get(i, () -> "v");
+        for (long i = 10; i < 20; i++)
+            facade.get(i, () -> "v");
+        try {
+            facade.get(100L, () -> { throw new IllegalStateException(); });
+            fail("expected load failure");
+        } catch (RuntimeException ex) {
+            // expected
+        }
+
+        // ehcache evicts by sampling, so which of the first 20 keys survived is not deterministic.
+        assertEquals(31, statistics.getHits() + statistics.getMisses());
+        assertEquals(statistics.getMisses() - 1, statistics.getLoads());
+        assertEquals(1, statistics.getLoadFailures());
+        assertTrue(statistics.getMaxLoadTime() >= 0);
+
+        Thread.sleep(300L);
+        for (long i = 0; i < 20; i++)
+            assertNull(facade.get(i));
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (statistics.getEvictions() + statistics.getExpirations() < 20) {
+            assertTrue(System.currentTimeMillis() < deadline,
+                    "evictions " + statistics.getEvictions() + " expirations " + statistics.getExpirations());
+            Thread.sleep(10L);
+        }
+        assertTrue(statistics.getEvictions() >= 10);
+        assertTrue(statistics.getExpirations() > 0);
+        assertEquals(0, statistics.getEntryCount());
+
+        long misses = statistics.getMisses();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("net.e6tech.elements:type=Cache,name=" + ObjectName.quote(facade.getName()));
+        assertEquals(misses, server.getAttribute(name, "Misses"));
+
+        // switched off at runtime
+        server.setAttribute(name, new javax.management.Attribute("Enabled", false));
+        facade.get(1L);
+        assertEquals(misses, statistics.getMisses());
+        statistics.setEnabled(true);
+        facade.get(1L);
+        assertEquals(misses + 1, statistics.getMisses());
+    }
+
+    @Test
+    void offHeap() {
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("offHeap") {}
+                .initPool(pool -> {
+                    pool.setMaxEntries(10);
+                    pool.setOffHeapSize(16);
+                });
+        for (long i = 0; i < 1000; i++)
+            facade.put(i, "v" + i);
+        // heap holds 10 entries, the rest spill to off-heap.
+        for (long i = 0; i < 1000; i++)
+            assertEquals("v" + i, facade.get(i));
+    }
+
+    @Test
+    void disk() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "elements-cache-test-" + System.nanoTime());
+        CacheFacade<Long, byte[]> facade = new CacheFacade<Long, byte[]>("disk") {}
+                .initPool(pool -> {
+                    pool.setMaxEntries(10);
+                    pool.setOffHeapSize(1);
+                    pool.setDiskSize(32);
+                    pool.setDiskPath(dir.getPath());
+                    pool.setValueSerializer(ByteArraySerializer.class.getName());
+                });
+        byte[] value = new byte[4096];
+        for (long i = 0; i < 1000; i++) {
+            value[0] = (byte) i;
+            facade.put(i, value.clone());
+        }
+        // 4MB of values do not fit in heap and 1MB off-heap.
+        for (long i = 0; i < 1000; i++) {
+            byte[] read = facade.get(i);
+            assertNotNull(read);
+            assertEquals((byte) i, read[0]);
+        }
+        assertTrue(dir.exists());
+    }
+
+    /**
+     * Compares GC pauses and read latency with values on heap vs. off-heap.  The data size defaults to 64MB to
+     * fit small build machines; use -DcacheBenchmarkMB=2048 with a large enough -Xmx for a realistic run.
+     */
+    @Test
+    void gcBenchmark() throws Exception {
+        int megabytes = Integer.getInteger("cacheBenchmarkMB", 64);
+        int valueSize = 1024;
+        int entries = megabytes * 1024;
+        for (boolean offHeap : new boolean[] {false, true}) {
+            CacheFacade<Long, byte[]> facade = new CacheFacade<Long, byte[]>(offHeap ? "gcOffHeap" : "gcHeap") {}
+                    .initPool(pool -> {
+                        pool.setExpiry(600000L);
+                        if (offHeap) {
+                            pool.setMaxEntries(1000);
+                            pool.setOffHeapSize(megabytes * 2L);
+                            pool.setValueSerializer(ByteArraySerializer.class.getName());
+                        } else {
+                            pool.setMaxEntries(entries);
+                        }
+                    });
+            byte[] value = new byte[valueSize];
+            for (long i = 0; i < entries; i++)
+                facade.put(i, value.clone());
+            System.gc();
+
+            Histogram pauses = new Histogram();
+            NotificationListener listener = (notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    pauses.record(info.getGcInfo().getDuration());
+                }
+            };
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+
+            Histogram reads = new Histogram();
+            Random random = new Random(1);
+            int readCount = 500000;
+            for (int i = 0; i < readCount; i++) {
+                long key = random.nextInt(entries);
+                long start = System.nanoTime();
+                byte[] read = facade.get(key);
+                reads.record(System.nanoTime() - start);
+                assertNotNull(read);
+                // churn to provoke young collections
+                facade.put(key, Arrays.copyOf(read, valueSize));
+            }
+            System.gc();
+
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                ((NotificationEmitter) gc).removeNotificationListener(listener);
+            System.out.println((offHeap ? "off-heap " : "heap ") + megabytes + "MB: gc pauses " + pauses.getCount()
+                    + " p50 " + pauses.getPercentile(50) + "ms p99 " + pauses.getPercentile(99) + "ms max " + pauses.getMax()
+                    + "ms, read p50 " + reads.getPercentile(50) + "ns p99 " + reads.getPercentile(99) + "ns p99.9 "
+                    + reads.getPercentile(99.9) + "ns, heap used "
+                    + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024) + "MB");
+            facade.getCache().clear();
+        }
+    }
+
+    public static class ByteArraySerializer implements Serializer<byte[]> {
+
+        public ByteArraySerializer(ClassLoader classLoader) {
+            // required by ehcache
+        }
+
+        @Override
+        public ByteBuffer serialize(byte[] object) {
+            return ByteBuffer.wrap(object);
+        }
+
+        @Override
+        public byte[] read(ByteBuffer binary) {
+            byte[] bytes = new byte[binary.remaining()];
+            binary.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(byte[] object, ByteBuffer binary) {
+            return binary.equals(ByteBuffer.wrap(object));
+        }
+    }
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.logging;
+
+import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.logging.jul.LoggerAdapter;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class AsyncAppenderTest {
+
+    @Test
+    void ordering() {
+        AsyncAppender appender = new AsyncAppender(64);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleLogger console = new ConsoleLogger().appender(appender);
+        console.setOut(new PrintStream(bytes, true));
+        for (int i = 0; i < 1000; i++)
+            console.info("message {}", i);
+        console.info("{} and {}", "one", "two");
+        console.info("{} {} {}", "a", "b", "c");
+        console.error("failed", new IllegalStateException("boom"));
+        appender.shutdown();
+
+        String[] lines = bytes.toString().split("\\r?\\n");
+        for (int i = 0; i < 1000; i++)
+            assertEquals("message " + i, lines[i]);
+        assertEquals("one and two", lines[1000]);
+        assertEquals("a b c", lines[1001]);
+        assertEquals("failed", lines[1002]);
+        assertTrue(lines[1003].contains("boom"));
+
+        // after shutdown messages are written synchronously.
+        bytes.reset();
+        console.info("late");
+        assertEquals("late", bytes.toString().trim());
+    }
+
+    @Test
+    void overflow() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new ArrayList<>();
+        AsyncAppender.Target target = event -> {
+            blocked.countDown();
+            await(release);
+            written.add(event.getMessage());
+        };
+
+        AsyncAppender appender = new AsyncAppender(4);
+        appender.setOverflow(AsyncAppender.Overflow.DROP);
+        appender.append(target, null, "0", (Throwable) null);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++)
+            appender.append(target, null, Integer.toString(i), (Throwable) null);
+        // the slot being written is not released until the target returns, leaving room for 3 more.
+        assertEquals(7, appender.getDropped());
+        release.countDown();
+        appender.shutdown();
+        assertEquals(4, written.size());
+
+        written.clear();
+        CountDownLatch blocked2 = new CountDownLatch(1);
+        CountDownLatch release2 = new CountDownLatch(1);
+        List<String> callers = new ArrayList<>();
+        AsyncAppender.Target target2 = event -> {
+            if (event.getThreadName() == null) { // written on the calling thread
+                callers.add(event.getMessage());
+                return;
+            }
+            blocked2.countDown();
+            await(release2);
+        };
+        appender = new AsyncAppender(4);
+        appender.setOverflow(AsyncAppender.Overflow.SYNCHRONOUS);
+        appender.append(target2, null, "0", (Throwable) null);
+        assertTrue(blocked2.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++)
+            appender.append(target2, null, Integer.toString(i), (Throwable) null);
+        assertEquals(7, appender.getSynchronous());
+        assertEquals(7, callers.size());
+        release2.countDown();
+        appender.shutdown();
+    }
+
+    @Test
+    void jul() throws Exception {
+        AsyncAppender appender = new AsyncAppender(64);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleLogger console = new ConsoleLogger();
+        console.setOut(new PrintStream(bytes, true));
+        LoggerAdapter adapter = new LoggerAdapter("jul");
+        Field field = LoggerAdapter.class.getDeclaredField("logger");
+        field.setAccessible(true);
+        field.set(adapter, Logger.from(console));
+        AsyncAppender previous = LoggerAdapter.getAppender();
+        LoggerAdapter.setAppender(appender);
+        try {
+            adapter.log(Level.INFO, "plain");
+            adapter.log(Level.INFO, "one {}", "arg");
+            adapter.log(Level.WARNING, "{} {}", new Object[] {"two", "args"});
+            adapter.log(Level.SEVERE, "thrown", new IllegalStateException("boom"));
+            // debug is off, so this is not queued at all.
+            adapter.log(Level.FINE, "fine");
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        } finally {
+            LoggerAdapter.setAppender(previous);
+            appender.shutdown();
+        }
+        String out = bytes.toString();
+        assertTrue(out.contains("plain"));
+        assertTrue(out.contains("one arg"));
+        assertTrue(out.contains("two args"));
+        assertTrue(out.contains("boom"));
+        assertFalse(out.contains("fine"));
+    }
+
+    @Test
+    void julReentrant() throws Exception {
+        AsyncAppender appender = new AsyncAppender(4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleLogger console = new ConsoleLogger();
+        console.setOut(new PrintStream(bytes, true));
+        Field consoleAppender = ConsoleLogger.class.getDeclaredField("appender");
+        consoleAppender.setAccessible(true);
+        consoleAppender.set(console, appender);
+        LoggerAdapter adapter = new LoggerAdapter("jul");
+        Field field = LoggerAdapter.class.getDeclaredField("logger");
+        field.setAccessible(true);
+        field.set(adapter, Logger.from(console));
+        AsyncAppender previous = LoggerAdapter.getAppender();
+        LoggerAdapter.setAppender(appender);
+        try {
+            // holds the appender thread until the ring is full of JUL messages, each printed through the same appender.
+            CountDownLatch release = new CountDownLatch(1);
+            appender.append(event -> await(release), "INFO", "held", null);
+            for (int i = 0; i < appender.getCapacity() - 1; i++)
+                adapter.log(Level.INFO, "jul " + i);
+            assertEquals(appender.getCapacity(), appender.getQueueDepth());
+            release.countDown();
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        } finally {
+            LoggerAdapter.setAppender(previous);
+            appender.shutdown();
+        }
+        String out = bytes.toString();
+        for (int i = 0; i < appender.getCapacity() - 1; i++)
+            assertTrue(out.contains("jul " + i));
+    }
+
+    @Test
+    void callerContext() throws Exception {
+        AsyncAppender appender = new AsyncAppender(64);
+        List<String> written = new ArrayList<>();
+        AsyncAppender.Target target = event -> written.add(Thread.currentThread().getName() + " " + ThreadContext.get("logDir"));
+        Thread caller = new Thread(() -> {
+            ThreadContext.put("logDir", "/tmp/callerContext");
+            try {
+                appender.append(target, null, "message", (Throwable) null);
+            } finally {
+                ThreadContext.clearMap();
+            }
+        }, "caller");
+        caller.start();
+        caller.join();
+        appender.append(target, null, "message", (Throwable) null);
+        assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        appender.shutdown();
+        assertEquals("caller /tmp/callerContext", written.get(0));
+        assertEquals(Thread.currentThread().getName() + " null", written.get(1));
+    }
+
+    @Test
+    void drainOnShutdown() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new ArrayList<>();
+        AsyncAppender.Target target = event -> {
+            if ("stuck".equals(event.getMessage())) {
+                blocked.countDown();
+                await(release);
+            }
+            synchronized (written) {
+                written.add(event.getMessage());
+            }
+        };
+        AsyncAppender appender = new AsyncAppender(16);
+        appender.append(target, null, "stuck", (Throwable) null);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++)
+            appender.append(target, null, Integer.toString(i), (Throwable) null);
+        assertFalse(appender.flush(10, TimeUnit.MILLISECONDS));
+        // the appender thread does not get past "stuck" within the shutdown timeout; the rest is written here.
+        appender.shutdown();
+        synchronized (written) {
+            assertEquals(10, written.size());
+            for (int i = 0; i < 10; i++)
+                assertEquals(Integer.toString(i), written.get(i));
+        }
+        release.countDown();
+    }
+
+    /**
+     * Caller latency and throughput of ConsoleLogger writing to a slow stream, synchronously and through the
+     * appender, with 1, 8 and 32 logging threads.  The stream spins for about a microsecond per write to stand in for a
+     * console or a file under load.
+     */
+    @Test
+    void benchmark() throws Exception {
+        int total = Integer.getInteger("asyncAppenderBenchmark", 64000);
+        for (int threads : new int[] {1, 8, 32}) {
+            benchmark(threads, total, null);
+            AsyncAppender appender = new AsyncAppender(64 * 1024);
+            benchmark(threads, total, appender);
+            appender.shutdown();
+        }
+    }
+
+    private void benchmark(int threads, int total, AsyncAppender appender) throws Exception {
+        ConsoleLogger console = new ConsoleLogger().appender(appender);
+        console.setOut(new PrintStream(new SlowStream(), false));
+        Histogram latency = new Histogram();
+        int perThread = total / threads;
+        Thread[] workers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                await(start);
+                Object arg = "value";
+                for (int i = 0; i < perThread; i++) {
+                    long s = System.nanoTime();
+                    console.info("message {} {}", arg, i);
+                    latency.record(System.nanoTime() - s);
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - begin;
+        if (appender != null)
+            appender.shutdown();
+        long drained = System.nanoTime() - begin;
+        System.out.println((appender == null ? "sync " : "async") + " threads=" + threads
+                + " callers " + (perThread * threads * 1000000000L / elapsed) + " msg/s"
+                + ", written " + (perThread * threads * 1000000000L / drained) + " msg/s"
+                + ", caller latency p50=" + latency.getPercentile(50) + "ns p99=" + latency.getPercentile(99)
+                + "ns max=" + latency.getMax() + "ns");
+        assertEquals(perThread * threads, latency.getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SlowStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            // ignore
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long until = System.nanoTime() + 1000L;
+            while (System.nanoTime() < until) {
+                // spin
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.logging;
+
+import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.util.SystemException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class LoggerTest {
+
+    @Test
+    void extension() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleLogger console = new ConsoleLogger();
+        console.setOut(new PrintStream(bytes, true));
+        Logger logger = Logger.from(console);
+
+        SystemException ex = logger.systemException("boom");
+        assertEquals("boom", ex.getMessage());
+        assertTrue(bytes.toString().contains("boom"));
+
+        bytes.reset();
+        IOException io = logger.exception(IOException.class, new IllegalStateException("cause"));
+        assertTrue(io.getCause() instanceof IllegalStateException);
+        assertTrue(bytes.toString().contains("cause"));
+
+        bytes.reset();
+        Logger warn = logger.logger(LogLevel.WARN);
+        assertNotSame(logger, warn);
+        warn.log("warning", null);
+        assertTrue(bytes.toString().contains("warning"));
+
+        assertNotNull(Logger.getLogger().getName());
+        assertEquals("NullLogger", Logger.nullLogger().getName());
+    }
+
+    /**
+     * Disabled (debug) and enabled (info) log calls through Logger, compared with the JDK proxy Logger used to return.
+     * The sink only counts enabled calls, so the enabled case measures dispatch.
+     */
+    @Test
+    void benchmark() {
+        CountingLogger sink = new CountingLogger();
+        Logger direct = Logger.from(sink);
+        Logger proxy = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class[] {Logger.class},
+                (p, method, args) -> method.invoke(sink, args));
+        int n = 10000000;
+        Object arg = "arg";
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                direct.debug("debug {}", arg);
+            long directDisabled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                proxy.debug("debug {}", arg);
+            long proxyDisabled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                direct.info("info {}", arg);
+            long directEnabled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                proxy.info("info {}", arg);
+            long proxyEnabled = System.nanoTime() - start;
+
+            System.out.printf("disabled: %.1fns/call (proxy %.1fns), enabled: %.1fns/call (proxy %.1fns)%n",
+                    (double) directDisabled / n, (double) proxyDisabled / n, (double) directEnabled / n, (double) proxyEnabled / n);
+        }
+        assertEquals(6L * n, sink.count);
+    }
+
+    static class CountingLogger extends NullLogger {
+        long count;
+
+        @Override
+        public void info(String format, Object arg) {
+            if (isInfoEnabled())
+                count++;
+        }
+    }
+}
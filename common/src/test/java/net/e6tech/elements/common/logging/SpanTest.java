@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class SpanTest {
+
+    private List<Span> finished = new CopyOnWriteArrayList<>();
+    private SpanSink collector = finished::add;
+
+    @AfterEach
+    void tearDown() {
+        for (SpanSink sink : Span.getSinks())
+            Span.removeSink(sink);
+        Span.setSampleRate(1);
+    }
+
+    @Test
+    void nesting() {
+        try (Span span = Span.start("disabled")) {
+            assertFalse(span.isRecording());
+            assertNull(Span.current());
+        }
+
+        Span.addSink(collector);
+        try (Span outer = Span.start("outer")) {
+            assertSame(outer, Span.current());
+            try (Span inner = Span.start("inner")) {
+                assertSame(outer, inner.getParent());
+                assertEquals(outer.getTraceId(), inner.getTraceId());
+                assertEquals(1, inner.getDepth());
+            }
+            assertSame(outer, Span.current());
+        }
+        assertNull(Span.current());
+        assertEquals(2, finished.size());
+        assertEquals("inner", finished.get(0).getName());
+        assertEquals("outer", finished.get(1).getName());
+        assertTrue(finished.get(1).getDuration() >= finished.get(0).getDuration());
+    }
+
+    @Test
+    void threads() throws Exception {
+        Span.addSink(collector);
+        int threads = 8;
+        int spans = 1000;
+        AtomicInteger errors = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < spans; i++) {
+                    try (Span outer = Span.start("outer")) {
+                        try (Span inner = Span.start("inner")) {
+                            if (inner.getParent() != outer || inner.getThread() != Thread.currentThread())
+                                errors.incrementAndGet();
+                        }
+                        if (Span.current() != outer)
+                            errors.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(0, errors.get());
+        assertEquals(threads * spans * 2, finished.size());
+    }
+
+    @Test
+    void propagation() throws Exception {
+        Span.addSink(collector);
+        ThreadPool pool = ThreadPool.fixedThreadPool("SpanTest", 2);
+        Span[] child = new Span[1];
+        try (Span parent = Span.start("request")) {
+            pool.submit(() -> {
+                try (Span span = Span.start("task")) {
+                    child[0] = span;
+                }
+            }).get();
+            assertSame(parent, child[0].getParent());
+            assertNotSame(parent.getThread(), child[0].getThread());
+        }
+        // the pool thread is left without a current span.
+        assertNull(pool.submit(() -> Span.current()).get());
+    }
+
+    @Test
+    void invokeAll() throws Exception {
+        Span.addSink(collector);
+        ThreadPool pool = ThreadPool.fixedThreadPool("SpanTest.invokeAll", 2);
+        try (Span parent = Span.start("request")) {
+            List<Span> parents = new CopyOnWriteArrayList<>();
+            Callable<Span> task = () -> Span.current();
+            for (Future<Span> future : pool.invokeAll(Arrays.asList(task, task)))
+                parents.add(future.get());
+            parents.add(pool.invokeAny(Arrays.asList(task)));
+            for (Span span : parents)
+                assertSame(parent, span);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void unsampledPropagation() throws Exception {
+        Span.addSink(collector);
+        Span.setSampleRate(Integer.MAX_VALUE);
+        ThreadPool pool = ThreadPool.fixedThreadPool("SpanTest.unsampled", 1);
+        for (int i = 0; i < 10; i++) {
+            try (Span root = Span.start("root")) {
+                assumeFalse(root.isRecording());
+                // the task joins the unsampled trace instead of being sampled as a root of its own.
+                assertFalse(pool.submit(() -> {
+                    try (Span span = Span.start("task")) {
+                        return span.isRecording();
+                    }
+                }).get());
+            }
+        }
+        assertTrue(finished.isEmpty());
+        // and leaves the pool thread as it was.
+        Span.setSampleRate(1);
+        assertTrue(pool.submit(() -> {
+            try (Span span = Span.start("after")) {
+                return span.isRecording();
+            }
+        }).get());
+        pool.shutdown();
+    }
+
+    @Test
+    void sampling() {
+        Span.addSink(collector);
+        Span.setSampleRate(10);
+        int traces = 10000;
+        for (int i = 0; i < traces; i++) {
+            try (Span root = Span.start("root")) {
+                try (Span child = Span.start("child")) {
+                    assertEquals(root.isRecording(), child.isRecording());
+                }
+            }
+            assertNull(Span.current());
+        }
+        long roots = finished.stream().filter(s -> s.getName().equals("root")).count();
+        assertEquals(roots, finished.size() - roots);
+        assertTrue(roots > 700 && roots < 1300, "sampled " + roots);
+    }
+
+    @Test
+    void sinks() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleLogger console = new ConsoleLogger().debugEnabled();
+        console.setOut(new PrintStream(bytes, true));
+        LogSpanSink log = new LogSpanSink();
+        log.setLogger(Logger.from(console));
+        JmxSpanSink jmx = new JmxSpanSink();
+        File file = File.createTempFile("trace", ".json");
+        ChromeTraceSpanSink chrome = new ChromeTraceSpanSink(file);
+        Span.addSink(log);
+        Span.addSink(jmx);
+        Span.addSink(chrome);
+
+        for (int i = 0; i < 10; i++) {
+            try (Span span = Span.start("sinkTest")) {
+                try (Span inner = Span.start("sink \"inner\"")) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        chrome.close();
+
+        assertTrue(bytes.toString().contains("sinkTest"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("net.e6tech.elements:type=Span,name=" + ObjectName.quote("sinkTest"));
+        assertEquals(10L, server.getAttribute(name, "Count"));
+        assertTrue((Double) server.getAttribute(name, "MaxDuration") >= 1.0);
+
+        JsonNode events = new ObjectMapper().readTree(file);
+        assertEquals(20, events.size());
+        assertEquals("sink \"inner\"", events.get(0).get("name").asText());
+        assertEquals("X", events.get(0).get("ph").asText());
+        assertEquals(events.get(1).get("args").get("span").asLong(), events.get(0).get("args").get("parent").asLong());
+        file.delete();
+    }
+
+    /**
+     * Cost of a span with tracing off, sampled out, and recorded, against constructing and logging a TimedLogger.
+     */
+    @Test
+    void benchmark() {
+        int n = 1000000;
+        AtomicInteger count = new AtomicInteger();
+        for (int round = 0; round < 3; round++) {
+            long disabled = time(n);
+
+            Span.addSink(span -> count.incrementAndGet());
+            Span.setSampleRate(1000);
+            long sampledOut = time(n);
+            Span.setSampleRate(1);
+            long recorded = time(n);
+            tearDown();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n / 10; i++) {
+                TimedLogger timed = new TimedLogger(0);
+                timed.log("timed");
+            }
+            long timed = (System.nanoTime() - start) * 10;
+            System.out.printf("disabled %.1fns, sampled out %.1fns, recorded %.1fns, TimedLogger %.1fns%n",
+                    (double) disabled / n, (double) sampledOut / n, (double) recorded / n, (double) timed / n);
+        }
+        assertTrue(count.get() >= 3 * n);
+    }
+
+    private long time(int n) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            try (Span span = Span.start("benchmark")) {
+                // nothing
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.notification;
+
+import net.e6tech.elements.common.Tags;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class NotificationCenterTest {
+
+    @Test
+    void hierarchy() {
+        NotificationCenter center = new NotificationCenter();
+        List<String> received = new ArrayList<>();
+        NotificationListener<Level1> level1 = n -> received.add("level1");
+        NotificationListener<Level3> level3 = n -> received.add("level3");
+
+        center.addNotificationListener(Level1.class, level1);
+        center.fireNotification(new Level5());
+        assertEquals(1, received.size());
+
+        // a listener on a closer class takes over, the dispatch table of Level5 must be recomputed.
+        center.addNotificationListener(Level3.class, level3);
+        received.clear();
+        center.fireNotification(new Level5());
+        center.fireNotification(new Level2());
+        assertEquals(2, received.size());
+        assertEquals("level3", received.get(0));
+        assertEquals("level1", received.get(1));
+
+        center.removeNotificationListener(Level3.class, level3);
+        received.clear();
+        center.fireNotification(new Level5());
+        assertEquals("level1", received.get(0));
+
+        center.removeNotificationListener(Level1.class, level1);
+        received.clear();
+        center.fireNotification(new Level5());
+        assertEquals(0, received.size());
+    }
+
+    @Test
+    void source() {
+        NotificationCenter center = new NotificationCenter();
+        AtomicInteger count = new AtomicInteger();
+        NotificationListener listener = n -> count.incrementAndGet();
+        center.addSourceNotificationListener("src", listener);
+        center.addNotificationListener(Level1.class, listener);
+        center.fireNotification(new Level5("src"));
+        assertEquals(2, count.get());
+    }
+
+    /**
+     * Deep notification hierarchy with listeners spread over unrelated notification classes.  Compares the dispatch table
+     * with walking the class hierarchy on every fire, which was how NotificationCenter used to resolve listeners.
+     */
+    @Test
+    void benchmark() {
+        for (int subscribers : new int[] {1, 100})
+            benchmark(subscribers);
+    }
+
+    private void benchmark(int subscribers) {
+        NotificationCenter center = new NotificationCenter();
+        AtomicInteger count = new AtomicInteger();
+        Map<Class, List<NotificationListener>> hierarchy = new ConcurrentHashMap<>();
+        for (int i = 0; i < subscribers; i++) {
+            NotificationListener listener = n -> count.incrementAndGet();
+            center.addNotificationListener(Level1.class, listener);
+            center.addNotificationListener(Other.class, listener);
+            hierarchy.computeIfAbsent(Level1.class, k -> new CopyOnWriteArrayList<>()).add(listener);
+            hierarchy.computeIfAbsent(Other.class, k -> new CopyOnWriteArrayList<>()).add(listener);
+        }
+        Level5 notification = new Level5();
+        int n = 2000000 / subscribers;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                center.fireNotification(notification);
+            long table = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                walk(hierarchy, notification);
+            long walk = System.nanoTime() - start;
+            System.out.println(subscribers + " subscribers, depth 5: dispatch table " + (table / n) + "ns/fire, hierarchy walk " + (walk / n) + "ns/fire");
+        }
+        assertEquals(2 * 5 * n * subscribers, count.get());
+    }
+
+    @Test
+    void async() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread[] deliveredOn = new Thread[1];
+        NotificationListener<Level1> slow = n -> {
+            deliveredOn[0] = Thread.currentThread();
+            sleep(200L);
+            latch.countDown();
+        };
+        AsyncDelivery delivery = new AsyncDelivery();
+        delivery.setName("slow");
+        center.addNotificationListener(Level1.class, slow, delivery);
+
+        long start = System.currentTimeMillis();
+        center.fireNotification(new Level1());
+        assertTrue(System.currentTimeMillis() - start < 100L);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), deliveredOn[0]);
+
+        center.removeNotificationListener(Level1.class, slow);
+        center.fireNotification(new Level1());
+        assertEquals(0, center.getNotificationListeners(new Level1()).size());
+    }
+
+    @Test
+    void batching() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        List<List<Level1>> kept = new CopyOnWriteArrayList<>();
+        AtomicInteger received = new AtomicInteger();
+        NotificationListener<Level1> listener = new NotificationListener<Level1>() {
+            @Override
+            public void onEvent(Level1 notification) {
+                onEvents(Collections.singletonList(notification));
+            }
+
+            @Override
+            public void onEvents(List<Level1> notifications) {
+                batches.add(notifications.size());
+                kept.add(notifications);
+                received.addAndGet(notifications.size());
+            }
+        };
+        AsyncDelivery delivery = new AsyncDelivery();
+        delivery.setBatchSize(10);
+        delivery.setBatchTimeout(100L);
+        center.addNotificationListener(Level1.class, listener, delivery);
+
+        for (int i = 0; i < 25; i++)
+            center.fireNotification(new Level1());
+        waitFor(() -> received.get() == 25);
+        // 25 notifications fired at once come in two full batches and a partial one after the timeout.
+        assertEquals(Arrays.asList(10, 10, 5), batches);
+        // batches kept by the listener are not reused for later ones.
+        for (int i = 0; i < kept.size(); i++)
+            assertEquals(batches.get(i).intValue(), kept.get(i).size());
+        assertThrows(UnsupportedOperationException.class, () -> kept.get(0).clear());
+        center.removeNotificationListener(Level1.class, listener);
+    }
+
+    @Test
+    void ordering() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        int publishers = 4;
+        int count = 10000;
+        Map<Object, List<Integer>> received = new ConcurrentHashMap<>();
+        NotificationListener<Sequenced> listener = n -> received.computeIfAbsent(n.publisher, k -> new ArrayList<>()).add(n.sequence);
+        AsyncDelivery delivery = new AsyncDelivery();
+        delivery.setBufferSize(64);
+        delivery.setBatchSize(16);
+        center.addNotificationListener(Sequenced.class, listener, delivery);
+
+        Thread[] threads = new Thread[publishers];
+        for (int p = 0; p < publishers; p++) {
+            int publisher = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < count; i++)
+                    center.fireNotification(new Sequenced(publisher, i));
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        waitFor(() -> received.values().stream().mapToInt(List::size).sum() == publishers * count);
+        for (List<Integer> sequences : received.values())
+            for (int i = 0; i < count; i++)
+                assertEquals(i, (int) sequences.get(i));
+        center.removeNotificationListener(Sequenced.class, listener);
+    }
+
+    @Test
+    void overflow() throws Exception {
+        for (AsyncDelivery.Overflow overflow : new AsyncDelivery.Overflow[] { AsyncDelivery.Overflow.DROP_NEWEST, AsyncDelivery.Overflow.DROP_OLDEST}) {
+            NotificationCenter center = new NotificationCenter();
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<Integer> received = new CopyOnWriteArrayList<>();
+            NotificationListener<Sequenced> listener = n -> {
+                blocked.countDown();
+                await(release);
+                received.add(n.sequence);
+            };
+            AsyncDelivery delivery = new AsyncDelivery();
+            delivery.setName("overflow");
+            delivery.setBufferSize(4);
+            delivery.setOverflow(overflow);
+            center.addNotificationListener(Sequenced.class, listener, delivery);
+
+            center.fireNotification(new Sequenced(0, 0));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 10; i++)
+                center.fireNotification(new Sequenced(0, i));
+
+            AsyncNotificationListener async = (AsyncNotificationListener) center.getNotificationListeners(new Sequenced(0, 0)).get(0);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("net.e6tech.elements:type=Notification,name=" + ObjectName.quote(async.getName()));
+            assertEquals(4, server.getAttribute(name, "QueueDepth"));
+            assertEquals(6L, server.getAttribute(name, "Dropped"));
+
+            release.countDown();
+            waitFor(() -> received.size() == 5);
+            if (overflow == AsyncDelivery.Overflow.DROP_NEWEST)
+                assertEquals(Arrays.asList(0, 1, 2, 3, 4), received);
+            else
+                assertEquals(Arrays.asList(0, 7, 8, 9, 10), received);
+            assertTrue(async.getMaxLag() > 0);
+            center.removeNotificationListener(Sequenced.class, listener);
+            assertFalse(server.isRegistered(name));
+        }
+    }
+
+    @Test
+    void afterClose() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        NotificationListener<Sequenced> listener = n -> threads.add(Thread.currentThread().getName());
+        AsyncDelivery delivery = new AsyncDelivery();
+        delivery.setName("afterClose");
+        delivery.setBufferSize(1);
+        delivery.setOverflow(AsyncDelivery.Overflow.BLOCK);
+        AsyncNotificationListener<Sequenced> async = new AsyncNotificationListener<>(listener, delivery);
+        async.close();
+        for (int i = 0; i < 10; i++)
+            async.onEvent(new Sequenced(0, i));
+        assertEquals(10, threads.size());
+        for (String thread : threads)
+            assertEquals(Thread.currentThread().getName(), thread);
+        assertEquals(10L, async.getDelivered());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10L);
+        }
+    }
+
+    private void walk(Map<Class, List<NotificationListener>> hierarchy, Notification notification) {
+        Class cls = notification.getClass();
+        while (!cls.equals(Object.class)) {
+            List<NotificationListener> listeners = hierarchy.get(cls);
+            if (listeners != null) {
+                listeners.forEach(listener -> listener.onEvent(notification));
+                break;
+            }
+            cls = cls.getSuperclass();
+        }
+    }
+
+    public static class Level1 implements Notification {
+        private transient Object source;
+
+        public Level1() {
+        }
+
+        public Level1(Object source) {
+            this.source = source;
+        }
+
+        @Override
+        public Object source() {
+            return source;
+        }
+    }
+
+    public static class Level2 extends Level1 {
+        public Level2() {
+        }
+
+        public Level2(Object source) {
+            super(source);
+        }
+    }
+
+    public static class Level3 extends Level2 {
+        public Level3() {
+        }
+
+        public Level3(Object source) {
+            super(source);
+        }
+    }
+
+    public static class Level4 extends Level3 {
+        public Level4() {
+        }
+
+        public Level4(Object source) {
+            super(source);
+        }
+    }
+
+    public static class Level5 extends Level4 {
+        public Level5() {
+        }
+
+        public Level5(Object source) {
+            super(source);
+        }
+    }
+
+    public static class Other implements Notification {
+    }
+
+    public static class Sequenced implements Notification {
+        private final int publisher;
+        private final int sequence;
+
+        public Sequenced(int publisher, int sequence) {
+            this.publisher = publisher;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.subscribe;
+
+import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class DefaultBroadcastTest {
+
+    @Test
+    void subscribe() throws Exception {
+        DefaultBroadcast broadcast = new DefaultBroadcast();
+        broadcast.setThreadPool(ThreadPool.fixedThreadPool("DefaultBroadcastTest", 2));
+        List<String> received = new CopyOnWriteArrayList<>();
+        Subscriber<String> s1 = notice -> received.add("s1:" + notice.getUserObject());
+        Subscriber<String> s2 = notice -> received.add("s2:" + notice.getUserObject());
+
+        // no subscribers, nothing submitted
+        broadcast.publish("topic", "a");
+        assertEquals(0, broadcast.getTasks());
+
+        broadcast.subscribe("topic", s1);
+        broadcast.subscribe("topic", s2);
+        broadcast.publish("topic", "b");
+        waitFor(() -> received.size() == 2);
+        assertTrue(received.contains("s1:b") && received.contains("s2:b"));
+
+        broadcast.unsubscribe("topic", s1);
+        received.clear();
+        broadcast.publish("topic", "c");
+        waitFor(() -> received.size() == 1);
+        assertEquals("s2:c", received.get(0));
+    }
+
+    @Test
+    void coalesce() throws Exception {
+        DefaultBroadcast broadcast = new DefaultBroadcast();
+        broadcast.setThreadPool(ThreadPool.fixedThreadPool("DefaultBroadcastTest", 2));
+        Map<String, String> latest = new ConcurrentHashMap<>();
+        AtomicInteger deliveries = new AtomicInteger();
+        broadcast.subscribe("quotes", notice -> {
+            String quote = (String) notice.getUserObject();
+            latest.put(quote.substring(0, quote.indexOf('=')), quote);
+            deliveries.incrementAndGet();
+        });
+        broadcast.coalesce("quotes", 50L, object -> ((String) object).substring(0, ((String) object).indexOf('=')));
+
+        for (int i = 0; i < 1000; i++) {
+            broadcast.publish("quotes", "A=" + i);
+            broadcast.publish("quotes", "B=" + i);
+        }
+        waitFor(() -> "A=999".equals(latest.get("A")) && "B=999".equals(latest.get("B")));
+        assertTrue(deliveries.get() < 2000, "deliveries " + deliveries.get());
+        assertEquals(2000 - broadcast.getTasks(), broadcast.getCoalesced());
+    }
+
+    /**
+     * Bursts of updates to one topic, with and without coalescing.  Reports submitted tasks and the time from the last
+     * publish until its value is delivered.
+     */
+    @Test
+    void benchmark() throws Exception {
+        int updates = 200000;
+        for (long window : new long[] {0L, 10L}) {
+            for (int round = 0; round < 3; round++) {
+                DefaultBroadcast broadcast = new DefaultBroadcast();
+                broadcast.setThreadPool(ThreadPool.fixedThreadPool("DefaultBroadcastTest", 4));
+                AtomicLong deliveredAt = new AtomicLong();
+                AtomicInteger deliveries = new AtomicInteger();
+                broadcast.subscribe("price", notice -> {
+                    deliveries.incrementAndGet();
+                    if ((Integer) notice.getUserObject() == updates - 1)
+                        deliveredAt.set(System.nanoTime());
+                });
+                broadcast.coalesce("price", window);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < updates; i++)
+                    broadcast.publish("price", i);
+                long published = System.nanoTime();
+                waitFor(() -> deliveredAt.get() != 0);
+                System.out.println("window " + window + "ms: " + updates + " updates published in " + (published - start) / 1000000
+                        + "ms, tasks " + broadcast.getTasks() + ", deliveries " + deliveries.get()
+                        + ", last delivered " + (deliveredAt.get() - published) / 1000000 + "ms after publishing");
+            }
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(1L);
+        }
+    }
+}
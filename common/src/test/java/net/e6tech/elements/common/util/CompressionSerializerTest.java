@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util;
+
+import net.e6tech.elements.common.Tags;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class CompressionSerializerTest {
+
+    @Test
+    void roundTrip() throws Exception {
+        Order order = order(1);
+        CompressionSerializer.Serialization[] serializations = {
+                new CompressionSerializer.JavaSerialization(), new CompressionSerializer.JacksonSerialization() };
+        CompressionSerializer.Codec[] codecs = {
+                new CompressionSerializer.NoCodec(), new CompressionSerializer.DeflateCodec(Deflater.BEST_COMPRESSION), new LZCodec() };
+        for (CompressionSerializer.Serialization serialization : serializations) {
+            for (CompressionSerializer.Codec codec : codecs) {
+                byte[] bytes = new CompressionSerializer(serialization, codec).toBytes(order);
+                assertEquals(CompressionSerializer.MAGIC, bytes[0] & 0xff);
+                assertEquals(serialization.id(), bytes[2]);
+                assertEquals(codec.id(), bytes[3]);
+                assertEquals(order, CompressionSerializer.fromBytes(bytes));
+            }
+        }
+        assertEquals(order, CompressionSerializer.fromBytes(new CompressionSerializer().toBytes(order)));
+        assertNull(CompressionSerializer.fromBytes(new CompressionSerializer().toBytes(null)));
+    }
+
+    @Test
+    void legacy() throws Exception {
+        // payloads written before the header: Java serialization in a GZIP stream.
+        Order order = order(2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(bos))) {
+            oos.writeObject(order);
+        }
+        assertEquals(order, CompressionSerializer.fromBytes(bos.toByteArray()));
+
+        // and still what the default serializer writes, so that older nodes can read it.
+        byte[] bytes = new CompressionSerializer().toBytes(order);
+        assertEquals(0x1f, bytes[0] & 0xff);
+        assertEquals(0x8b, bytes[1] & 0xff);
+        assertNull(new CompressionSerializer().getCodec());
+        try (ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)))) {
+            assertEquals(order, ois.readObject());
+        }
+    }
+
+    @Test
+    void lz() throws Exception {
+        LZCodec codec = new LZCodec();
+        Random random = new Random(7);
+        byte[] noise = new byte[100000];
+        random.nextBytes(noise);
+        byte[] runs = new byte[100000];
+        for (int i = 0; i < runs.length; i++)
+            runs[i] = (byte) (i / 1000);
+        byte[] text = String.join(" ", Collections.nCopies(2000, "the quick brown fox jumps over the lazy dog")).getBytes("UTF-8");
+        for (byte[] data : new byte[][] { new byte[0], "abc".getBytes(), "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(), noise, runs, text, new byte[1 << 20] }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            codec.encode(data, 0, data.length, out);
+            byte[] encoded = out.toByteArray();
+            assertArrayEquals(data, readAll(codec.decode(encoded, 0, encoded.length)));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(text, 0, text.length, out);
+        assertTrue(out.size() < text.length / 20);
+        byte[] corrupt = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+        assertThrows(IOException.class, () -> codec.decode(corrupt, 0, corrupt.length));
+
+        // lengths that are negative or far larger than the block can hold are rejected before allocating.
+        byte[] negative = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f, 0x00 };
+        assertThrows(IOException.class, () -> codec.decode(negative, 0, negative.length));
+        byte[] huge = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0x00 };
+        assertThrows(IOException.class, () -> codec.decode(huge, 0, huge.length));
+    }
+
+    /**
+     * Size and throughput of every serialization and codec on a list of orders with line items, and on a map of
+     * mostly text.  Legacy is Java serialization through GZIP, what CompressionSerializer always did.
+     */
+    @Test
+    void benchmark() throws Exception {
+        int n = Integer.getInteger("compressionBenchmark", 200);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            orders.add(order(i));
+        HashMap<String, String> text = new HashMap<>();
+        for (int i = 0; i < 500; i++)
+            text.put("key" + i, "description of entry " + i + ", status active, category " + (i % 7) + ", region north-east");
+
+        for (Object graph : new Object[] { new ArrayList<>(orders), text }) {
+            benchmark("legacy java+gzip", graph, n, () -> legacyBytes(graph));
+            for (CompressionSerializer.Serialization serialization : new CompressionSerializer.Serialization[] {
+                    new CompressionSerializer.JavaSerialization(), new CompressionSerializer.JacksonSerialization() }) {
+                for (CompressionSerializer.Codec codec : new CompressionSerializer.Codec[] {
+                        new CompressionSerializer.NoCodec(), new CompressionSerializer.DeflateCodec(Deflater.BEST_SPEED),
+                        new CompressionSerializer.DeflateCodec(Deflater.DEFAULT_COMPRESSION), new LZCodec() }) {
+                    CompressionSerializer serializer = new CompressionSerializer(serialization, codec);
+                    String name = serialization.getClass().getSimpleName() + "+" + codec.getClass().getSimpleName()
+                            + (codec instanceof CompressionSerializer.DeflateCodec ? "(" + ((CompressionSerializer.DeflateCodec) codec).getLevel() + ")" : "");
+                    if (graph instanceof List && serialization instanceof CompressionSerializer.JacksonSerialization)
+                        continue; // Jackson does not keep the element type of a raw list.
+                    benchmark(name, graph, n, () -> serializer.toBytes(graph));
+                }
+            }
+        }
+    }
+
+    private void benchmark(String name, Object graph, int n, Encoder encoder) throws Exception {
+        byte[] bytes = encoder.encode();
+        assertEquals(graph, CompressionSerializer.fromBytes(bytes));
+        for (int i = 0; i < n; i++) // warm up
+            CompressionSerializer.fromBytes(encoder.encode());
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++)
+            bytes = encoder.encode();
+        long encode = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++)
+            CompressionSerializer.fromBytes(bytes);
+        long decode = System.nanoTime() - start;
+        System.out.println(String.format("%-12s %-40s %8d bytes, encode %8.1fus, decode %8.1fus",
+                graph.getClass().getSimpleName(), name, bytes.length, encode / 1000.0 / n, decode / 1000.0 / n));
+    }
+
+    private static byte[] legacyBytes(Object graph) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream zos = new GZIPOutputStream(bos);
+             ObjectOutputStream oos = new ObjectOutputStream(zos)) {
+            oos.writeObject(graph);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static Order order(int id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setCustomer("customer-" + (id % 17));
+        order.setCreated(1600000000000L + id);
+        for (int i = 0; i < 5; i++) {
+            LineItem item = new LineItem();
+            item.setSku("SKU-" + (id * 5 + i) % 100);
+            item.setQuantity(i + 1);
+            item.setPrice(9.99 * (i + 1));
+            order.getItems().add(item);
+        }
+        return order;
+    }
+
+    @FunctionalInterface
+    interface Encoder {
+        byte[] encode() throws IOException;
+    }
+
+    public static class Order implements Serializable {
+        private long id;
+        private String customer;
+        private long created;
+        private List<LineItem> items = new ArrayList<>();
+
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+        public String getCustomer() { return customer; }
+        public void setCustomer(String customer) { this.customer = customer; }
+        public long getCreated() { return created; }
+        public void setCreated(long created) { this.created = created; }
+        public List<LineItem> getItems() { return items; }
+        public void setItems(List<LineItem> items) { this.items = items; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Order))
+                return false;
+            Order other = (Order) o;
+            return id == other.id && created == other.created && Objects.equals(customer, other.customer) && Objects.equals(items, other.items);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, customer);
+        }
+    }
+
+    public static class LineItem implements Serializable {
+        private String sku;
+        private int quantity;
+        private double price;
+
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LineItem))
+                return false;
+            LineItem other = (LineItem) o;
+            return quantity == other.quantity && price == other.price && Objects.equals(sku, other.sku);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sku, quantity);
+        }
+    }
+}
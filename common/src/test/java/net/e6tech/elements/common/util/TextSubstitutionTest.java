@@ -20,9 +20,13 @@ package net.e6tech.elements.common.util;
 import net.e6tech.elements.common.Tags;
 import org.junit.jupiter.api.Test;
 
+import java.beans.PropertyDescriptor;
+import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -264,6 +268,115 @@ public class TextSubstitutionTest {
 
     }
 
+    @Test
+    public void appendable() throws Exception {
+        TextSubstitution sub = new TextSubstitution("Dear ${name}, ${y.name:+your order ${y.name} }${missing:-is} ready \\${x} ${unterminated");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            builder.setLength(0);
+            sub.build(new X(), Collections.emptyMap(), builder);
+            assertEquals("Dear X, your order Y is ready ${x} ${unterminated", builder.toString());
+        }
+        StringWriter writer = new StringWriter();
+        sub.write(new X(), Collections.emptyMap(), writer);
+        assertEquals(builder.toString(), writer.toString());
+    }
+
+    /**
+     * A notification body and a SQL fragment rendered repeatedly.  The baseline rescans the template and introspects
+     * each property on every call, the way build used to.
+     */
+    @Test
+    public void benchmark() throws Exception {
+        String notification = "Dear ${customer.name}, your payment of ${amount} to ${merchant} on ${date} was ${status}.${memo:+ Memo: ${memo}}";
+        String sql = "select * from orders where customer = :customer${status:+ and status = :status}${since:+ and created >= :since} order by ${order:created}";
+        Map<String, Object> map = new HashMap<>();
+        map.put("customer", new X());
+        map.put("amount", "12.50");
+        map.put("merchant", "Coffee Shop");
+        map.put("date", "2020-10-01");
+        map.put("status", "approved");
+        map.put("memo", "latte");
+        map.put("since", "2020-01-01");
+
+        int n = 100000;
+        for (String template : new String[] { notification, sql }) {
+            TextSubstitution sub = new TextSubstitution(template);
+            StringBuilder builder = new StringBuilder();
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                int length = 0;
+                for (int i = 0; i < n; i++)
+                    length += rescan(template, map).length();
+                long rescan = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                    length += new TextSubstitution(template).build(map).length();
+                long parseEachTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                    length += sub.build(map).length();
+                long compiled = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    builder.setLength(0);
+                    length += sub.build(map, Collections.emptyMap(), builder).length();
+                }
+                long reused = System.nanoTime() - start;
+                System.out.println("rescan " + (rescan / n) + "ns, new TextSubstitution " + (parseEachTime / n)
+                        + "ns, compiled " + (compiled / n) + "ns, compiled into reused builder " + (reused / n) + "ns" + (length == 0 ? "" : ""));
+            }
+            assertEquals(rescan(template, map), sub.build(map));
+        }
+    }
+
+    // simple ${path} and ${path:+text} substitution by repeated String.replace and introspection.
+    private static String rescan(String template, Map<String, Object> map) throws Exception {
+        String text = template;
+        int start;
+        while ((start = text.indexOf("${")) >= 0) {
+            int end = start + 2;
+            int depth = 1;
+            while (depth > 0) {
+                if (text.startsWith("${", end)) {
+                    depth++;
+                    end += 2;
+                } else {
+                    if (text.charAt(end) == '}')
+                        depth--;
+                    end++;
+                }
+            }
+            String expr = text.substring(start + 2, end - 1);
+            String key = expr;
+            String value = null;
+            int colon = expr.indexOf(':');
+            if (colon >= 0) {
+                key = expr.substring(0, colon);
+                value = expr.substring(colon + (expr.startsWith("+", colon + 1) ? 2 : 1));
+            }
+            Object result = map;
+            for (String comp : key.split("\\.")) {
+                if (result instanceof Map)
+                    result = ((Map) result).get(comp);
+                else if (result != null)
+                    result = new PropertyDescriptor(comp, result.getClass(), "is" + TextSubstitution.capitalize(comp), null).getReadMethod().invoke(result);
+            }
+            String replacement;
+            if (value == null)
+                replacement = result == null ? "" : result.toString();
+            else if (expr.startsWith("+", colon + 1))
+                replacement = result == null ? "" : value;
+            else
+                replacement = result == null ? value : result.toString();
+            text = text.replace("${" + expr + "}", replacement);
+        }
+        return text;
+    }
+
     private static class X {
         public String getName() { return "X"; }
         public String getA() { return "A"; }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("squid:S2925")
+public class ThreadPoolTest {
+
+    @Test
+    void histogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10000; i++)
+            histogram.record(i);
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(5000, histogram.getPercentile(50), 5000 * 0.07);
+        assertEquals(9900, histogram.getPercentile(99), 9900 * 0.07);
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    void metrics() throws Exception {
+        ThreadPool pool = ThreadPool.fixedThreadPool("ThreadPoolTest.metrics", 2);
+        CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            pool.submit(() -> {
+                try {
+                    Thread.sleep(20L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+
+        assertEquals(10, pool.executionTime().getCount());
+        assertTrue(pool.getAverageExecutionTime() >= 20.0);
+        assertTrue(pool.getMaxWaitTime() >= 20.0); // the last tasks waited for at least one round
+        assertEquals(0, pool.getQueueDepth());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("net.e6tech.elements:type=ThreadPool,kind=fixed,name="
+                + ObjectName.quote("ThreadPoolTest.metrics"));
+        assertTrue(server.isRegistered(objectName));
+        assertEquals(10L, server.getAttribute(objectName, "CompletedTaskCount"));
+        pool.shutdown();
+    }
+
+    @Test
+    void shutdown() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("net.e6tech.elements:type=ThreadPool,kind=cached,name="
+                + ObjectName.quote("ThreadPoolTest.shutdown"));
+        ThreadPool pool = ThreadPool.cachedThreadPool("ThreadPoolTest.shutdown");
+        assertTrue(server.isRegistered(objectName));
+        pool.shutdown();
+        assertFalse(server.isRegistered(objectName));
+        assertNull(ThreadPool.find("cached", "ThreadPoolTest.shutdown"));
+
+        ThreadPool recreated = ThreadPool.cachedThreadPool("ThreadPoolTest.shutdown");
+        assertNotSame(pool, recreated);
+        assertFalse(recreated.isShutdown());
+        assertTrue(server.isRegistered(objectName));
+        recreated.submit(() -> { }).get();
+        assertEquals(1L, server.getAttribute(objectName, "TaskCount"));
+        recreated.shutdownNow();
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test
+    void removeQueued() throws Exception {
+        MonitoredExecutor executor = new MonitoredExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), Thread::new);
+        CountDownLatch block = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runnable queued = () -> {};
+        executor.execute(queued);
+        Future<?> cancelled = executor.submit(() -> {});
+        assertEquals(2, executor.getQueue().size());
+        assertTrue(executor.remove(queued));
+        assertFalse(executor.remove(queued));
+        cancelled.cancel(false);
+        executor.purge();
+        assertEquals(0, executor.getQueue().size());
+        block.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejected() throws Exception {
+        ThreadPool pool = ThreadPool.rateLimitedThreadPool("ThreadPoolTest.rejected", 1, 1, 60, 1);
+        CountDownLatch block = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pool.execute(() -> {});
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {}));
+        assertEquals(1, pool.getRejectedCount());
+        block.countDown();
+        pool.shutdown();
+    }
+
+    @Test
+    void adaptive() throws Exception {
+        ThreadPool pool = ThreadPool.fixedThreadPool("ThreadPoolTest.adaptive", 1)
+                .adaptive(5, 1, 8, 100L);
+        for (int i = 0; i < 200; i++) {
+            pool.execute(() -> {
+                try {
+                    Thread.sleep(10L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        Thread.sleep(600L);
+        assertTrue(pool.getCorePoolSize() > 1);
+
+        // drain and let it shrink back
+        long start = System.currentTimeMillis();
+        while (pool.getCorePoolSize() > 1 && System.currentTimeMillis() - start < 10000L)
+            Thread.sleep(100L);
+        assertEquals(1, pool.getCorePoolSize());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("squid:S2925")
+public class TokenBucketTest {
+
+    @Test
+    void burst() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        for (int i = 0; i < 5; i++)
+            assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void fractionalRefill() throws Exception {
+        TokenBucket bucket = new TokenBucket(2.5, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(1, 300, TimeUnit.MILLISECONDS)); // next one is due in 400ms
+        assertTrue(bucket.tryAcquire(1, 500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void longTimeout() throws Exception {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        assertTrue(bucket.tryAcquire());
+        // the timeouts overflow once converted to ticks; the next permit is due in 50ms.
+        assertTrue(bucket.tryAcquire(1, Long.MAX_VALUE, TimeUnit.NANOSECONDS));
+        assertTrue(bucket.tryAcquire(1, Long.MAX_VALUE / 10, TimeUnit.NANOSECONDS));
+        assertTrue(bucket.tryAcquire(1, 365, TimeUnit.DAYS));
+    }
+
+    @Test
+    void accuracy() throws Exception {
+        double rate = 20000;
+        TokenBucket bucket = new TokenBucket(rate, 1);
+        AtomicLong acquired = new AtomicLong();
+        long duration = 2000L;
+        Thread[] threads = new Thread[4];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                long end = start + TimeUnit.MILLISECONDS.toNanos(duration);
+                try {
+                    while (System.nanoTime() < end) {
+                        bucket.acquire();
+                        acquired.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double achieved = acquired.get() / seconds;
+        System.out.println("configured " + rate + "/s achieved " + achieved + "/s");
+        assertEquals(rate, achieved, rate * 0.05);
+    }
+
+    @Test
+    void sharedAmongPools() throws Exception {
+        TokenBucket bucket = new TokenBucket(200, 1);
+        ThreadPool pool1 = ThreadPool.rateLimitedThreadPool("TokenBucketTest.pool1", 2, 2, 60, 1000, bucket);
+        ThreadPool pool2 = ThreadPool.rateLimitedThreadPool("TokenBucketTest.pool2", 2, 2, 60, 1000, bucket);
+        CountDownLatch latch = new CountDownLatch(200);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            pool1.execute(latch::countDown);
+            pool2.execute(latch::countDown);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 900L, "elapsed " + elapsed);
+        pool1.shutdown();
+        pool2.shutdown();
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000000, 1000);
+        int nThreads = 8;
+        long duration = 1000L;
+        AtomicLong granted = new AtomicLong();
+        AtomicLong attempts = new AtomicLong();
+        Thread[] threads = new Thread[nThreads];
+        long start = System.nanoTime();
+        for (int i = 0; i < nThreads; i++) {
+            threads[i] = new Thread(() -> {
+                long end = start + TimeUnit.MILLISECONDS.toNanos(duration);
+                long g = 0;
+                long a = 0;
+                while (System.nanoTime() < end) {
+                    a++;
+                    if (bucket.tryAcquire())
+                        g++;
+                }
+                granted.addAndGet(g);
+                attempts.addAndGet(a);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(nThreads + " threads tryAcquire " + (long) (attempts.get() / seconds) + " calls/s, granted "
+                + (long) (granted.get() / seconds) + " permits/s");
+        assertTrue(granted.get() / seconds <= 1000000 * 1.05 + 1000);
+    }
+}
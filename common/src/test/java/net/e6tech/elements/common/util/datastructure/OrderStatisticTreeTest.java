@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.datastructure;
+
+import net.e6tech.elements.common.Tags;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class OrderStatisticTreeTest {
+
+    @Test
+    void randomOperations() {
+        Random random = new Random(11);
+        OrderStatisticTree<Item> tree = new OrderStatisticTree<>();
+        List<Item> reference = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (reference.isEmpty() || random.nextInt(3) > 0) {
+                Item item = new Item(random.nextInt(200), i);
+                tree.add(item);
+                int index = Collections.binarySearch(reference, item, (a, b) -> a.compareTo(b) <= 0 ? -1 : 1);
+                reference.add(-index - 1, item);
+            } else {
+                Item item = reference.remove(random.nextInt(reference.size()));
+                assertTrue(tree.removeFirst(item));
+            }
+            if (i % 1000 == 0)
+                tree.check();
+        }
+        assertEquals(reference.size(), tree.size());
+        for (int i = 0; i < reference.size(); i++)
+            assertSame(reference.get(i), tree.get(i));
+        Iterator<Item> iterator = tree.iterator();
+        for (Item item : reference)
+            assertSame(item, iterator.next());
+        assertFalse(iterator.hasNext());
+
+        Item probe = new Item(100, -1);
+        int expected = 0;
+        while (expected < reference.size() && reference.get(expected).key < 100)
+            expected++;
+        assertEquals(expected, tree.rank(probe));
+        assertFalse(tree.removeFirst(probe));
+        assertEquals(-1, tree.indexOf(probe));
+        assertEquals(reference.indexOf(reference.get(expected)), tree.indexOf(reference.get(expected)));
+    }
+
+    @Test
+    void duplicates() {
+        OrderStatisticTree<Item> tree = new OrderStatisticTree<>();
+        Item a = new Item(1, 1);
+        Item b = new Item(1, 2);
+        tree.add(a);
+        tree.add(b);
+        tree.add(a);
+        assertSame(a, tree.get(0));
+        assertSame(b, tree.get(1));
+        assertTrue(tree.removeAll(a));
+        assertEquals(1, tree.size());
+        assertSame(b, tree.remove(0));
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * A sliding window as kept by Measurement: each step removes the oldest value, adds a new one and reads the
+     * median.  Compares a sorted ArrayList, which is how BinarySearchList used to be implemented, with
+     * OrderStatisticTree.
+     */
+    @Test
+    void benchmark() {
+        for (int size : new int[] {1000, 10000, 100000})
+            benchmark(size, Integer.getInteger("orderStatisticBenchmark", 100000));
+    }
+
+    private void benchmark(int size, int steps) {
+        Random random = new Random(size);
+        double[] values = new double[size + steps];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextInt(1000000);
+
+        for (int round = 0; round < 3; round++) {
+            List<Double> sorted = new ArrayList<>();
+            OrderStatisticTree<Double> tree = new OrderStatisticTree<>();
+            for (int i = 0; i < size; i++) {
+                insert(sorted, values[i]);
+                tree.add(values[i]);
+            }
+
+            double check = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                sorted.remove(Collections.binarySearch(sorted, values[i]));
+                insert(sorted, values[i + size]);
+                check += sorted.get(size / 2);
+            }
+            long list = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                tree.removeFirst(values[i]);
+                tree.add(values[i + size]);
+                check -= tree.get(size / 2);
+            }
+            long generic = System.nanoTime() - start;
+            assertEquals(sorted.get(size / 2), tree.get(size / 2));
+            System.out.println("window " + size + ": sorted list " + (list / steps) + "ns/step, tree " + (generic / steps)
+                    + "ns/step" + (check == 0 ? "" : " "));
+        }
+    }
+
+    private static void insert(List<Double> sorted, double value) {
+        int index = Collections.binarySearch(sorted, value);
+        sorted.add(index < 0 ? -index - 1 : index, value);
+    }
+
+    static class Item implements Comparable<Item> {
+        final double key;
+        final int id;
+
+        Item(double key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            return Double.compare(key, o.key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Item && ((Item) o).id == id && ((Item) o).key == key;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.file;
+
+import com.google.common.reflect.ClassPath;
+import net.e6tech.elements.common.Tags;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class ClassPathIndexTest {
+    private Path tmp;
+
+    @BeforeEach
+    void setup() throws IOException {
+        tmp = Files.createTempDirectory("classpath-index");
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> stream = Files.walk(tmp)) {
+            stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void listing() throws Exception {
+        Path dir = tmp.resolve("classes");
+        write(dir, "scripts/a.groovy", "scripts/b.txt", "scripts/sub/c.groovy", "scriptsX.groovy", "other/d.groovy", "scripts/E.class");
+        File jar = jar(tmp.resolve("lib.jar"), "scripts/j.groovy", "scripts/sub/k.groovy", "lib/l.groovy");
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL(), jar.toURI().toURL()}, null)) {
+            ClassPathIndex index = ClassPathIndex.of(loader);
+            assertSame(index, ClassPathIndex.of(loader));
+            assertEquals(Arrays.asList("scripts/a.groovy", "scripts/b.txt", "scripts/j.groovy", "scripts/sub/c.groovy", "scripts/sub/k.groovy"),
+                    index.list("scripts/", null, true));
+            assertEquals(Arrays.asList("scripts/a.groovy", "scripts/j.groovy"), index.list("scripts/", ".groovy", false));
+            assertEquals(Arrays.asList("scripts/a.groovy", "scripts/j.groovy", "scriptsX.groovy"), index.list("scripts", ".groovy", false));
+            assertEquals(7, index.listByExtension(".groovy").size());
+
+            // exploded directories are picked up as they change.
+            write(dir, "scripts/new.groovy");
+            bumpModified(dir.resolve("scripts"));
+            assertTrue(index.list("scripts/", ".groovy", false).contains("scripts/new.groovy"));
+            Files.delete(dir.resolve("scripts/sub/c.groovy"));
+            bumpModified(dir.resolve("scripts/sub"));
+            assertFalse(index.list("scripts/", null, true).contains("scripts/sub/c.groovy"));
+
+            String[] paths = FileUtil.listFiles(loader, "classpath://scripts/sub/*", ".groovy");
+            assertArrayEquals(new String[] {"classpath://scripts/sub/k.groovy"}, paths);
+        }
+    }
+
+    @Test
+    void persistedIndex() throws Exception {
+        Path dir = tmp.resolve("module");
+        write(dir, "scripts/a.groovy", "scripts/B.class");
+        ClassPathIndex.writeIndex(dir);
+        assertEquals(Arrays.asList("scripts/a.groovy"), Files.readAllLines(dir.resolve(ClassPathIndex.INDEX_FILE)));
+
+        // a jar whose index lists fewer entries than it has: the index wins.
+        Path jarFile = tmp.resolve("indexed.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarFile))) {
+            out.putNextEntry(new JarEntry(ClassPathIndex.INDEX_FILE));
+            out.write(Files.readAllBytes(dir.resolve(ClassPathIndex.INDEX_FILE)));
+            out.putNextEntry(new JarEntry("scripts/a.groovy"));
+            out.putNextEntry(new JarEntry("scripts/unlisted.groovy"));
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jarFile.toUri().toURL()}, null)) {
+            assertEquals(Arrays.asList("scripts/a.groovy"), ClassPathIndex.of(loader).list("scripts/", null, true));
+        }
+    }
+
+    @Test
+    void addedURLs() throws Exception {
+        File first = jar(tmp.resolve("first.jar"), "scripts/a.groovy");
+        File second = jar(tmp.resolve("second.jar"), "scripts/b.groovy");
+        try (Loader parent = new Loader(first);
+             URLClassLoader child = new URLClassLoader(new URL[0], parent)) {
+            assertEquals(Arrays.asList("scripts/a.groovy"), ClassPathIndex.of(child).list("scripts/", null, true));
+            parent.addURL(second.toURI().toURL());
+            assertEquals(Arrays.asList("scripts/a.groovy", "scripts/b.groovy"), ClassPathIndex.of(child).list("scripts/", null, true));
+            assertSame(ClassPathIndex.of(child), ClassPathIndex.of(child));
+        }
+    }
+
+    @Test
+    void symbolicLinkLoop() throws Exception {
+        Path dir = tmp.resolve("classes");
+        write(dir, "scripts/a.groovy", "scripts/sub/b.groovy");
+        Files.createSymbolicLink(dir.resolve("scripts/sub/loop"), dir.resolve("scripts"));
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, null)) {
+            assertEquals(Arrays.asList("scripts/a.groovy", "scripts/sub/b.groovy"),
+                    ClassPathIndex.of(loader).list("scripts/", ".groovy", true));
+        }
+    }
+
+    private static class Loader extends URLClassLoader {
+        Loader(File jar) throws IOException {
+            super(new URL[] {jar.toURI().toURL()}, null);
+        }
+
+        @Override
+        public void addURL(URL url) {
+            super.addURL(url);
+        }
+    }
+
+    /**
+     * Repeated listings of one directory on the test class path, as provisioning does, compared with scanning the
+     * class path for every call the way FileUtil used to once its cache expired.
+     */
+    @Test
+    void benchmark() throws Exception {
+        ClassLoader loader = getClass().getClassLoader();
+        int n = 20;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int scanned = 0;
+            for (int i = 0; i < n; i++) {
+                for (ClassPath.ResourceInfo info : ClassPath.from(loader).getResources())
+                    if (!(info instanceof ClassPath.ClassInfo) && info.getResourceName().startsWith("net/e6tech/elements/common/"))
+                        scanned++;
+            }
+            long scan = System.nanoTime() - start;
+
+            ClassPathIndex.invalidate(loader);
+            start = System.nanoTime();
+            ClassPathIndex index = ClassPathIndex.of(loader);
+            long build = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int listed = 0;
+            for (int i = 0; i < n; i++)
+                listed += index.list("net/e6tech/elements/common/", null, true).size();
+            long query = System.nanoTime() - start;
+            System.out.println("class path scan " + (scan / n / 1000) + "us/listing, index build " + (build / 1000)
+                    + "us, indexed " + (query / n / 1000) + "us/listing");
+            assertEquals(scanned, listed);
+        }
+    }
+
+    private static void write(Path root, String... names) throws IOException {
+        for (String name : names) {
+            Path path = root.resolve(name);
+            Files.createDirectories(path.getParent());
+            Files.write(path, name.getBytes());
+        }
+    }
+
+    private static File jar(Path path, String... names) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(path))) {
+            for (String name : names) {
+                out.putNextEntry(new JarEntry(name));
+                out.write(name.getBytes());
+            }
+        }
+        return path.toFile();
+    }
+
+    // file systems with coarse timestamps may not see a change made within the same second.
+    private static void bumpModified(Path dir) throws IOException {
+        FileTime time = Files.getLastModifiedTime(dir);
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(time.toMillis() + 2000));
+    }
+}
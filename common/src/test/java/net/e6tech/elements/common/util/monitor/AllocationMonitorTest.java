@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.monitor;
+
+import net.e6tech.elements.common.Tags;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class AllocationMonitorTest {
+
+    @Test
+    void deallocAndLeak() throws Exception {
+        AllocationMonitor monitor = new AllocationMonitor();
+        monitor.setName("AllocationMonitorTest");
+        monitor.setCheckInterval(50L);
+        monitor.setCaptureStackTrace(true);
+        AtomicInteger deallocated = new AtomicInteger();
+        AtomicInteger leaked = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++)
+            assertTrue(monitor.monitorDealloc(new byte[16], deallocated::incrementAndGet));
+        List<Object> held = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            StringBuilder obj = new StringBuilder();
+            held.add(obj);
+            monitor.monitorLeak(100L, obj, leaked::incrementAndGet);
+        }
+
+        waitFor(() -> {
+            System.gc();
+            return deallocated.get() == 100 && leaked.get() == 10;
+        });
+        assertEquals(0, monitor.getTracked());
+        assertEquals(100, monitor.getDeallocated());
+        assertEquals(10, monitor.getPotentialLeaks());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("net.e6tech.elements:type=AllocationMonitor,name=" + ObjectName.quote("AllocationMonitorTest"));
+        String[] suspects = (String[]) server.getAttribute(name, "LeakSuspects");
+        assertEquals(10, suspects.length);
+        assertTrue(suspects[0].startsWith(StringBuilder.class.getName()));
+        assertTrue(suspects[0].contains("deallocAndLeak"));
+        assertEquals(10L, monitor.getLeaksByClass().get(StringBuilder.class.getName()));
+        held.clear();
+
+        monitor.shutdown();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void sampling() {
+        AllocationMonitor monitor = new AllocationMonitor();
+        monitor.setSampleRate(100);
+        List<Object> held = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            Object obj = new Object();
+            held.add(obj);
+            monitor.monitorDealloc(obj, () -> {});
+        }
+        // about 1000 are tracked
+        assertTrue(monitor.getTracked() > 700 && monitor.getTracked() < 1300, "tracked " + monitor.getTracked());
+        assertEquals(monitor.getTracked(), monitor.getMonitored());
+        monitor.shutdown();
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        int threads = 4;
+        int n = 250000;
+        for (int rate : new int[] {1, 100}) {
+            AllocationMonitor monitor = new AllocationMonitor();
+            monitor.setSampleRate(rate);
+            for (int round = 0; round < 3; round++) {
+                Thread[] workers = new Thread[threads];
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    workers[t] = new Thread(() -> {
+                        for (int i = 0; i < n; i++)
+                            monitor.monitorDealloc(new Object(), () -> {});
+                    });
+                    workers[t].start();
+                }
+                for (Thread worker : workers)
+                    worker.join();
+                long elapsed = System.nanoTime() - start;
+                System.out.println("sample rate 1/" + rate + ", " + threads + " threads: " + (threads * n * 1000000000L / elapsed)
+                        + " allocations/s, tracked " + monitor.getTracked());
+            }
+            monitor.shutdown();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20L);
+        }
+    }
+}
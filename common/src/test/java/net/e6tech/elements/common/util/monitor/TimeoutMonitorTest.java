@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.monitor;
+
+import net.e6tech.elements.common.Tags;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tags.Common
+@SuppressWarnings("all") // this is a test.
+public class TimeoutMonitorTest {
+
+    @Test
+    void basic() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        monitor.setTimeout(100L);
+
+        Listener fired = new Listener(0L); // uses the monitor's default
+        Listener closed = new Listener(100L);
+        Listener cancelled = new Listener(100L);
+        Listener disabled = new Listener(-1L);
+        Listener extended = new Listener(100L);
+        monitor.monitor(fired);
+        monitor.monitor(closed);
+        TimeoutMonitor.Timeout handle = monitor.monitor(cancelled);
+        assertNull(monitor.monitor(disabled));
+        monitor.monitor(extended);
+        assertEquals(4, monitor.getPendingTimeouts());
+
+        assertTrue(handle.cancel());
+        assertFalse(handle.cancel());
+        closed.open = false;
+        extended.setTimeout(300L);
+
+        Thread.sleep(200L);
+        assertTrue(fired.fired.get() == 1);
+        assertEquals(0, closed.fired.get());
+        assertEquals(0, cancelled.fired.get());
+        assertEquals(0, extended.fired.get());
+        assertEquals(1, monitor.getPendingTimeouts());
+
+        Thread.sleep(200L);
+        assertEquals(1, extended.fired.get());
+        assertEquals(0, monitor.getPendingTimeouts());
+        monitor.stop();
+    }
+
+    @Test
+    void stop() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        Listener discarded = new Listener(100L);
+        TimeoutMonitor.Timeout handle = monitor.monitor(discarded);
+        long threads = wheelThreads();
+        monitor.stop();
+        assertEquals(threads - 1, wheelThreads());
+        assertEquals(0, monitor.getPendingTimeouts());
+        assertTrue(handle.isCancelled());
+
+        Listener fired = new Listener(50L);
+        monitor.monitor(fired);
+        Thread.sleep(200L);
+        assertEquals(0, discarded.fired.get());
+        assertEquals(1, fired.fired.get());
+        monitor.stop();
+    }
+
+    @Test
+    void cancelWhileRescheduling() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        CountDownLatch expiring = new CountDownLatch(1);
+        Listener extended = new Listener(50L) {
+            @Override
+            public boolean isOpen() {
+                if (expiring.getCount() > 0) {
+                    // holds the wheel thread between the expiry and the rescheduling of the extended timeout.
+                    expiring.countDown();
+                    sleep(100L);
+                }
+                return super.isOpen();
+            }
+        };
+        TimeoutMonitor.Timeout handle = monitor.monitor(extended);
+        extended.setTimeout(300L);
+        assertTrue(expiring.await(5, TimeUnit.SECONDS));
+        assertTrue(handle.cancel());
+        assertTrue(handle.isCancelled());
+        Thread.sleep(400L);
+        assertEquals(0, extended.fired.get());
+        assertEquals(0, monitor.getPendingTimeouts());
+        monitor.stop();
+    }
+
+    private static long wheelThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("TimeoutMonitor-")).count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void concurrentTimeouts() throws Exception {
+        int n = 100000;
+        long tick = 10L;
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        monitor.setTickDuration(tick);
+        Random random = new Random(1);
+        CountDownLatch latch = new CountDownLatch(n / 2);
+        Histogram lateness = new Histogram();
+        AtomicInteger early = new AtomicInteger();
+        Listener[] listeners = new Listener[n];
+        int threads = Thread.activeCount();
+
+        for (int i = 0; i < n; i++) {
+            long timeout = 200L + random.nextInt(2000);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            listeners[i] = new Listener(timeout) {
+                @Override
+                public void onTimeout() {
+                    super.onTimeout();
+                    long late = System.nanoTime() - deadline;
+                    if (late < 0)
+                        early.incrementAndGet();
+                    else
+                        lateness.record(late);
+                    latch.countDown();
+                }
+            };
+            TimeoutMonitor.Timeout handle = monitor.monitor(listeners[i]);
+            // half of the operations complete before their timeout.
+            if (i % 2 == 1)
+                handle.cancel();
+        }
+        assertTrue(Thread.activeCount() - threads <= 1, "threads " + (Thread.activeCount() - threads));
+        assertEquals(n / 2, monitor.getPendingTimeouts());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(3 * tick);
+        assertEquals(0, early.get());
+        for (int i = 0; i < n; i++)
+            assertEquals(i % 2 == 0 ? 1 : 0, listeners[i].fired.get());
+        assertEquals(0, monitor.getPendingTimeouts());
+        System.out.println(n + " timeouts, lateness p50 " + lateness.getPercentile(50) / 1000000 + "ms p99 "
+                + lateness.getPercentile(99) / 1000000 + "ms max " + lateness.getMax() / 1000000 + "ms");
+        assertTrue(lateness.getPercentile(99) < TimeUnit.MILLISECONDS.toNanos(100L));
+        monitor.stop();
+    }
+
+    static class Listener implements TimeoutListener {
+        volatile long timeout;
+        volatile boolean open = true;
+        AtomicInteger fired = new AtomicInteger();
+
+        Listener(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+
+        @Override
+        public long setTimeout(long timeout) {
+            long old = this.timeout;
+            this.timeout = timeout;
+            return old;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onTimeout() {
+            fired.incrementAndGet();
+        }
+    }
+}
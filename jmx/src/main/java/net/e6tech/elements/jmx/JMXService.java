@@ -36,6 +36,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
@@ -44,6 +45,8 @@ import java.util.function.Supplier;
 @SuppressWarnings("squid:S1191")
 public class JMXService {
     private static final Logger logger = Logger.getLogger();
+    // objects registered through this class so that their statistics can be read without going through the MBeanServer.
+    private static final Map<ObjectName, Object> registered = new ConcurrentHashMap<>();
 
     private JMXService() {
     }
@@ -140,6 +143,22 @@ public class JMXService {
                 server.registerMBean(mbean, objectName);
             else jmxServer.register(mbean, objectName, null, null, null);
         }
+        registered.put(objectName, mbean);
+    }
+
+    /**
+     * Returns the object registered under objectName through JMXService, e.g. a Measurement, so that it can be used
+     * directly instead of through MBeanServer calls.
+     * @param objectName name of the MBean
+     * @return the registered object or empty if the MBean was not registered through JMXService or is no longer registered.
+     */
+    public static Optional<Object> getRegistered(ObjectName objectName) {
+        Object mbean = registered.get(objectName);
+        if (mbean != null && !ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+            registered.remove(objectName, mbean);
+            mbean = null;
+        }
+        return Optional.ofNullable(mbean);
     }
 
     @SuppressWarnings("squid:S2095")
@@ -147,7 +166,9 @@ public class JMXService {
         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
         try {
             JmxServer jmxServer = new JmxServer(server);
-            jmxServer.unregister(new ObjectName(name));
+            ObjectName objectName = new ObjectName(name);
+            jmxServer.unregister(objectName);
+            registered.remove(objectName);
         } catch (Exception e) {
             logger.warn("Cannot register " + name + " as MBean", e);
         }
@@ -0,0 +1,451 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.jmx.metrics;
+
+import net.e6tech.elements.common.cache.CacheStatistics;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.concurrent.Histogram;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
+import net.e6tech.elements.jmx.JMXService;
+import net.e6tech.elements.jmx.stat.Measurement;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Renders statistics in the Prometheus text exposition format: Measurements, e.g. those of Restful endpoints and rules,
+ * cache statistics, thread pools and the numeric attributes of any other MBean in the net.e6tech.elements and
+ * net.e6tech domains.
+ *
+ * MBeans are queried once and then tracked through the registration notifications of the MBeanServer.  Each one is
+ * resolved into a handle on the object behind it, i.e. a Measurement registered through JMXService, a CacheStatistics
+ * or a ThreadPool, so that a scrape reads statistics with plain method calls.  MBeans that cannot be resolved fall back
+ * to a single getAttributes call per scrape, with the attribute names read once.  The rendered text is reused for
+ * cacheMillis so that several scrapers do not multiply the cost.
+ */
+public class MetricsExporter implements NotificationListener, AutoCloseable {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Logger logger = Logger.getLogger();
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+    private static final String GAUGE = "gauge";
+    private static final String COUNTER = "counter";
+    private static final String SUMMARY = "summary";
+
+    private final MBeanServer server;
+    private final List<ObjectName> patterns = new ArrayList<>();
+    private final Map<ObjectName, Handle> handles = new ConcurrentSkipListMap<>();
+    private final Set<ObjectName> pending = ConcurrentHashMap.newKeySet();
+    private long cacheMillis = 1000L;
+    private String last;
+    private long lastScrape;
+
+    public MetricsExporter() {
+        this(ManagementFactory.getPlatformMBeanServer(), "net.e6tech.elements:*", "net.e6tech:*");
+    }
+
+    public MetricsExporter(MBeanServer server, String... patterns) {
+        this.server = server;
+        try {
+            for (String pattern : patterns)
+                this.patterns.add(new ObjectName(pattern));
+            server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, null, null);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+        for (ObjectName pattern : this.patterns)
+            pending.addAll(server.queryNames(pattern, null));
+    }
+
+    public long getCacheMillis() {
+        return cacheMillis;
+    }
+
+    /**
+     * @param cacheMillis how long a rendered scrape is reused, 0 to render on every call.
+     */
+    public void setCacheMillis(long cacheMillis) {
+        this.cacheMillis = cacheMillis;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!(notification instanceof MBeanServerNotification))
+            return;
+        ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+        if (!matches(name))
+            return;
+        if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+            // resolved on the next scrape: the object is not yet known to JMXService or its owner while it is registering.
+            pending.add(name);
+        } else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+            pending.remove(name);
+            handles.remove(name);
+        }
+    }
+
+    private boolean matches(ObjectName name) {
+        for (ObjectName pattern : patterns)
+            if (pattern.apply(name))
+                return true;
+        return false;
+    }
+
+    public synchronized String scrape() {
+        long now = System.currentTimeMillis();
+        if (last != null && now - lastScrape < cacheMillis)
+            return last;
+
+        resolvePending();
+        Map<String, Family> families = new TreeMap<>();
+        for (Handle handle : handles.values()) {
+            try {
+                handle.collect(families);
+            } catch (Exception ex) {
+                logger.debug("Unable to collect metrics of " + handle.name, ex);
+            }
+        }
+        StringBuilder builder = new StringBuilder(families.size() * 256);
+        for (Family family : families.values())
+            family.writeTo(builder);
+        last = builder.toString();
+        lastScrape = now;
+        return last;
+    }
+
+    private void resolvePending() {
+        Iterator<ObjectName> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            ObjectName name = iterator.next();
+            iterator.remove();
+            try {
+                if (server.isRegistered(name))
+                    handles.put(name, resolve(name));
+            } catch (Exception ex) {
+                logger.debug("Unable to resolve metrics of " + name, ex);
+            }
+        }
+    }
+
+    private Handle resolve(ObjectName name) throws JMException {
+        String type = name.getKeyProperty("type");
+        Map<String, String> properties = new TreeMap<>();
+        for (Map.Entry<String, String> entry : name.getKeyPropertyList().entrySet()) {
+            if (!"type".equals(entry.getKey()))
+                properties.put(entry.getKey(), unquote(entry.getValue()));
+        }
+
+        Object instance = JMXService.getRegistered(name).orElse(null);
+        if (instance instanceof Measurement) {
+            Measurement measurement = (Measurement) instance;
+            if (type != null)
+                properties.put("type", type);
+            if (measurement.getUnit() != null)
+                properties.put("unit", measurement.getUnit());
+            return new MeasurementHandle(name, labels(properties), measurement);
+        }
+
+        if ("Cache".equals(type)) {
+            CacheStatistics statistics = CacheStatistics.find(properties.get("name"));
+            if (statistics != null)
+                return new CacheHandle(name, labels(properties), statistics);
+        } else if ("ThreadPool".equals(type)) {
+            ThreadPool pool = ThreadPool.find(String.valueOf(properties.get("kind")), properties.get("name"));
+            if (pool != null)
+                return new ThreadPoolHandle(name, labels(properties), pool);
+        }
+        return new AttributeHandle(name, labels(properties), type);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() > 1 && value.charAt(0) == '"') {
+            try {
+                return ObjectName.unquote(value);
+            } catch (IllegalArgumentException ex) {
+                Logger.suppress(ex);
+            }
+        }
+        return value;
+    }
+
+    private static String labels(Map<String, String> properties) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (builder.length() > 0)
+                builder.append(',');
+            builder.append(metricName(entry.getKey())).append("=\"");
+            String value = entry.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch == '\\' || ch == '"')
+                    builder.append('\\').append(ch);
+                else if (ch == '\n')
+                    builder.append("\\n");
+                else
+                    builder.append(ch);
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    /*
+     * camelCase to snake_case, anything outside of [a-zA-Z0-9_] becomes an underscore.
+     */
+    static String metricName(String name) {
+        StringBuilder builder = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (Character.isUpperCase(ch)) {
+                if (i > 0 && (Character.isLowerCase(name.charAt(i - 1)) || Character.isDigit(name.charAt(i - 1))))
+                    builder.append('_');
+                builder.append(Character.toLowerCase(ch));
+            } else if ((ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9' && i > 0) || ch == '_') {
+                builder.append(ch);
+            } else {
+                builder.append('_');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Family family(Map<String, Family> families, String name, String type, String help) {
+        return families.computeIfAbsent(name, n -> new Family(n, type, help));
+    }
+
+    private static void summary(Family family, String labels, Histogram histogram) {
+        long[] buckets = new long[Histogram.bucketCount()];
+        long total = histogram.addTo(buckets);
+        long max = histogram.getMax();
+        for (String quantile : QUANTILES)
+            family.quantile(labels, quantile,
+                    Histogram.percentile(buckets, total, Double.parseDouble(quantile) * 100.0, max) / NANOS_PER_MILLI);
+        family.sample("_sum", labels, histogram.getSum() / NANOS_PER_MILLI);
+        family.sample("_count", labels, total);
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+        } catch (JMException ex) {
+            Logger.suppress(ex);
+        }
+        handles.clear();
+        pending.clear();
+    }
+
+    private static class Family {
+        final String name;
+        final String type;
+        final String help;
+        final StringBuilder samples = new StringBuilder();
+
+        Family(String name, String type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+
+        Family sample(String labels, double value) {
+            return sample("", labels, value);
+        }
+
+        Family sample(String suffix, String labels, double value) {
+            samples.append(name).append(suffix);
+            if (!labels.isEmpty())
+                samples.append('{').append(labels).append('}');
+            samples.append(' ');
+            appendValue(value);
+            samples.append('\n');
+            return this;
+        }
+
+        Family quantile(String labels, String quantile, double value) {
+            samples.append(name).append('{').append(labels);
+            if (!labels.isEmpty())
+                samples.append(',');
+            samples.append("quantile=\"").append(quantile).append("\"} ");
+            appendValue(value);
+            samples.append('\n');
+            return this;
+        }
+
+        private void appendValue(double value) {
+            if (Double.isNaN(value))
+                samples.append("NaN");
+            else if (Double.isInfinite(value))
+                samples.append(value > 0 ? "+Inf" : "-Inf");
+            else if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                samples.append((long) value);
+            else
+                samples.append(value);
+        }
+
+        void writeTo(StringBuilder builder) {
+            builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            builder.append(samples);
+        }
+    }
+
+    private abstract static class Handle {
+        final ObjectName name;
+        final String labels;
+
+        Handle(ObjectName name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        abstract void collect(Map<String, Family> families) throws JMException;
+    }
+
+    private static class MeasurementHandle extends Handle {
+        final Measurement measurement;
+
+        MeasurementHandle(ObjectName name, String labels, Measurement measurement) {
+            super(name, labels);
+            this.measurement = measurement;
+        }
+
+        @Override
+        void collect(Map<String, Family> families) {
+            Measurement.Snapshot snapshot = measurement.snapshot();
+            // quantiles cover the window; count and sum are cumulative so that rate() and increase() work on them.
+            Family family = family(families, "elements_measurement", SUMMARY,
+                    "Values in the unit of the measurement: quantiles within the measurement window, count and sum since it was created.");
+            for (String quantile : QUANTILES)
+                family.quantile(labels, quantile, snapshot.getPercentile(Double.parseDouble(quantile) * 100.0));
+            family.sample("_sum", labels, measurement.getTotalSum());
+            family.sample("_count", labels, measurement.getTotal());
+            family(families, "elements_measurement_window_count", GAUGE, "Values added within the measurement window.")
+                    .sample(labels, snapshot.getCount());
+            family(families, "elements_measurement_max", GAUGE, "Largest value within the measurement window.")
+                    .sample(labels, snapshot.getMax());
+            family(families, "elements_measurement_rate", GAUGE, "Values added per second within the measurement window.")
+                    .sample(labels, snapshot.getRate());
+            family(families, "elements_measurement_failures", GAUGE, "Failures within the measurement window.")
+                    .sample(labels, snapshot.getFailures());
+        }
+    }
+
+    private static class CacheHandle extends Handle {
+        final CacheStatistics statistics;
+
+        CacheHandle(ObjectName name, String labels, CacheStatistics statistics) {
+            super(name, labels);
+            this.statistics = statistics;
+        }
+
+        @Override
+        void collect(Map<String, Family> families) {
+            family(families, "elements_cache_hits_total", COUNTER, "Cache hits.").sample(labels, statistics.getHits());
+            family(families, "elements_cache_misses_total", COUNTER, "Cache misses.").sample(labels, statistics.getMisses());
+            family(families, "elements_cache_load_failures_total", COUNTER, "Failed loads.").sample(labels, statistics.getLoadFailures());
+            family(families, "elements_cache_evictions_total", COUNTER, "Entries evicted.").sample(labels, statistics.getEvictions());
+            family(families, "elements_cache_expirations_total", COUNTER, "Entries expired.").sample(labels, statistics.getExpirations());
+            long entries = statistics.getEntryCount();
+            if (entries >= 0)
+                family(families, "elements_cache_entries", GAUGE, "Entries in the cache.").sample(labels, entries);
+            long size = statistics.getEstimatedSize();
+            if (size >= 0)
+                family(families, "elements_cache_size_bytes", GAUGE, "Estimated size of the cache.").sample(labels, size);
+            summary(family(families, "elements_cache_load_milliseconds", SUMMARY, "Time spent loading entries."),
+                    labels, statistics.loadTime());
+        }
+    }
+
+    private static class ThreadPoolHandle extends Handle {
+        final ThreadPool pool;
+
+        ThreadPoolHandle(ObjectName name, String labels, ThreadPool pool) {
+            super(name, labels);
+            this.pool = pool;
+        }
+
+        @Override
+        void collect(Map<String, Family> families) {
+            family(families, "elements_threadpool_queue_depth", GAUGE, "Tasks waiting in the queue.").sample(labels, pool.getQueueDepth());
+            family(families, "elements_threadpool_active_threads", GAUGE, "Threads executing tasks.").sample(labels, pool.getActiveCount());
+            family(families, "elements_threadpool_pool_size", GAUGE, "Threads in the pool.").sample(labels, pool.getPoolSize());
+            family(families, "elements_threadpool_core_pool_size", GAUGE, "Core threads.").sample(labels, pool.getCorePoolSize());
+            family(families, "elements_threadpool_maximum_pool_size", GAUGE, "Maximum threads.").sample(labels, pool.getMaximumPoolSize());
+            family(families, "elements_threadpool_tasks_total", COUNTER, "Tasks submitted.").sample(labels, pool.getTaskCount());
+            family(families, "elements_threadpool_completed_tasks_total", COUNTER, "Tasks completed.").sample(labels, pool.getCompletedTaskCount());
+            family(families, "elements_threadpool_rejected_tasks_total", COUNTER, "Tasks rejected.").sample(labels, pool.getRejectedCount());
+            Histogram waitTime = pool.waitTime();
+            if (waitTime != null)
+                summary(family(families, "elements_threadpool_wait_milliseconds", SUMMARY, "Time tasks spent in the queue."), labels, waitTime);
+            Histogram executionTime = pool.executionTime();
+            if (executionTime != null)
+                summary(family(families, "elements_threadpool_execution_milliseconds", SUMMARY, "Time spent executing tasks."), labels, executionTime);
+        }
+    }
+
+    private class AttributeHandle extends Handle {
+        final String prefix;
+        final String type;
+        final String[] attributes;
+        final Map<String, String> metricNames = new HashMap<>();
+
+        AttributeHandle(ObjectName name, String labels, String type) throws JMException {
+            super(name, labels);
+            this.type = type == null ? name.getDomain() : type;
+            this.prefix = "elements_" + metricName(this.type) + "_";
+            List<String> list = new ArrayList<>();
+            for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+                if (info.isReadable() && numeric(info.getType()))
+                    list.add(info.getName());
+            }
+            attributes = list.toArray(new String[0]);
+            for (String attribute : attributes)
+                metricNames.put(attribute, prefix + metricName(attribute));
+        }
+
+        private boolean numeric(String className) {
+            switch (className) {
+                case "int": case "long": case "double": case "float": case "short": case "byte": case "boolean":
+                case "java.lang.Integer": case "java.lang.Long": case "java.lang.Double": case "java.lang.Float":
+                case "java.lang.Short": case "java.lang.Byte": case "java.lang.Boolean":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        void collect(Map<String, Family> families) throws JMException {
+            if (attributes.length == 0)
+                return;
+            for (Attribute attribute : server.getAttributes(name, attributes).asList()) {
+                Object value = attribute.getValue();
+                double number;
+                if (value instanceof Number)
+                    number = ((Number) value).doubleValue();
+                else if (value instanceof Boolean)
+                    number = ((Boolean) value) ? 1 : 0;
+                else
+                    continue;
+                family(families, metricNames.get(attribute.getName()), GAUGE, attribute.getName() + " of " + type + ".").sample(labels, number);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.jmx.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.resources.Startable;
+import net.e6tech.elements.common.util.SystemException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of a MetricsExporter over HTTP, by default at http://localhost:9400/metrics, for Prometheus
+ * and similar scrapers.  It is a lightweight alternative to JMXHtmlServer, which renders MBeans on demand through
+ * full JMX queries.
+ */
+@SuppressWarnings("squid:S1191")
+public class MetricsServer implements Startable {
+    private static final Logger logger = Logger.getLogger();
+
+    private InetAddress bindAddress = InetAddress.getLoopbackAddress();
+    private int port = 9400;
+    private String path = "/metrics";
+    private MetricsExporter exporter;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    public InetAddress getBindAddress() {
+        return bindAddress;
+    }
+
+    public void setBindAddress(InetAddress bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port port to listen on, 0 for any free port; see getLocalPort.
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public MetricsExporter getExporter() {
+        return exporter;
+    }
+
+    public void setExporter(MetricsExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public synchronized int getLocalPort() {
+        return httpServer == null ? -1 : httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (httpServer != null)
+            return;
+        if (exporter == null)
+            exporter = new MetricsExporter();
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricsServer-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext(path, this::handle);
+        httpServer.start();
+    }
+
+    public synchronized void stop() {
+        if (httpServer == null)
+            return;
+        httpServer.stop(0);
+        executor.shutdown();
+        httpServer = null;
+        executor = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = exporter.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MetricsExporter.CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Unable to serve metrics", ex);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -16,35 +16,42 @@ limitations under the License.
 
 package net.e6tech.elements.jmx.stat;
 
-import net.e6tech.elements.common.util.datastructure.BinarySearchList;
+import net.e6tech.elements.common.util.concurrent.Histogram;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
  * Created by futeh.
+ *
+ * Keeps statistics of the values added within a rolling window, windowWidth milliseconds by default 5 minutes.
+ * The window is divided into SLICES time slices; a slice is replaced when the clock moves past it, so the window
+ * covers between 9/10 and all of windowWidth.  Each slice has a few striped histograms, picked by thread, so that
+ * concurrent add calls do not contend and memory does not grow with the request rate.
+ *
+ * Values are recorded in thousandths of the unit.  Percentiles are accurate to within about 6% (see Histogram);
+ * count, sum, average and standard deviation are exact.  Values are expected to be non-negative: a negative value
+ * counts as 0 for percentiles and max, while sum, average and standard deviation use it as is.
  */
-@SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S00116", "squid:S00117"})
+@SuppressWarnings({"squid:S00116", "squid:S00117"})
 public class Measurement implements Serializable, MeasurementMXBean {
 
-    private static final long serialVersionUID = -5888966219198957050L;
+    private static final long serialVersionUID = -1114124742309697276L;
+    public static final int SLICES = 10;
+    private static final double RESOLUTION = 1000.0;
+    private static final int STRIPES = stripes();
+
     private String name;
     private String unit;
-    private long count = 0;
-    private long total = 0;
-    private double average = 0.0;
-    private double median = 0.0;
-    private double sum =0.0;
-    private double sum_x_2 = 0.0;  //i.e. sum of x^2, which is not sum^2!!!
-    private double stdDev = 0.0;
-    private long windowWidth = 300000l;  // default is 5 minutes
-    private int windowMaxCount = Integer.MAX_VALUE;     // limits the total number of samples in the window
-    private boolean dirty = false;
-    private boolean enabled = true;
-    protected transient LinkedList<DataPoint> sortedByTime = new LinkedList<>(); // sorted by timestamp
-    protected transient LinkedList<Long> failures = new LinkedList<>();
-    protected transient BinarySearchList<DataPoint> sortedByValue = new BinarySearchList<>(); // sorted by value
+    private long windowWidth = 300000L;  // default is 5 minutes
+    private int windowMaxCount = Integer.MAX_VALUE;
+    private volatile boolean enabled = true;
+    private final LongAdder total = new LongAdder();
+    private final DoubleAdder totalSum = new DoubleAdder();
+    private transient volatile Window window = new Window(windowWidth);
 
     public Measurement() {}
 
@@ -58,6 +65,11 @@ public class Measurement implements Serializable, MeasurementMXBean {
         this.enabled = enabled;
     }
 
+    private static int stripes() {
+        int cpus = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+        return Integer.highestOneBit(cpus) < cpus ? Integer.highestOneBit(cpus) << 1 : cpus;
+    }
+
     public String getName() {
         return name;
     }
@@ -76,59 +88,91 @@ public class Measurement implements Serializable, MeasurementMXBean {
     }
 
     public long getTotal() {
-        return total;
+        return total.sum();
+    }
+
+    public double getTotalSum() {
+        return totalSum.sum();
     }
 
     public long getCount() {
-        if (dirty)
-            recalculate();
-        return count;
+        return snapshot().count;
     }
 
     public double getAverage() {
-        if (dirty)
-            recalculate();
-        return average;
+        return snapshot().average();
     }
 
     public double getMedian() {
-        if (dirty)
-            recalculate();
-        return median;
+        return snapshot().percentile(50.0);
+    }
+
+    public double getPercentile50() {
+        return getMedian();
+    }
+
+    public double getPercentile90() {
+        return snapshot().percentile(90.0);
+    }
+
+    public double getPercentile99() {
+        return snapshot().percentile(99.0);
+    }
+
+    public double getPercentile999() {
+        return snapshot().percentile(99.9);
+    }
+
+    public double getMax() {
+        return snapshot().max / RESOLUTION;
     }
 
     public double getSum() {
-        if (dirty)
-            recalculate();
-        return sum;
+        return snapshot().sum;
     }
 
     public double getStdDev() {
-        if (dirty)
-            recalculate();
-        return stdDev;
+        return snapshot().stdDev();
+    }
+
+    public double getRate() {
+        return snapshot().rate();
+    }
+
+    public double getFailureRatio() {
+        return snapshot().failureRatio();
     }
 
     public long getWindowWidth() {
         return windowWidth;
     }
 
+    /**
+     * Changing the window width discards the values in the window.
+     */
     public void setWindowWidth(long windowWidth) {
         this.windowWidth = windowWidth;
+        this.window = new Window(windowWidth);
     }
 
+    /**
+     * @deprecated memory no longer depends on the number of values in the window; the value is ignored.
+     */
+    @Deprecated
     public int getWindowMaxCount() {
         return windowMaxCount;
     }
 
+    /**
+     * @deprecated memory no longer depends on the number of values in the window; the value is ignored.
+     */
+    @Deprecated
     public void setWindowMaxCount(int windowMaxCount) {
         this.windowMaxCount = windowMaxCount;
     }
 
     public long getFailureCount() {
-        if (dirty)
-            recalculate();
-        return failures.size();
+        return snapshot().failures;
     }
 
     public boolean isEnabled() {
@@ -139,20 +183,22 @@ public class Measurement implements Serializable, MeasurementMXBean {
         this.enabled = enabled;
     }
 
-    public synchronized void fail() {
+    public void fail() {
         if (!isEnabled())
             return;
-        failures.add(System.currentTimeMillis());
-        dirty = true;
-        trimFailures();
+        window.slice(System.currentTimeMillis()).failures.increment();
     }
 
     /**
      * This method is needed to JMX
-     * @param value a measurement
+     * @param value a measurement, non-negative; see the class comment.
      */
-    public synchronized void add(double value) {
-        add(new DataPoint(System.currentTimeMillis(), value));
+    public void add(double value) {
+        if (!isEnabled())
+            return;
+        total.increment();
+        totalSum.add(value);
+        window.slice(System.currentTimeMillis()).stripe().record(value);
     }
 
     public Measurement append(double value) {
@@ -160,117 +206,202 @@ public class Measurement implements Serializable, MeasurementMXBean {
         return this;
     }
 
-    synchronized void recalculate() {
-        trimFailures();
-        trimData();
-
-        count = sortedByTime.size();
-
-        // calculating average and median
-        if (count == 0) {
-            average = 0.0;
-            median = 0.0;
-        } else {
-            average = sum / count;
-            int index = (int) count / 2;
-            if (count == 2 * index) {
-                DataPoint dp1 = sortedByValue.get(index);
-                DataPoint dp2 =  sortedByValue.get(index - 1);
-                median = (dp1.getValue() + dp2.getValue()) / 2f;
-            } else {
-                median = (sortedByValue.get(index)).getValue();
-            }
+    /**
+     * Aggregates the window once so that several statistics can be read consistently, e.g. by a metrics exporter,
+     * without walking the slices for each of them.
+     */
+    public Snapshot snapshot() {
+        return window.snapshot(System.currentTimeMillis());
+    }
+
+    public String dump() {
+        Snapshot snapshot = snapshot();
+        StringBuilder builder = new StringBuilder();
+        builder.append("count=").append(snapshot.count).append(' ');
+        builder.append("p50=").append(snapshot.percentile(50.0)).append(' ');
+        builder.append("p90=").append(snapshot.percentile(90.0)).append(' ');
+        builder.append("p99=").append(snapshot.percentile(99.0)).append(' ');
+        builder.append("p99.9=").append(snapshot.percentile(99.9)).append(' ');
+        builder.append("max=").append(snapshot.max / RESOLUTION).append(' ');
+        builder.append("rate=").append(snapshot.rate()).append("/s");
+        return builder.toString();
+    }
+
+    public String toString() {
+        Snapshot snapshot = snapshot();
+        StringBuilder builder = new StringBuilder();
+        builder.append("count=" + snapshot.count + " ");
+        builder.append("average=" + snapshot.average() + " ");
+        builder.append("stddev=" + snapshot.stdDev() + " ");
+        builder.append("median=" + snapshot.percentile(50.0) + " ");
+        builder.append("p99=" + snapshot.percentile(99.0) + " ");
+        builder.append("failureCount=" + snapshot.failures + " ");
+        builder.append("windowWidth=" + windowWidth + " ");
+        return builder.toString();
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        window = new Window(windowWidth);
+    }
+
+    private static class Window {
+        final long sliceWidth;
+        final long created = System.currentTimeMillis();
+        final AtomicReferenceArray<Slice> slices = new AtomicReferenceArray<>(SLICES);
+
+        Window(long windowWidth) {
+            sliceWidth = Math.max(1L, windowWidth / SLICES);
         }
 
-        // Sample standard deviation
-        if (count > 1) {
-            double n_ave_2 = count * average * average;
-            double var = (sum_x_2 - n_ave_2) / (double)(count - 1);
-            stdDev = Math.sqrt(var);
-        } else {
-            stdDev = 0.0;
+        Slice slice(long now) {
+            long epoch = now / sliceWidth;
+            int index = (int) (epoch % SLICES);
+            Slice slice = slices.get(index);
+            while (slice == null || slice.epoch < epoch) {
+                Slice fresh = new Slice(epoch);
+                if (slices.compareAndSet(index, slice, fresh))
+                    return fresh;
+                slice = slices.get(index);
+            }
+            return slice;
         }
 
-        dirty = false;
+        Snapshot snapshot(long now) {
+            long epoch = now / sliceWidth;
+            Snapshot snapshot = new Snapshot();
+            for (int i = 0; i < SLICES; i++) {
+                Slice slice = slices.get(i);
+                if (slice == null || slice.epoch <= epoch - SLICES)
+                    continue;
+                snapshot.failures += slice.failures.sum();
+                for (int s = 0; s < STRIPES; s++) {
+                    Stripe stripe = slice.stripes.get(s);
+                    if (stripe != null)
+                        stripe.addTo(snapshot);
+                }
+            }
+            // the live slices span from the start of the oldest one to now.
+            long covered = Math.min(now - created, (SLICES - 1) * sliceWidth + now % sliceWidth);
+            snapshot.seconds = Math.max(covered, 1L) / 1000.0;
+            return snapshot;
+        }
     }
 
-    private synchronized void add(DataPoint dp) {
-        if (!isEnabled())
-            return;
-        total ++;
-        sortedByTime.add(dp);
-        sortedByValue.add(dp);
+    private static class Slice {
+        final long epoch;
+        final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+        final LongAdder failures = new LongAdder();
+
+        Slice(long epoch) {
+            this.epoch = epoch;
+        }
 
-        double value = dp.getValue();
-        sum += value;
-        sum_x_2 += (value * value);
-        dirty = true;
-        trimData();
+        Stripe stripe() {
+            int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            Stripe stripe = stripes.get(index);
+            if (stripe == null) {
+                stripes.compareAndSet(index, null, new Stripe());
+                stripe = stripes.get(index);
+            }
+            return stripe;
+        }
     }
 
-    private synchronized void trimData() {
-        long expire = System.currentTimeMillis() - windowWidth;
-        while (!sortedByTime.isEmpty() && sortedByTime.getFirst().getTimestamp() < expire) {
-            remove();
+    private static class Stripe {
+        final Histogram histogram = new Histogram();
+        final DoubleAdder sum = new DoubleAdder();
+        final DoubleAdder sumOfSquares = new DoubleAdder();
+
+        void record(double value) {
+            histogram.record(Math.round(value * RESOLUTION));
+            sum.add(value);
+            sumOfSquares.add(value * value);
         }
 
-        while (sortedByTime.size() > windowMaxCount) {
-            remove();
+        void addTo(Snapshot snapshot) {
+            snapshot.count += histogram.addTo(snapshot.buckets);
+            snapshot.max = Math.max(snapshot.max, histogram.getMax());
+            snapshot.sum += sum.sum();
+            snapshot.sumOfSquares += sumOfSquares.sum();
         }
     }
 
-    private synchronized void trimFailures() {
-        long expire = System.currentTimeMillis() - windowWidth;
-        while (!failures.isEmpty() && failures.getFirst() < expire) {
-            failures.remove();
+    /**
+     * Statistics of the values in the window at the time the snapshot was taken.
+     */
+    public static class Snapshot {
+        final long[] buckets = new long[Histogram.bucketCount()];
+        long count;
+        long max;
+        long failures;
+        double sum;
+        double sumOfSquares;
+        double seconds;
+
+        Snapshot() {
         }
 
-        while (failures.size() > windowMaxCount) {
-            failures.remove();
+        public long getCount() {
+            return count;
         }
-    }
 
-    DataPoint remove() {
-        if (!sortedByTime.isEmpty()) {
-            DataPoint dp = sortedByTime.removeFirst();
-            sortedByValue.removeFirst(dp);
-            double removed = dp.getValue();
-            sum -= removed;
-            sum_x_2 = sum_x_2 - (removed * removed);
-            dirty = true;
-            return dp;
+        public long getFailures() {
+            return failures;
         }
-        return null;
-    }
 
-    public String dump() {
+        public double getSum() {
+            return sum;
+        }
 
-        StringBuilder builder = new StringBuilder();
-        builder.append("count=" + sortedByValue.size() + " ");
-        boolean first = true;
-        for (DataPoint dp : sortedByTime) {
-            if (first)
-                first = false;
-            else
-                builder.append(',');
-            builder.append('[').append(dp.getTimestamp())
-                    .append(",")
-                    .append(dp.getValue())
-                    .append(']');
+        public double getMax() {
+            return max / RESOLUTION;
         }
-        return builder.toString();
-    }
 
-    public String toString() {
-        if (dirty)
-            recalculate();
+        public double getAverage() {
+            return average();
+        }
 
-        StringBuilder builder = new StringBuilder();
-        builder.append("count=" + count + " ");
-        builder.append("average=" + average + " ");
-        builder.append("stddev=" + stdDev + " ");
-        builder.append("failureCount=" + failures.size() + " ");
-        builder.append("windowWidth=" + windowWidth + " ");
-        return builder.toString();
+        public double getStdDev() {
+            return stdDev();
+        }
+
+        public double getPercentile(double percentile) {
+            return percentile(percentile);
+        }
+
+        public double getRate() {
+            return rate();
+        }
+
+        public double getFailureRatio() {
+            return failureRatio();
+        }
+
+        double average() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        double stdDev() {
+            // Sample standard deviation
+            if (count < 2)
+                return 0.0;
+            double average = average();
+            double var = (sumOfSquares - count * average * average) / (count - 1);
+            return var > 0 ? Math.sqrt(var) : 0.0;
+        }
+
+        double percentile(double percentile) {
+            return Histogram.percentile(buckets, count, percentile, max) / RESOLUTION;
+        }
+
+        double rate() {
+            return count / seconds;
+        }
+
+        double failureRatio() {
+            long attempts = count + failures;
+            return attempts == 0 ? 0.0 : (double) failures / attempts;
+        }
     }
 }
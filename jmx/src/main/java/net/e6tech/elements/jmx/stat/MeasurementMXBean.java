@@ -26,6 +26,9 @@ public interface MeasurementMXBean {
 
     long getTotal();
 
+    /* Sum of the values added since the measurement was created. */
+    double getTotalSum();
+
     long getCount();
 
     double getAverage();
@@ -36,6 +39,22 @@ public interface MeasurementMXBean {
 
     double getStdDev();
 
+    double getPercentile50();
+
+    double getPercentile90();
+
+    double getPercentile99();
+
+    double getPercentile999();
+
+    double getMax();
+
+    /* Values added per second within the window. */
+    double getRate();
+
+    /* Failures over failures plus values added within the window. */
+    double getFailureRatio();
+
     /* The window size determines the length of window in millisecond within which data points are kept. */
     long getWindowWidth();
 
@@ -0,0 +1,156 @@
+/*
+Copyright 2015-2019 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.jmx.metrics;
+
+import net.e6tech.elements.common.cache.CacheStatistics;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
+import net.e6tech.elements.jmx.JMXService;
+import net.e6tech.elements.jmx.stat.Measurement;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsExporterTest {
+
+    @Test
+    void exposition() throws Exception {
+        try (MetricsExporter exporter = new MetricsExporter()) {
+            exporter.setCacheMillis(0);
+            Measurement measurement = new Measurement("sayHi", "ms", true);
+            JMXService.registerMBean(measurement, "net.e6tech:type=Restful,name=Hello.sayHi|String");
+            for (int i = 1; i <= 100; i++)
+                measurement.add(i);
+            measurement.fail();
+
+            CacheStatistics cache = CacheStatistics.of("metrics\"Test");
+            cache.hit();
+            cache.hit();
+            cache.miss();
+            cache.loaded(2000000L);
+
+            ThreadPool pool = ThreadPool.fixedThreadPool("metricsTest", 1);
+            pool.submit(() -> { }).get();
+
+            String text = exporter.scrape();
+            String labels = "name=\"Hello.sayHi|String\",type=\"Restful\",unit=\"ms\"";
+            assertTrue(text.contains("# TYPE elements_measurement summary\n"), text);
+            assertTrue(text.contains("elements_measurement_count{" + labels + "} 100\n"), text);
+            assertTrue(text.contains("elements_measurement_sum{" + labels + "} 5050\n"), text);
+            assertTrue(text.contains("elements_measurement{" + labels + ",quantile=\"0.5\"} "), text);
+            assertTrue(text.contains("elements_measurement_failures{" + labels + "} 1\n"), text);
+            assertTrue(text.contains("elements_measurement_window_count{" + labels + "} 100\n"), text);
+            assertTrue(text.contains("elements_cache_hits_total{name=\"metrics\\\"Test\"} 2\n"), text);
+            assertTrue(text.contains("elements_cache_load_milliseconds_count{name=\"metrics\\\"Test\"} 1\n"), text);
+            // the pool counts a task completed only after get() returns, so check the submitted count.
+            assertTrue(text.contains("elements_threadpool_tasks_total{kind=\"fixed\",name=\"metricsTest\"} 1\n"), text);
+            // every family is declared once, before its samples.
+            assertEquals(text.indexOf("# TYPE elements_measurement_max "), text.lastIndexOf("# TYPE elements_measurement_max "));
+
+            // handles are kept: new values show up without resolving again, unregistered MBeans disappear.
+            measurement.add(1);
+            assertTrue(exporter.scrape().contains("elements_measurement_count{" + labels + "} 101\n"));
+            // count and sum do not drop when values leave the window.
+            measurement.setWindowWidth(10);
+            Thread.sleep(20);
+            text = exporter.scrape();
+            assertTrue(text.contains("elements_measurement_count{" + labels + "} 101\n"), text);
+            assertTrue(text.contains("elements_measurement_sum{" + labels + "} 5051\n"), text);
+            assertTrue(text.contains("elements_measurement_window_count{" + labels + "} 0\n"), text);
+            JMXService.unregisterMBean("net.e6tech:type=Restful,name=Hello.sayHi|String");
+            assertFalse(exporter.scrape().contains("Hello.sayHi"));
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void server() throws Exception {
+        Measurement measurement = new Measurement("served", "ms", true);
+        JMXService.registerMBean(measurement, "net.e6tech:type=Restful,name=served");
+        measurement.add(3);
+        MetricsServer server = new MetricsServer();
+        server.setPort(0);
+        server.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getLocalPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsExporter.CONTENT_TYPE, connection.getContentType());
+            String text = read(connection.getInputStream());
+            assertTrue(text.contains("elements_measurement_count{name=\"served\",type=\"Restful\",unit=\"ms\"} 1\n"), text);
+        } finally {
+            server.stop();
+            server.getExporter().close();
+            JMXService.unregisterMBean("net.e6tech:type=Restful,name=served");
+        }
+    }
+
+    /**
+     * Scrape cost with a few hundred endpoints, each with a full window, compared with reading the same attributes
+     * through MBeanServer.getAttribute, the way a JMX based exporter does.
+     */
+    @Test
+    void benchmark() throws Exception {
+        int endpoints = 300;
+        String[] attributes = {"Count", "Sum", "Percentile50", "Percentile90", "Percentile99", "Percentile999", "Max", "Rate", "FailureCount", "Total"};
+        ObjectName[] names = new ObjectName[endpoints];
+        for (int i = 0; i < endpoints; i++) {
+            Measurement measurement = new Measurement("endpoint" + i, "ms", true);
+            for (int j = 0; j < 1000; j++)
+                measurement.add(j % 97);
+            names[i] = new ObjectName("net.e6tech:type=Restful,name=benchmark" + i);
+            JMXService.registerMBean(measurement, names[i].getCanonicalName());
+        }
+        try (MetricsExporter exporter = new MetricsExporter()) {
+            exporter.setCacheMillis(0);
+            int size = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                size = exporter.scrape().length();
+                long scrape = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (ObjectName name : names)
+                    for (String attribute : attributes)
+                        ManagementFactory.getPlatformMBeanServer().getAttribute(name, attribute);
+                long jmx = System.nanoTime() - start;
+                System.out.println(endpoints + " endpoints: scrape " + (scrape / 1000) + "us (" + size + " bytes), MBeanServer.getAttribute " + (jmx / 1000) + "us");
+            }
+            assertTrue(size > 0);
+        } finally {
+            for (ObjectName name : names)
+                JMXService.unregisterMBean(name.getCanonicalName());
+        }
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -16,10 +16,16 @@ limitations under the License.
 
 package net.e6tech.elements.jmx.stat;
 
+import net.e6tech.elements.common.util.datastructure.OrderStatisticTree;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.DoubleConsumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -48,101 +54,136 @@ public class MeasurementTest {
     public void basic() {
         Measurement m = new Measurement();
         m.append(3.0).append(3.0).append(4.0).append(4.0).append(5.0).append(5.5).append(6.0);
-        // check sortedByValue is indeed sorted
-        m.sortedByValue.check();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.sortedByValue.check();
-
-        // check sortedByValue is indeed sorted after remove
-        m.append(3.0).append(4.0).append(5.0).append(6.0).append(8.0).append(8.0).append(6.5)
-                .append(8.0).append(4.5).append(5.0).append(3.0).append(4.3);
-        m.sortedByValue.check();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.remove();
-        m.sortedByValue.check();
-
-        for (int count = 1; count < 1000; count ++) {
+        assertEquals(7, m.getCount());
+        assertEquals(4.0, m.getMedian(), 4.0 * 0.07);
+        assertEquals(6.0, m.getMax(), 0.0);
+        m.fail();
+        assertEquals(1, m.getFailureCount());
+        assertEquals(1.0 / 8, m.getFailureRatio(), 1e-9);
+
+        for (int count = 1; count < 1000; count += 37) {
             m = new Measurement();
-            Random random = new Random();
+            Random random = new Random(count);
+            double[] values = new double[count];
             for (int i = 0; i < count; i++) {
-                double data = random.nextInt(100);
-                m.append(data);
+                values[i] = random.nextInt(100);
+                m.append(values[i]);
             }
-            m.sortedByValue.check();
-            if (m.sortedByValue.size() != m.getCount()) {
-                throw new IllegalStateException();
-            }
-
             double sum = 0.0;
-            double sum_2 = 0.0;
-            for (Comparable c : m.sortedByValue) {
-                DataPoint dp = (DataPoint) c;
-                sum += dp.getValue();
-                sum_2 += dp.getValue() * dp.getValue();
-            }
-
-            double average = sum / m.sortedByValue.size();
+            for (double value : values)
+                sum += value;
+            double average = sum / count;
             double var = 0.0;
-            for (Comparable c : m.sortedByValue) {
-                DataPoint dp = (DataPoint) c;
-                double v = dp.getValue() - average;
-                var += v * v;
-            }
-            double stddev = Math.sqrt(var / (m.sortedByValue.size() - 1));
-            if ((average - m.getAverage()) * (average - m.getAverage()) >
-                    0.0001f * (average + m.getAverage()) * (average + m.getAverage()) / 4f) {
-                throw new IllegalStateException();
-            }
-            if ((sum - m.getSum()) * (sum - m.getSum()) > 0.0001f * (sum + m.getSum()) * (sum + m.getSum()) / 4f) {
-                throw new IllegalStateException();
-            }
-            if ((stddev - m.getStdDev()) * (stddev - m.getStdDev()) > 0.0001f * (stddev + m.getStdDev()) * (stddev + m.getStdDev()) / 4f) {
-                throw new IllegalStateException();
+            for (double value : values)
+                var += (value - average) * (value - average);
+            double stddev = count > 1 ? Math.sqrt(var / (count - 1)) : 0.0;
+
+            assertEquals(count, m.getCount());
+            assertEquals(count, m.getTotal());
+            assertEquals(sum, m.getTotalSum(), 1e-6);
+            assertEquals(sum, m.getSum(), 1e-6);
+            assertEquals(average, m.getAverage(), 1e-6);
+            assertEquals(stddev, m.getStdDev(), 1e-6);
+
+            // percentiles are within the error of the histogram.
+            Arrays.sort(values);
+            for (double percentile : new double[] {50, 90, 99, 99.9}) {
+                double exact = values[Math.max((int) Math.ceil(count * percentile / 100) - 1, 0)];
+                double reported = percentile == 50 ? m.getPercentile50() : percentile == 90 ? m.getPercentile90()
+                        : percentile == 99 ? m.getPercentile99() : m.getPercentile999();
+                assertTrue(reported >= exact && reported <= exact * 1.0625 + 0.001, percentile + ": " + reported + " vs " + exact);
             }
+        }
+    }
 
-            for (int i = 2; i < count; i++) {
-                m.remove();
-                m.sortedByValue.check();
-                m.recalculate();
-                if (m.sortedByValue.size() != m.getCount()) {
-                    throw new IllegalStateException();
-                }
-                sum = 0.0;
-                sum_2 = 0.0;
-                for (Comparable c : m.sortedByValue) {
-                    DataPoint dp = (DataPoint) c;
-                    sum += dp.getValue();
-                    sum_2 += dp.getValue() * dp.getValue();
-                }
+    @Test
+    public void expiry() throws InterruptedException {
+        Measurement m = new Measurement("expiry", "ms", true);
+        m.setWindowWidth(100);
+        for (int i = 0; i < 100; i++)
+            m.add(10);
+        m.fail();
+        assertEquals(100, m.getCount());
+        assertTrue(m.getRate() > 0);
+        Thread.sleep(150);
+        assertEquals(0, m.getCount());
+        assertEquals(0, m.getFailureCount());
+        assertEquals(0.0, m.getMedian());
+        assertEquals(100, m.getTotal());
+
+        m.setEnabled(false);
+        m.add(10);
+        assertEquals(0, m.getCount());
+    }
 
-                average = sum / m.sortedByValue.size();
-                var = 0.0;
-                for (Comparable c : m.sortedByValue) {
-                    DataPoint dp = (DataPoint) c;
-                    double v = dp.getValue() - average;
-                    var += v * v;
-                }
-                stddev = Math.sqrt(var /(double) (m.sortedByValue.size() - 1));
+    @Test
+    public void rate() throws InterruptedException {
+        Measurement m = new Measurement("rate", "ms", true);
+        m.setWindowWidth(1000);
+        Thread.sleep(1100);
+        for (int i = 0; i < 100; i++)
+            m.add(10);
+        // the live slices span between 9/10 of the window and all of it, less the part of the newest slice to come.
+        double rate = m.getRate();
+        assertTrue(rate > 100 && rate <= 100 / 0.9 + 1e-6, Double.toString(rate));
+    }
 
-                if ((average - m.getAverage()) * (average - m.getAverage()) >
-                        0.0001f * (average + m.getAverage()) * (average + m.getAverage()) / 4f) {
-                    throw new IllegalStateException();
-                }
-                if ((sum - m.getSum()) * (sum - m.getSum()) > 0.0001f * (sum + m.getSum()) * (sum + m.getSum()) / 4f) {
-                    throw new IllegalStateException();
-                }
-                if ((stddev - m.getStdDev()) * (stddev - m.getStdDev()) > 0.0001f * (stddev + m.getStdDev()) * (stddev + m.getStdDev()) / 4f) {
-                    throw new IllegalStateException();
-                }
+    /**
+     * Threads adding to one Measurement, compared with a synchronized window kept as a list sorted by time and a tree
+     * sorted by value, which is how Measurement used to work.
+     */
+    @Test
+    public void benchmark() throws Exception {
+        int n = Integer.getInteger("measurementBenchmark", 200000);
+        for (int threads : new int[] {1, 4, 16}) {
+            for (int round = 0; round < 2; round++) {
+                Measurement m = new Measurement("bench", "ms", true);
+                long lockFree = run(threads, n / threads, m::add);
+                assertEquals(n / threads * threads, m.getCount());
+                SynchronizedWindow window = new SynchronizedWindow();
+                long synchronizedWindow = run(threads, n / threads, window::add);
+                System.out.println(threads + " threads: Measurement " + (lockFree / n) + "ns/add, synchronized window "
+                        + (synchronizedWindow / n) + "ns/add");
             }
-            System.out.println("done count = " + count);
+        }
+    }
+
+    private long run(int threads, int perThread, DoubleConsumer consumer) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                Random random = new Random();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < perThread; i++)
+                    consumer.accept(random.nextInt(1000));
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        return System.nanoTime() - begin;
+    }
+
+    private static class SynchronizedWindow {
+        private LinkedList<DataPoint> sortedByTime = new LinkedList<>();
+        private OrderStatisticTree<Double> sortedByValue = new OrderStatisticTree<>();
+        private double sum;
+
+        synchronized void add(double value) {
+            DataPoint dp = new DataPoint(System.currentTimeMillis(), value);
+            sortedByTime.add(dp);
+            sortedByValue.add(value);
+            sum += value;
+            long expire = System.currentTimeMillis() - 300000L;
+            while (!sortedByTime.isEmpty() && sortedByTime.getFirst().getTimestamp() < expire)
+                sortedByValue.removeFirst(sortedByTime.removeFirst().getValue());
         }
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.ClosureSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import net.e6tech.elements.common.util.CompressionSerializer;
+import org.objenesis.strategy.SerializingInstantiatorStrategy;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.SerializedLambda;
+
+/**
+ * Kryo serialization for CompressionSerializer.  Call CompressionSerializer.register(new KryoSerialization()) before
+ * reading payloads written with it.
+ */
+public class KryoSerialization implements CompressionSerializer.Serialization {
+    public static final int ID = 3;
+
+    private Pool<Kryo> pool = new Pool<Kryo>(true, false, 64) {
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new SerializingInstantiatorStrategy()));
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(true);
+            kryo.register(SerializedLambda.class);
+            kryo.register(ClosureSerializer.Closure.class, new ClosureSerializer());
+            return kryo;
+        }
+    };
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public void write(Object obj, OutputStream out) {
+        Kryo kryo = pool.obtain();
+        try {
+            Output output = new Output(out, 4096);
+            kryo.writeClassAndObject(output, obj);
+            output.flush();
+        } finally {
+            pool.free(kryo);
+        }
+    }
+
+    @Override
+    public Object read(InputStream in) {
+        Kryo kryo = pool.obtain();
+        try {
+            return kryo.readClassAndObject(new Input(in, 4096));
+        } finally {
+            pool.free(kryo);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2019 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import net.e6tech.elements.common.cache.CacheFacade;
+import net.e6tech.elements.common.notification.NotificationCenter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two in-process cluster nodes, each with its own NotificationCenter bridged to the cluster broadcast and
+ * a near cache in front of the same logical cache.
+ */
+@SuppressWarnings("squid:S2925")
+public class NearCacheTest {
+
+    private static final long NEAR_CACHE_EXPIRY = 60000L;
+    private static final long STALENESS_BOUND = 2000L;
+
+    private CacheFacade<Long, String> facade(ClusterNode node) {
+        NotificationCenter center = new NotificationCenter();
+        center.addBroadcast(node.getBroadcast());
+        CacheFacade<Long, String> facade = new CacheFacade<Long, String>("nearCache") {}
+                .initPool(pool -> {
+                    pool.setNearCacheSize(1000);
+                    pool.setNearCacheExpiry(NEAR_CACHE_EXPIRY);
+                });
+        facade.setNotificationCenter(center);
+        return facade;
+    }
+
+    private long observe(CacheFacade<Long, String> reader, Map<Long, String> database, String expected, long timeout) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!expected.equals(reader.get(1L, () -> database.get(1L)))) {
+            if (System.currentTimeMillis() - start > timeout)
+                return -1;
+            Thread.sleep(1L);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    @Test
+    void staleness() throws Exception {
+        ClusterNode node1 = ClusterNodeTest.create(2551);
+        ClusterNode node2 = ClusterNodeTest.create(2552);
+        while (node1.getMembers().size() < 2 || node2.getMembers().size() < 2)
+            Thread.sleep(100);
+
+        Map<Long, String> database = new ConcurrentHashMap<>();
+        CacheFacade<Long, String> writer = facade(node1);
+        CacheFacade<Long, String> reader = facade(node2);
+
+        // wait for the subscriptions to propagate across the cluster.
+        database.put(1L, "warmup");
+        reader.get(1L, () -> database.get(1L));
+        int round = 0;
+        long elapsed = -1;
+        while (elapsed < 0 && round < 30) {
+            String value = "warmup" + round++;
+            database.put(1L, value);
+            writer.put(1L, value);
+            elapsed = observe(reader, database, value, 1000L);
+            if (elapsed < 0) { // reset the reader's near cache to the current value and try again
+                reader.remove(1L);
+                reader.get(1L, () -> database.get(1L));
+            }
+        }
+        assertTrue(elapsed >= 0, "invalidations never arrived");
+
+        // the reader is served from its near cache until invalidated.
+        database.put(1L, "not cached");
+        assertEquals("warmup" + (round - 1), reader.get(1L, () -> database.get(1L)));
+
+        long max = 0;
+        for (int i = 0; i < 20; i++) {
+            String value = "v" + i;
+            database.put(1L, value);
+            writer.put(1L, value);
+            elapsed = observe(reader, database, value, NEAR_CACHE_EXPIRY);
+            assertTrue(elapsed >= 0);
+            max = Math.max(max, elapsed);
+        }
+        System.out.println("max staleness " + max + "ms");
+        assertTrue(max < STALENESS_BOUND, "max staleness " + max + "ms");
+
+        node1.shutdown();
+        node2.shutdown();
+    }
+}
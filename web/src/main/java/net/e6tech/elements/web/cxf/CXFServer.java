@@ -35,8 +35,7 @@ import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.http.AbstractHTTPDestination;
 
 import javax.annotation.Nonnull;
-import javax.management.JMException;
-import javax.management.ObjectInstance;
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.PathParam;
@@ -50,6 +49,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
@@ -59,6 +59,8 @@ import java.util.function.Supplier;
 public class CXFServer implements Initializable, Startable {
     private static final String CANNOT_BE_NULL = " cannot be null. \n";
     private static final Logger logger = Logger.getLogger();
+    // shared by all servers, keyed by object name, so that a resource method published under one name has one Measurement.
+    private static final Map<String, Measurement> measurements = new ConcurrentHashMap<>();
     private Provision provision;
     private Interceptor interceptor;
     private List<URL> urls = new LinkedList<>();
@@ -329,43 +331,62 @@ public class CXFServer implements Initializable, Startable {
         }
     }
 
-    void computePerformance(Method method, Map<Method,String> methods, long duration) {
-        ObjectInstance instance = null;
+    void computePerformance(Method method, Map<Method, Measurement> methods, long duration) {
         try {
-            instance = getMeasurement(method, methods);
-            logger.trace("{} call took {}ms",  instance.getObjectName().getCanonicalName(), duration);
-            JMXService.invoke(instance.getObjectName(), "add", duration);
+            Measurement m = getMeasurement(method, methods);
+            logger.trace("{} call took {}ms", m.getName(), duration);
+            m.add(duration);
         } catch (Exception e) {
             logger.debug("Unable to record measurement for " + method, e);
         }
     }
 
-    void recordFailure(Method method, Map<Method,String> methods) {
+    void recordFailure(Method method, Map<Method, Measurement> methods) {
         try {
-            ObjectInstance instance = getMeasurement(method, methods);
-            JMXService.invoke(instance.getObjectName(), "fail");
+            getMeasurement(method, methods).fail();
         } catch (Exception e) {
             logger.debug("Unable to record fail measurement for " + method, e);
         }
     }
 
-    private ObjectInstance getMeasurement(Method method, Map<Method, String> methods) throws JMException {
-        String methodName = methods.computeIfAbsent(method, m -> {
-            StringBuilder builder = new StringBuilder();
-            builder.append(m.getDeclaringClass().getTypeName());
-            builder.append(".");
-            builder.append(m.getName());
-            Class[] types = m.getParameterTypes();
-            for (int i = 0; i < types.length; i++) {
-                builder.append("|"); // separating parameters using underscores instead commas because of JMX
-                // ObjectName constraint
-                builder.append(types[i].getSimpleName());
+    /**
+     * Returns the Measurement of a resource method.  The handle is resolved once per method and cached in methods so that
+     * recording is a plain method call; JMX is only used to publish the Measurement.
+     */
+    Measurement getMeasurement(Method method, Map<Method, Measurement> methods) {
+        Measurement m = methods.get(method);
+        if (m == null)
+            m = methods.computeIfAbsent(method, this::createMeasurement);
+        return m;
+    }
+
+    private Measurement createMeasurement(Method m) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(m.getDeclaringClass().getTypeName());
+        builder.append(".");
+        builder.append(m.getName());
+        Class[] types = m.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            builder.append("|"); // separating parameters using underscores instead commas because of JMX
+            // ObjectName constraint
+            builder.append(types[i].getSimpleName());
+        }
+        String methodName = builder.toString();
+        String objectName = "net.e6tech:type=Restful,name=" + methodName;
+        return measurements.computeIfAbsent(objectName, name -> {
+            Measurement measurement = new Measurement(methodName, "ms", isMeasurement());
+            try {
+                JMXService.registerIfAbsent(name, () -> measurement);
+                // record into whichever Measurement is published under the name, ours or one registered earlier.
+                Object published = JMXService.getRegistered(new ObjectName(name)).orElse(null);
+                if (published instanceof Measurement)
+                    return (Measurement) published;
+                logger.warn("{} is registered by another component and is not a Measurement; measurements of {} are not published", name, methodName);
+            } catch (Exception e) {
+                logger.warn("Unable to publish measurement " + name, e);
             }
-            return builder.toString();
+            return measurement;
         });
-
-        String objectName = "net.e6tech:type=Restful,name=" + methodName;
-        return JMXService.registerIfAbsent(objectName, () -> new Measurement(methodName, "ms", isMeasurement()));
     }
 
     @SuppressWarnings("squid:S3776")
@@ -29,6 +29,7 @@ import net.e6tech.elements.common.resources.ResourcesFactory;
 import net.e6tech.elements.common.resources.UnitOfWork;
 import net.e6tech.elements.common.util.ExceptionMapper;
 import net.e6tech.elements.common.util.datastructure.Pair;
+import net.e6tech.elements.jmx.stat.Measurement;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.jaxrs.lifecycle.PerRequestResourceProvider;
 import org.apache.cxf.message.Message;
@@ -45,7 +46,7 @@ import java.util.concurrent.ConcurrentHashMap;
 class InstanceResourceProvider extends PerRequestResourceProvider {
     private ResourcesFactory factory;
     private Observer observer;
-    private Map<Method, String> methods = new ConcurrentHashMap<>();
+    private Map<Method, Measurement> methods = new ConcurrentHashMap<>();
     private Object prototype;
     private CXFServer server;
     private Map<Signature, Map<Class<? extends Annotation>, Annotation>> annotations;
@@ -83,9 +84,9 @@ class InstanceResourceProvider extends PerRequestResourceProvider {
         UnitOfWork uow;
         Message message;
         Observer observer;
-        Map<Method, String> methods;
+        Map<Method, Measurement> methods;
 
-        Handler(UnitOfWork uow, Map<Method, String> methods, Observer observer, Message message) {
+        Handler(UnitOfWork uow, Map<Method, Measurement> methods, Observer observer, Message message) {
             this.uow = uow;
             this.message = message;
             this.observer = observer;
@@ -18,6 +18,7 @@ package net.e6tech.elements.web.cxf;
 
 import net.e6tech.elements.common.logging.LogLevel;
 import net.e6tech.elements.common.util.datastructure.Pair;
+import net.e6tech.elements.jmx.stat.Measurement;
 import org.apache.cxf.io.CachedOutputStream;
 import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
 import org.apache.cxf.message.Message;
@@ -34,7 +35,7 @@ class SharedResourceProvider extends SingletonResourceProvider {
 
     private Observer observer;
     private Object proxy = null;
-    private Map<Method, String> methods = new ConcurrentHashMap<>();
+    private Map<Method, Measurement> methods = new ConcurrentHashMap<>();
     private CXFServer server;
 
     SharedResourceProvider(JaxRSServer server, Object instance, Observer observer) {
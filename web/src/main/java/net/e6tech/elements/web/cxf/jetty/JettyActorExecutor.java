@@ -87,7 +87,7 @@ public class JettyActorExecutor extends ContainerLifeCycle implements ThreadPool
 
     @Override
     public boolean isLowOnThreads() {
-        return false;
+        return executor != null && executor.isSaturated();
     }
 
     @Override
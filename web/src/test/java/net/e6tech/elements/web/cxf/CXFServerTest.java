@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2020 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.web.cxf;
+
+import net.e6tech.elements.jmx.JMXService;
+import net.e6tech.elements.jmx.stat.Measurement;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectInstance;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all") // this is a test.
+public class CXFServerTest {
+
+    @Test
+    void measurement() throws Exception {
+        CXFServer server = new CXFServer();
+        server.setMeasurement(true);
+        Method method = HelloWorldRS.class.getMethod("putMethod", String.class, PutData.class);
+        Map<Method, Measurement> methods = new ConcurrentHashMap<>();
+        server.computePerformance(method, methods, 5);
+        server.computePerformance(method, methods, 7);
+        server.recordFailure(method, methods);
+
+        Measurement measurement = methods.get(method);
+        assertSame(measurement, server.getMeasurement(method, new ConcurrentHashMap<>()));
+        assertEquals(2, measurement.getCount());
+        assertEquals(1, measurement.getFailureCount());
+
+        String name = "net.e6tech:type=Restful,name=" + HelloWorldRS.class.getTypeName() + ".putMethod|String|PutData";
+        ObjectInstance instance = JMXService.find(name).orElseThrow(() -> new AssertionError(name + " is not published"));
+        assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(instance.getObjectName(), "Count"));
+    }
+
+    @Test
+    void registered() throws Exception {
+        Method method = CXFServerTest.class.getDeclaredMethod("registered");
+        String name = "net.e6tech:type=Restful,name=" + CXFServerTest.class.getTypeName() + ".registered";
+        Measurement existing = new Measurement("registered", "ms", true);
+        JMXService.registerMBean(existing, name);
+        try {
+            CXFServer server = new CXFServer();
+            server.setMeasurement(true);
+            Map<Method, Measurement> methods = new ConcurrentHashMap<>();
+            server.computePerformance(method, methods, 5);
+            assertSame(existing, methods.get(method));
+            assertEquals(1, existing.getCount());
+        } finally {
+            JMXService.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Per request cost of recording a latency through MBeanServer.invoke, which was how CXFServer used to record,
+     * compared with the cached Measurement handle.
+     */
+    @Test
+    void benchmark() throws Exception {
+        CXFServer server = new CXFServer();
+        server.setMeasurement(true);
+        Method method = HelloWorldRS.class.getMethod("sayHi", String.class);
+        Map<Method, Measurement> methods = new ConcurrentHashMap<>();
+        server.computePerformance(method, methods, 1);
+        ObjectInstance instance = JMXService.find("net.e6tech:type=Restful,name=" + methods.get(method).getName()).get();
+
+        int n = Integer.getInteger("cxfMeasurementBenchmark", 500000);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                JMXService.invoke(instance.getObjectName(), "add", (long) (i & 63));
+            long invoke = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                server.computePerformance(method, methods, i & 63);
+            long direct = System.nanoTime() - start;
+            System.out.println("MBeanServer.invoke " + (invoke / n) + "ns/request, direct handle " + (direct / n) + "ns/request");
+        }
+        assertEquals(1 + 6L * n, methods.get(method).getCount());
+    }
+}